@@ -0,0 +1,256 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.exception.AdmissionRejectedException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 准入控制，在获取连接前按查询形状(orql)或标签限制并发执行数
+ * 超出并发时排队，队列满或等待超时抛出AdmissionRejectedException
+ * 未配置限制且默认限制为0的key不限制
+ */
+public class AdmissionController {
+
+    /**
+     * key最大并发数
+     */
+    private final Map<String, Integer> limits = new ConcurrentHashMap<>();
+
+    private final Map<String, Gate> gates = new ConcurrentHashMap<>();
+
+    /**
+     * 未单独配置的key的默认最大并发数，0不限制
+     */
+    private volatile int defaultLimit = 0;
+
+    /**
+     * 每个key最大排队数
+     */
+    private volatile int maxQueue = 100;
+
+    /**
+     * 最长等待毫秒数
+     */
+    private volatile long maxWaitMillis = 1000;
+
+    private static class Gate {
+        volatile int limit;
+        final ResizableSemaphore semaphore;
+        final AtomicInteger waiting = new AtomicInteger();
+        final AtomicLong admitted = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong waitNanos = new AtomicLong();
+
+        Gate(int limit) {
+            this.limit = limit;
+            this.semaphore = new ResizableSemaphore(limit);
+        }
+
+        /**
+         * 修改限制，已发出的许可仍在原semaphore上归还，减少时可用许可可能为负，归还后恢复
+         */
+        synchronized void resize(int newLimit) {
+            int delta = newLimit - limit;
+            limit = newLimit;
+            if (delta > 0) {
+                semaphore.release(delta);
+            } else if (delta < 0) {
+                semaphore.reducePermits(- delta);
+            }
+        }
+    }
+
+    private static class ResizableSemaphore extends Semaphore {
+
+        ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+    /**
+     * 准入许可，执行结束后release
+     */
+    public static class Permit {
+
+        private Gate gate;
+
+        private Permit(Gate gate) {
+            this.gate = gate;
+        }
+
+        public void release() {
+            if (gate == null) return;
+            gate.semaphore.release();
+            gate = null;
+        }
+    }
+
+    /**
+     * 统计快照
+     */
+    public static class Stats {
+
+        private final int limit;
+
+        private final int active;
+
+        private final int queueDepth;
+
+        private final long admitted;
+
+        private final long rejected;
+
+        private final long waitMillis;
+
+        private Stats(Gate gate) {
+            this.limit = gate.limit;
+            this.active = gate.limit - gate.semaphore.availablePermits();
+            this.queueDepth = gate.waiting.get();
+            this.admitted = gate.admitted.get();
+            this.rejected = gate.rejected.get();
+            this.waitMillis = TimeUnit.NANOSECONDS.toMillis(gate.waitNanos.get());
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public long getAdmitted() {
+            return admitted;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * 累计等待毫秒数
+         */
+        public long getWaitMillis() {
+            return waitMillis;
+        }
+
+        public long getAverageWaitMillis() {
+            return admitted + rejected == 0 ? 0 : waitMillis / (admitted + rejected);
+        }
+    }
+
+    /**
+     * @param key orql或标签
+     * @param maxConcurrent 最大并发数
+     * @return
+     */
+    public AdmissionController limit(String key, int maxConcurrent) {
+        limits.put(key, maxConcurrent);
+        if (maxConcurrent <= 0) {
+            gates.remove(key);
+        } else {
+            // 已有的gate调整许可数，执行中的许可计入新限制
+            gates.computeIfPresent(key, (k, gate) -> {
+                gate.resize(maxConcurrent);
+                return gate;
+            });
+        }
+        return this;
+    }
+
+    public int getDefaultLimit() {
+        return defaultLimit;
+    }
+
+    public void setDefaultLimit(int defaultLimit) {
+        this.defaultLimit = defaultLimit;
+    }
+
+    public int getMaxQueue() {
+        return maxQueue;
+    }
+
+    public void setMaxQueue(int maxQueue) {
+        this.maxQueue = maxQueue;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    private Gate gate(String key) {
+        Gate gate = gates.get(key);
+        if (gate != null) return gate;
+        if (limits.getOrDefault(key, defaultLimit) <= 0) return null;
+        // 在computeIfAbsent中读取限制，与limit修改互斥
+        return gates.computeIfAbsent(key, k -> new Gate(Math.max(1, limits.getOrDefault(k, defaultLimit))));
+    }
+
+    /**
+     * 获取许可，无限制时返回null
+     * @param key orql或标签
+     * @return
+     */
+    public Permit acquire(String key) {
+        Gate gate = gate(key);
+        if (gate == null) return null;
+        // 不排队直接获取
+        if (gate.waiting.get() == 0 && gate.semaphore.tryAcquire()) {
+            gate.admitted.incrementAndGet();
+            return new Permit(gate);
+        }
+        if (gate.waiting.incrementAndGet() > maxQueue) {
+            gate.waiting.decrementAndGet();
+            gate.rejected.incrementAndGet();
+            throw new AdmissionRejectedException("admission queue full: " + key);
+        }
+        long start = System.nanoTime();
+        boolean acquired = false;
+        try {
+            acquired = gate.semaphore.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            gate.waiting.decrementAndGet();
+            gate.waitNanos.addAndGet(System.nanoTime() - start);
+        }
+        if (! acquired) {
+            gate.rejected.incrementAndGet();
+            throw new AdmissionRejectedException("admission wait timeout: " + key);
+        }
+        gate.admitted.incrementAndGet();
+        return new Permit(gate);
+    }
+
+    public Stats getStats(String key) {
+        Gate gate = gates.get(key);
+        return gate == null ? null : new Stats(gate);
+    }
+
+    public Map<String, Stats> getStats() {
+        Map<String, Stats> stats = new HashMap<>();
+        for (Map.Entry<String, Gate> entry : gates.entrySet()) {
+            stats.put(entry.getKey(), new Stats(entry.getValue()));
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.orql.executor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步session
+ * 每条语句在Configuration.asyncExecutor上执行，仅在执行期间占用连接，不支持事务
+ * 取消返回的future会通过Statement.cancel取消执行中的语句
+ * 执行失败时future以异常完成，sql错误为SqlExecutionException，执行器队列已满时为RejectedExecutionException
+ */
+public interface AsyncSession {
+
+    CompletableFuture<Object> query(String reql, Map<String, Object> params, Long offset, Integer limit);
+
+    <T> CompletableFuture<List<T>> queryAll(String reql, Map<String, Object> params, Class<T> clazz);
+
+    <T> CompletableFuture<T> queryOne(String reql, Map<String, Object> params, Class<T> clazz);
+
+    CompletableFuture<Object> add(String reql, Map<String, Object> params);
+
+    /**
+     * 按条件删除
+     * @param reql
+     * @param params
+     * @return 影响行数
+     */
+    CompletableFuture<Integer> delete(String reql, Map<String, Object> params);
+
+    /**
+     * 按条件更新
+     * @param reql
+     * @param params
+     * @return 影响行数
+     */
+    CompletableFuture<Integer> update(String reql, Map<String, Object> params);
+
+}
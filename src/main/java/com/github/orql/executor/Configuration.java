@@ -1,13 +1,27 @@
 package com.github.orql.executor;
 
+import com.github.orql.executor.dialect.Dialect;
+import com.github.orql.executor.dialect.MysqlDialect;
 import com.github.orql.executor.mapper.ReqlResult;
 import com.github.orql.executor.mapper.ResultMapper;
 import com.github.orql.executor.orql.Parser;
+import com.github.orql.executor.replica.LoadBalancer;
+import com.github.orql.executor.replica.RoundRobinLoadBalancer;
 import com.github.orql.executor.schema.SchemaManager;
 import com.github.orql.executor.sql.OrqlToSql;
 import com.github.orql.executor.sql.SqlGenerator;
 
 import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Configuration {
 
@@ -26,11 +40,46 @@ public class Configuration {
      */
     private SqlGenerator sqlGenerator;
 
+    /**
+     * 数据库方言
+     */
+    private Dialect dialect;
+
+    /**
+     * 批量插入每条语句最大行数
+     */
+    private int bulkMaxRows = 1000;
+
+    /**
+     * 批量插入每条语句最大参数数，0使用方言限制
+     */
+    private int bulkMaxParams = 0;
+
     /**
      * 数据源工厂
      */
     private DataSource dataSource;
 
+    /**
+     * 从库，事务外的query/count在从库执行
+     */
+    private List<DataSource> replicas = new CopyOnWriteArrayList<>();
+
+    /**
+     * 从库负载均衡
+     */
+    private LoadBalancer loadBalancer = new RoundRobinLoadBalancer();
+
+    /**
+     * session写入或提交后，之后的查询都在主库执行，避免复制延迟读不到自己的写入
+     */
+    private boolean readYourWrites = true;
+
+    /**
+     * 分片数据源，声明了shardKey的schema按分片路由
+     */
+    private List<DataSource> shards = new ArrayList<>();
+
     /**
      * schema注册器
      */
@@ -46,13 +95,111 @@ public class Configuration {
      */
     private ReqlResult reqlResult;
 
+    /**
+     * 批量加载关联时每次in查询的最大id数
+     */
+    private int loadBatchSize = 100;
+
+    /**
+     * 跨线程按id查询的合并窗口
+     */
+    private long batchWindowMillis = 2;
+
+    /**
+     * 跨线程按id查询的最大合并数
+     */
+    private int batchMaxSize = 100;
+
+    /**
+     * 相同并发查询合并, null不合并
+     */
+    private QueryCoalescer queryCoalescer;
+
+    /**
+     * 准入控制，null不限制
+     */
+    private AdmissionController admissionController;
+
+    /**
+     * 事务外集合关联拆分为子查询，在不同连接上并行执行
+     */
+    private boolean parallelSubQuery = false;
+
+    /**
+     * UpdateBuilder的insert/update执行计划
+     */
+    private WritePlans writePlans;
+
+    /**
+     * 快照session查询出的对象，UpdateBuilder.update只写修改的字段
+     */
+    private boolean dirtyChecking = false;
+
+    /**
+     * update/delete每批行数，0不分批
+     */
+    private int mutationChunkSize = 0;
+
+    /**
+     * 驱动支持一次执行多条语句(mysql allowMultiQueries=true)，queryAll拼接为一条执行
+     */
+    private boolean multiStatement = false;
+
+    /**
+     * 异步执行器，默认java21以上使用虚拟线程，否则使用有界线程池
+     */
+    private volatile ExecutorService asyncExecutor;
+
+    /**
+     * 默认异步线程池大小
+     */
+    private int asyncPoolSize = Runtime.getRuntime().availableProcessors() * 2;
+
+    /**
+     * 默认异步线程池队列长度，满时拒绝
+     */
+    private int asyncQueueSize = 1024;
+
+    /**
+     * hiLo主键生成
+     */
+    private IdGenerator idGenerator;
+
+    /**
+     * hiLo每次预留的id数
+     */
+    private int idBlockSize = 100;
+
+    /**
+     * hiLo序列表，每个schema一行
+     */
+    private String idSequenceTable = "orql_sequence";
+
+    /**
+     * 默认查询超时秒数，0不限制
+     */
+    private int queryTimeout = 0;
+
+    /**
+     * 默认单次查询最大结果行数，0不限制
+     */
+    private int maxRows = 0;
+
+    /**
+     * 默认单次查询结果估算最大字节数，0不限制
+     */
+    private long maxBytes = 0;
+
     public Configuration() {
         sqlExecutor = new SqlExecutor();
-        orqlToSql = new OrqlToSql();
-        sqlGenerator = new SqlGenerator();
+        dialect = new MysqlDialect();
+        sqlGenerator = new SqlGenerator(dialect);
+        orqlToSql = new OrqlToSql(sqlGenerator);
         schemaManager = new SchemaManager();
         resultMapper = new ResultMapper();
         reqlResult = new ReqlResult();
+        writePlans = new WritePlans(this);
+        idGenerator = new IdGenerator(this);
     }
 
     public SchemaManager getSchemaManager() {
@@ -75,6 +222,41 @@ public class Configuration {
         return orqlToSql;
     }
 
+    public Dialect getDialect() {
+        return dialect;
+    }
+
+    /**
+     * 更换方言后重建sql生成器
+     * @param dialect
+     */
+    public void setDialect(Dialect dialect) {
+        this.dialect = dialect;
+        this.sqlGenerator = new SqlGenerator(dialect);
+        this.orqlToSql = new OrqlToSql(sqlGenerator);
+        this.writePlans.clear();
+    }
+
+    public WritePlans getWritePlans() {
+        return writePlans;
+    }
+
+    public int getBulkMaxRows() {
+        return bulkMaxRows;
+    }
+
+    public void setBulkMaxRows(int bulkMaxRows) {
+        this.bulkMaxRows = bulkMaxRows;
+    }
+
+    public int getBulkMaxParams() {
+        return bulkMaxParams > 0 ? bulkMaxParams : dialect.maxParams();
+    }
+
+    public void setBulkMaxParams(int bulkMaxParams) {
+        this.bulkMaxParams = bulkMaxParams;
+    }
+
     public DataSource getDataSource() {
         return dataSource;
     }
@@ -90,4 +272,212 @@ public class Configuration {
     public void setDataSource(DataSource dataSource) {
         this.dataSource = dataSource;
     }
-}
\ No newline at end of file
+
+    public List<DataSource> getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicas(List<DataSource> replicas) {
+        this.replicas = new CopyOnWriteArrayList<>(replicas);
+    }
+
+    public void addReplica(DataSource replica) {
+        this.replicas.add(replica);
+    }
+
+    public LoadBalancer getLoadBalancer() {
+        return loadBalancer;
+    }
+
+    public void setLoadBalancer(LoadBalancer loadBalancer) {
+        this.loadBalancer = loadBalancer;
+    }
+
+    public List<DataSource> getShards() {
+        return shards;
+    }
+
+    public void setShards(List<DataSource> shards) {
+        this.shards = new ArrayList<>(shards);
+    }
+
+    public boolean isReadYourWrites() {
+        return readYourWrites;
+    }
+
+    public void setReadYourWrites(boolean readYourWrites) {
+        this.readYourWrites = readYourWrites;
+    }
+
+    public int getLoadBatchSize() {
+        return loadBatchSize;
+    }
+
+    public void setLoadBatchSize(int loadBatchSize) {
+        this.loadBatchSize = loadBatchSize;
+    }
+
+    public long getBatchWindowMillis() {
+        return batchWindowMillis;
+    }
+
+    public void setBatchWindowMillis(long batchWindowMillis) {
+        this.batchWindowMillis = batchWindowMillis;
+    }
+
+    public int getBatchMaxSize() {
+        return batchMaxSize;
+    }
+
+    public void setBatchMaxSize(int batchMaxSize) {
+        this.batchMaxSize = batchMaxSize;
+    }
+
+    public QueryCoalescer getQueryCoalescer() {
+        return queryCoalescer;
+    }
+
+    /**
+     * 事务外的相同并发查询只执行一次
+     * @param queryCoalescing
+     */
+    public void setQueryCoalescing(boolean queryCoalescing) {
+        this.queryCoalescer = queryCoalescing ? new QueryCoalescer() : null;
+    }
+
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    public void setAdmissionController(AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    public boolean isDirtyChecking() {
+        return dirtyChecking;
+    }
+
+    public void setDirtyChecking(boolean dirtyChecking) {
+        this.dirtyChecking = dirtyChecking;
+    }
+
+    public IdGenerator getIdGenerator() {
+        return idGenerator;
+    }
+
+    public int getIdBlockSize() {
+        return idBlockSize;
+    }
+
+    public void setIdBlockSize(int idBlockSize) {
+        this.idBlockSize = idBlockSize;
+    }
+
+    public String getIdSequenceTable() {
+        return idSequenceTable;
+    }
+
+    public void setIdSequenceTable(String idSequenceTable) {
+        this.idSequenceTable = idSequenceTable;
+    }
+
+    public int getMutationChunkSize() {
+        return mutationChunkSize;
+    }
+
+    public void setMutationChunkSize(int mutationChunkSize) {
+        this.mutationChunkSize = mutationChunkSize;
+    }
+
+    public boolean isMultiStatement() {
+        return multiStatement;
+    }
+
+    public void setMultiStatement(boolean multiStatement) {
+        this.multiStatement = multiStatement;
+    }
+
+    public boolean isParallelSubQuery() {
+        return parallelSubQuery;
+    }
+
+    public void setParallelSubQuery(boolean parallelSubQuery) {
+        this.parallelSubQuery = parallelSubQuery;
+    }
+
+    public ExecutorService getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            synchronized (this) {
+                if (asyncExecutor == null) {
+                    asyncExecutor = newAsyncExecutor();
+                }
+            }
+        }
+        return asyncExecutor;
+    }
+
+    private ExecutorService newAsyncExecutor() {
+        try {
+            // java21 虚拟线程
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // 不支持虚拟线程
+        }
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(
+                asyncPoolSize,
+                asyncPoolSize,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(asyncQueueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "orql-async-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public void setAsyncExecutor(ExecutorService asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    public int getAsyncPoolSize() {
+        return asyncPoolSize;
+    }
+
+    public void setAsyncPoolSize(int asyncPoolSize) {
+        this.asyncPoolSize = asyncPoolSize;
+    }
+
+    public int getAsyncQueueSize() {
+        return asyncQueueSize;
+    }
+
+    public void setAsyncQueueSize(int asyncQueueSize) {
+        this.asyncQueueSize = asyncQueueSize;
+    }
+
+    public int getQueryTimeout() {
+        return queryTimeout;
+    }
+
+    public void setQueryTimeout(int queryTimeout) {
+        this.queryTimeout = queryTimeout;
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    public void setMaxRows(int maxRows) {
+        this.maxRows = maxRows;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+}
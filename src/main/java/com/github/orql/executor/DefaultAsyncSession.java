@@ -0,0 +1,108 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.util.MapBean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+public class DefaultAsyncSession implements AsyncSession {
+
+    protected Configuration configuration;
+
+    protected Executor executor;
+
+    @FunctionalInterface
+    private interface SessionCallback<T> {
+        T execute(DefaultSession session, QueryHandle handle);
+    }
+
+    /**
+     * 取消时同时取消语句
+     * @param <T>
+     */
+    private static class StatementFuture<T> extends CompletableFuture<T> {
+
+        private final QueryHandle handle = new QueryHandle();
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            handle.cancel();
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+
+    public DefaultAsyncSession(Configuration configuration) {
+        this.configuration = configuration;
+        this.executor = configuration.getAsyncExecutor();
+    }
+
+    private <T> CompletableFuture<T> submit(SessionCallback<T> callback) {
+        StatementFuture<T> future = new StatementFuture<>();
+        try {
+            executor.execute(() -> {
+                // 执行前已取消
+                if (future.isDone()) return;
+                DefaultSession session = new DefaultSession(configuration, configuration.getDataSource());
+                // sql错误以SqlExecutionException完成future
+                session.throwOnError = true;
+                try {
+                    future.complete(callback.execute(session, future.handle));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    session.close();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Object> query(String reql, Map<String, Object> params, Long offset, Integer limit) {
+        return submit((session, handle) -> session.query(reql, params, offset, limit, handle));
+    }
+
+    @Override
+    public <T> CompletableFuture<List<T>> queryAll(String reql, Map<String, Object> params, Class<T> clazz) {
+        return submit((session, handle) -> {
+            Object result = session.query(reql, params, null, null, handle);
+            List<T> list = new ArrayList<>();
+            if (result == null) return list;
+            for (Object child : (List) result) {
+                list.add(MapBean.toBean((Map<String, Object>) child, clazz));
+            }
+            return list;
+        });
+    }
+
+    @Override
+    public <T> CompletableFuture<T> queryOne(String reql, Map<String, Object> params, Class<T> clazz) {
+        return submit((session, handle) -> {
+            Object result = session.query(reql, params, null, null, handle);
+            if (result == null) return null;
+            return MapBean.toBean((Map<String, Object>) result, clazz);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Object> add(String reql, Map<String, Object> params) {
+        return submit((session, handle) -> session.add(reql, params));
+    }
+
+    @Override
+    public CompletableFuture<Integer> delete(String reql, Map<String, Object> params) {
+        return submit((session, handle) -> session.delete(reql, params));
+    }
+
+    @Override
+    public CompletableFuture<Integer> update(String reql, Map<String, Object> params) {
+        return submit((session, handle) -> session.update(reql, params));
+    }
+
+}
@@ -1,10 +1,18 @@
 package com.github.orql.executor;
 
+import com.github.orql.executor.exception.QueryCancelledException;
+import com.github.orql.executor.exception.QueryTimeoutException;
+import com.github.orql.executor.exception.SqlExecutionException;
+import com.github.orql.executor.dialect.MysqlDialect;
+import com.github.orql.executor.loader.AssociationFetcher;
+import com.github.orql.executor.loader.AssociationPreloader;
 import com.github.orql.executor.mapper.ReqlResult;
 import com.github.orql.executor.mapper.ResultMapper;
 import com.github.orql.executor.mapper.ResultRoot;
+import com.github.orql.executor.mapper.RowBudget;
 import com.github.orql.executor.orql.OrqlNode;
 import com.github.orql.executor.orql.Parser;
+import com.github.orql.executor.replica.LoadBalancer;
 import com.github.orql.executor.schema.Association;
 import com.github.orql.executor.schema.Schema;
 import com.github.orql.executor.schema.SchemaManager;
@@ -13,16 +21,73 @@ import com.github.orql.executor.sql.OrqlToSql;
 import com.github.orql.executor.sql.SqlGenerator;
 import com.github.orql.executor.sql.SqlNode;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 
 public class DefaultSession implements Session {
 
+    protected Configuration configuration;
+
     protected Connection conn;
 
+    /**
+     * 非null时由session管理连接，首次执行语句时获取，自动提交时每条语句后归还
+     */
+    protected DataSource dataSource;
+
+    /**
+     * beginTransaction到commit/rollback之间
+     */
+    protected boolean transaction = false;
+
+    /**
+     * nativeQuery返回ResultSet后持有连接到close
+     */
+    protected boolean pinned = false;
+
+    /**
+     * 当前查询使用的从库及其连接
+     */
+    protected DataSource replica;
+
+    protected Connection replicaConn;
+
+    /**
+     * 已写入主库，readYourWrites时之后的查询不再走从库
+     */
+    protected boolean written = false;
+
+    /**
+     * 分片下标，-1不是分片session
+     */
+    protected int shard = -1;
+
+    /**
+     * 各分片session，按需创建
+     */
+    protected DefaultSession[] shardSessions;
+
     protected SqlGenerator sqlGenerator;
 
     protected OrqlToSql orqlToSql;
@@ -37,8 +102,44 @@ public class DefaultSession implements Session {
 
     protected SchemaManager schemaManager;
 
+    /**
+     * dirtyChecking时的对象快照
+     */
+    protected Snapshots snapshots;
+
+    /**
+     * 工作单元，未开启时为null
+     */
+    protected UnitOfWork unitOfWork;
+
+    /**
+     * 语句执行失败时抛出SqlExecutionException，默认打印后返回空结果
+     */
+    protected boolean throwOnError = false;
+
+    /**
+     * 写操作已准入，嵌套调用不重复准入
+     */
+    private boolean admitted = false;
+
+    /**
+     * 使用外部管理的连接
+     */
     public DefaultSession(Configuration configuration, Connection conn) {
+        this(configuration);
         this.conn = conn;
+    }
+
+    /**
+     * 按需从连接池获取连接
+     */
+    public DefaultSession(Configuration configuration, DataSource dataSource) {
+        this(configuration);
+        this.dataSource = dataSource;
+    }
+
+    private DefaultSession(Configuration configuration) {
+        this.configuration = configuration;
         this.sqlGenerator = configuration.getSqlGenerator();
         this.orqlToSql = configuration.getOrqlToSql();
         this.sqlExecutor = configuration.getSqlExecutor();
@@ -46,183 +147,1153 @@ public class DefaultSession implements Session {
         this.reqlResult = configuration.getReqlResult();
         this.resultMapper = configuration.getResultMapper();
         this.schemaManager = configuration.getSchemaManager();
+        if (configuration.isDirtyChecking()) {
+            this.snapshots = new Snapshots(schemaManager);
+        }
+    }
+
+    /**
+     * 获取连接
+     * @return
+     * @throws SQLException
+     */
+    protected Connection connection() throws SQLException {
+        if (conn == null) {
+            conn = dataSource.getConnection();
+        }
+        return conn;
+    }
+
+    /**
+     * 查询连接，事务外且未写入时从从库获取
+     * @return
+     * @throws SQLException
+     */
+    protected Connection readConnection() throws SQLException {
+        List<DataSource> replicas = configuration.getReplicas();
+        if (dataSource == null || shard >= 0 || replicas.isEmpty() || inTransaction() || (written && configuration.isReadYourWrites())) {
+            return connection();
+        }
+        LoadBalancer loadBalancer = configuration.getLoadBalancer();
+        replica = loadBalancer.select(replicas);
+        try {
+            replicaConn = replica.getConnection();
+        } catch (SQLException e) {
+            loadBalancer.release(replica);
+            replica = null;
+            throw e;
+        }
+        return replicaConn;
+    }
+
+    /**
+     * 写入主库的连接
+     * @return
+     * @throws SQLException
+     */
+    protected Connection writeConnection() throws SQLException {
+        // 直接写入前先执行之前记录的写操作，保持顺序
+        if (unitOfWork != null && unitOfWork.hasPending() && ! unitOfWork.isFlushing()) {
+            flush();
+        }
+        written = true;
+        return connection();
+    }
+
+    /**
+     * 自动提交时语句执行完归还连接
+     */
+    protected void release() {
+        if (replicaConn != null) {
+            try {
+                replicaConn.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            } finally {
+                configuration.getLoadBalancer().release(replica);
+                replicaConn = null;
+                replica = null;
+            }
+        }
+        if (dataSource == null || conn == null || transaction || pinned) return;
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            conn = null;
+        }
+    }
+
+    /**
+     * schema是否按分片路由
+     */
+    protected boolean isShardRouted(Schema schema) {
+        return shard < 0 && schema.isSharded() && ! configuration.getShards().isEmpty();
+    }
+
+    /**
+     * 分片session，事务中创建时同样开启事务
+     */
+    DefaultSession shardSession(int index) {
+        if (shardSessions == null) {
+            shardSessions = new DefaultSession[configuration.getShards().size()];
+        }
+        if (shardSessions[index] == null) {
+            DefaultSession shardSession = new DefaultSession(configuration, configuration.getShards().get(index));
+            shardSession.shard = index;
+            shardSession.throwOnError = throwOnError;
+            if (transaction) shardSession.beginTransaction();
+            shardSessions[index] = shardSession;
+        }
+        return shardSessions[index];
+    }
+
+    private void forEachShard(Consumer<DefaultSession> consumer) {
+        if (shardSessions == null) return;
+        for (DefaultSession shardSession : shardSessions) {
+            if (shardSession != null) consumer.accept(shardSession);
+        }
     }
 
     @Override
     public void beginTransaction() {
+        forEachShard(DefaultSession::beginTransaction);
         try {
+            Connection conn = connection();
             if (conn.getAutoCommit()) {
                 conn.setAutoCommit(false);
             }
+            transaction = true;
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
+    @Override
+    public Snapshots getSnapshots() {
+        return snapshots;
+    }
+
+    @Override
+    public void beginUnitOfWork() {
+        if (unitOfWork == null) {
+            unitOfWork = new UnitOfWork(schemaManager);
+        }
+    }
+
+    @Override
+    public void endUnitOfWork() {
+        flush();
+        unitOfWork = null;
+    }
+
+    @Override
+    public void flush() {
+        if (unitOfWork != null) {
+            unitOfWork.flush(buildUpdate());
+        }
+    }
+
+    @Override
+    public UnitOfWork getUnitOfWork() {
+        return unitOfWork;
+    }
+
     @Override
     public void close() {
+        forEachShard(DefaultSession::close);
+        if (snapshots != null) snapshots.clear();
+        // 未flush的写操作丢弃
+        if (unitOfWork != null) unitOfWork.clear();
+        if (conn == null) return;
         try {
             conn.close();
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            if (dataSource != null) conn = null;
+            transaction = false;
+            pinned = false;
         }
     }
 
     @Override
     public void commit() {
+        flush();
+        forEachShard(DefaultSession::commit);
+        if (conn == null) return;
         try {
             conn.commit();
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            endTransaction();
         }
     }
 
     @Override
     public void rollback() {
+        if (unitOfWork != null) unitOfWork.clear();
+        forEachShard(DefaultSession::rollback);
+        if (conn == null) return;
         try {
             conn.rollback();
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    /**
+     * 事务结束，连接恢复自动提交后归还
+     */
+    private void endTransaction() {
+        transaction = false;
+        if (dataSource == null) return;
+        try {
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        release();
+    }
+
+    /**
+     * 是否在事务中
+     * @return
+     */
+    @Override
+    public boolean inTransaction() {
+        if (transaction) return true;
+        if (conn == null) return false;
+        try {
+            return ! conn.getAutoCommit();
+        } catch (SQLException e) {
+            e.printStackTrace();
         }
+        return true;
     }
 
     @Override
     public Object query(String reql, Map<String, Object> params, Long offset, Integer limit) {
+        return query(reql, params, offset, limit, null);
+    }
+
+    @Override
+    public Object query(String reql, Map<String, Object> params, Long offset, Integer limit, QueryHandle handle) {
+        // 查询涉及待写入的schema时先flush
+        if (unitOfWork != null && unitOfWork.touches(parser.parse(reql))) {
+            flush();
+        }
+        QueryCoalescer queryCoalescer = configuration.getQueryCoalescer();
+        // 事务中可能读到未提交数据，不合并; 可取消的查询不与其他查询共享; 已写入的session不共享从库查询结果
+        if (queryCoalescer != null && handle == null && ! inTransaction() && ! (written && configuration.isReadYourWrites())) {
+            return queryCoalescer.query(reql, params, offset, limit, () -> doQuery(reql, params, offset, limit, null));
+        }
+        return doQuery(reql, params, offset, limit, handle);
+    }
+
+    protected Object doQuery(String reql, Map<String, Object> params, Long offset, Integer limit, QueryHandle handle) {
+        // 获取连接前准入
+        String key = handle != null && handle.getTag() != null ? handle.getTag() : reql;
+        AdmissionController.Permit permit = admit(key);
+        try {
+            return admittedQuery(reql, params, offset, limit, handle);
+        } finally {
+            if (permit != null) permit.release();
+        }
+    }
+
+    private Object admittedQuery(String reql, Map<String, Object> params, Long offset, Integer limit, QueryHandle handle) {
+        OrqlNode tree = parser.parse(reql);
+        if (isShardRouted(tree.getRoot().getRef())) {
+            return new ShardExecutor(configuration).query(this, tree, params, offset, limit, handle);
+        }
+        // 集合关联拆分为并行子查询，加锁的查询不拆分
+        if (configuration.isParallelSubQuery() && SplitQueryExecutor.canSplit(tree) && ! inTransaction() && (handle == null || handle.getLock() == null)) {
+            return new SplitQueryExecutor(configuration).query(this, tree, params, offset, limit, handle);
+        }
+        return queryTree(tree, params, offset, limit, handle);
+    }
+
+    /**
+     * 执行已解析的查询
+     */
+    Object queryTree(OrqlNode tree, Map<String, Object> params, Long offset, Integer limit, QueryHandle handle) {
         try {
-            OrqlNode tree = parser.parse(reql);
             SqlNode.SqlPage sqlPage = new SqlNode.SqlPage(offset, limit);
-            NamedParamSql namedParamSql = new NamedParamSql(orqlToSql.toQuery(tree.getOp(), tree.getRoot(), sqlPage), params);
-            ResultSet resultSet = sqlExecutor.query(conn, namedParamSql);
-            if (tree.getOp() == OrqlNode.ReqlOp.Count) {
-                return resultSet.next() ? resultSet.getLong(1) : 0L;
-            }
-            ResultRoot resultRoot = reqlResult.toResult(tree.getRoot());
-            List<Map<String, Object>> results = resultMapper.mappe(resultRoot, resultSet);
-            if (tree.getRoot() instanceof OrqlNode.ReqlArrayItem) {
-                return results;
-            }
-            return results.isEmpty() ? null : results.get(0);
+            LockMode lock = handle != null ? handle.getLock() : null;
+            NamedParamSql namedParamSql = new NamedParamSql(orqlToSql.toQuery(tree.getOp(), tree.getRoot(), sqlPage, lock), params);
+            int timeout = queryTimeout(handle);
+            RowBudget budget = rowBudget(handle);
+            // 加锁的查询在主库执行
+            Connection conn = lock != null ? writeConnection() : readConnection();
+            ResultSet resultSet = sqlExecutor.query(conn, namedParamSql, handle, timeout, budget == null ? 0 : budget.getMaxRows());
+            return mapResult(tree, resultSet, budget);
         } catch (SQLException e) {
-            e.printStackTrace();
+            RuntimeException exception = translate(e, handle, queryTimeout(handle));
+            if (exception != null) throw exception;
+            onError(e);
+        } finally {
+            if (handle != null) handle.detach();
+            release();
         }
         return null;
     }
 
+    /**
+     * 未转换的sql错误，throwOnError时抛出，否则打印
+     */
+    protected void onError(SQLException e) {
+        if (throwOnError) throw new SqlExecutionException(e.getMessage(), e);
+        e.printStackTrace();
+    }
+
+    /**
+     * handle中未设置时使用默认超时
+     */
+    private int queryTimeout(QueryHandle handle) {
+        return handle != null && handle.getTimeout() != null ? handle.getTimeout() : configuration.getQueryTimeout();
+    }
+
+    /**
+     * handle中未设置时使用默认预算，都不限制时返回null
+     */
+    private RowBudget rowBudget(QueryHandle handle) {
+        int maxRows = handle != null && handle.getMaxRows() != null ? handle.getMaxRows() : configuration.getMaxRows();
+        long maxBytes = handle != null && handle.getMaxBytes() != null ? handle.getMaxBytes() : configuration.getMaxBytes();
+        return maxRows > 0 || maxBytes > 0 ? new RowBudget(maxRows, maxBytes) : null;
+    }
+
+    /**
+     * 取消和超时转为对应异常
+     * @return null为其他错误
+     */
+    private RuntimeException translate(SQLException e, QueryHandle handle, int timeout) {
+        if (handle != null && handle.isCancelled()) {
+            return new QueryCancelledException("query cancelled", e);
+        }
+        // 57014: 标准取消状态 70100: mysql查询被中断
+        if (timeout > 0 && (e instanceof SQLTimeoutException || "57014".equals(e.getSQLState()) || "70100".equals(e.getSQLState()))) {
+            return new QueryTimeoutException("query exceeded timeout " + timeout + "s", e);
+        }
+        return null;
+    }
+
+    private Object mapResult(OrqlNode tree, ResultSet resultSet, RowBudget budget) throws SQLException {
+        if (tree.getOp() == OrqlNode.ReqlOp.Count) {
+            return resultSet.next() ? resultSet.getLong(1) : 0L;
+        }
+        ResultRoot resultRoot = reqlResult.toResult(tree.getRoot());
+        List<Map<String, Object>> results = resultMapper.mappe(resultRoot, resultSet, budget);
+        if (tree.getRoot() instanceof OrqlNode.ReqlArrayItem) {
+            return results;
+        }
+        return results.isEmpty() ? null : results.get(0);
+    }
+
+    /**
+     * 新session，从连接池获取连接，主从路由与当前session一致
+     */
+    DefaultSession fork() {
+        DefaultSession session = new DefaultSession(configuration, configuration.getDataSource());
+        session.written = written;
+        session.throwOnError = throwOnError;
+        return session;
+    }
+
+    @Override
+    public List<Object> queryAll(List<QueryRequest> requests) {
+        if (unitOfWork != null) flush();
+        if (! configuration.isMultiStatement()) {
+            return queryConcurrently(requests);
+        }
+        List<Object> results = new ArrayList<>(Collections.nCopies(requests.size(), null));
+        List<OrqlNode> trees = new ArrayList<>(requests.size());
+        // 可拼接执行的查询下标
+        List<Integer> indexes = new ArrayList<>();
+        List<NamedParamSql> namedParamSqls = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i ++) {
+            QueryRequest request = requests.get(i);
+            OrqlNode tree = parser.parse(request.getOrql());
+            trees.add(tree);
+            if (isShardRouted(tree.getRoot().getRef())) {
+                // 分片查询在分片上执行
+                results.set(i, doQuery(request.getOrql(), request.getParams(), request.getOffset(), request.getLimit(), null));
+                continue;
+            }
+            SqlNode.SqlPage sqlPage = new SqlNode.SqlPage(request.getOffset(), request.getLimit());
+            indexes.add(i);
+            namedParamSqls.add(new NamedParamSql(orqlToSql.toQuery(tree.getOp(), tree.getRoot(), sqlPage), request.getParams()));
+        }
+        if (indexes.isEmpty()) return results;
+        // 已得到结果的下标
+        Set<Integer> done = new HashSet<>();
+        Set<String> keys = new HashSet<>();
+        for (int i : indexes) {
+            keys.add(requests.get(i).getOrql());
+        }
+        List<AdmissionController.Permit> permits = admitAll(keys);
+        try {
+            sqlExecutor.queryMulti(readConnection(), namedParamSqls, configuration.getQueryTimeout(), (index, resultSet) -> {
+                int i = indexes.get(index);
+                results.set(i, mapResult(trees.get(i), resultSet, rowBudget(null)));
+                done.add(i);
+            });
+        } catch (SQLException e) {
+            RuntimeException exception = translate(e, null, configuration.getQueryTimeout());
+            if (exception != null) throw exception;
+            if (! isMultiStatementUnsupported(e)) {
+                onError(e);
+                return results;
+            }
+        } finally {
+            release();
+            releaseAll(permits);
+        }
+        // 驱动不支持多语句时，未得到结果的查询回退到并发执行
+        List<Integer> pending = new ArrayList<>();
+        List<QueryRequest> pendingRequests = new ArrayList<>();
+        for (int i : indexes) {
+            if (done.contains(i)) continue;
+            pending.add(i);
+            pendingRequests.add(requests.get(i));
+        }
+        if (pending.isEmpty()) return results;
+        List<Object> pendingResults = queryConcurrently(pendingRequests);
+        for (int i = 0; i < pending.size(); i ++) {
+            results.set(pending.get(i), pendingResults.get(i));
+        }
+        return results;
+    }
+
+    /**
+     * 驱动不支持多语句: 不支持的特性，或mysql未开启allowMultiQueries时的语法错误
+     */
+    private boolean isMultiStatementUnsupported(SQLException e) {
+        if (e instanceof SQLFeatureNotSupportedException) return true;
+        if (e.getSQLState() != null && e.getSQLState().startsWith("0A")) return true;
+        // 1064: ER_PARSE_ERROR
+        return configuration.getDialect() instanceof MysqlDialect && e.getErrorCode() == 1064;
+    }
+
+    /**
+     * 准入，未配置准入控制或不限制时返回null
+     */
+    private AdmissionController.Permit admit(String key) {
+        AdmissionController admissionController = configuration.getAdmissionController();
+        return admissionController == null ? null : admissionController.acquire(key);
+    }
+
+    /**
+     * 一次执行多个查询时按每个key准入，按key排序获取避免互相等待，失败时释放已获取的许可
+     */
+    private List<AdmissionController.Permit> admitAll(Collection<String> keys) {
+        List<AdmissionController.Permit> permits = new ArrayList<>();
+        if (configuration.getAdmissionController() == null) return permits;
+        List<String> sorted = new ArrayList<>(keys);
+        Collections.sort(sorted);
+        try {
+            for (String key : sorted) {
+                AdmissionController.Permit permit = admit(key);
+                if (permit != null) permits.add(permit);
+            }
+        } catch (RuntimeException e) {
+            releaseAll(permits);
+            throw e;
+        }
+        return permits;
+    }
+
+    /**
+     * 写操作和原生sql在获取连接前按orql或sql准入
+     * 分片session的写操作由上级session准入，nativeQuery只在执行期间占用许可
+     */
+    private <T> T admitted(String key, Supplier<T> supplier) {
+        if (admitted || shard >= 0 || key == null || configuration.getAdmissionController() == null) {
+            return supplier.get();
+        }
+        AdmissionController.Permit permit = admit(key);
+        admitted = true;
+        try {
+            return supplier.get();
+        } finally {
+            admitted = false;
+            if (permit != null) permit.release();
+        }
+    }
+
+    private static void releaseAll(List<AdmissionController.Permit> permits) {
+        for (AdmissionController.Permit permit : permits) {
+            permit.release();
+        }
+    }
+
+    /**
+     * 不支持多语句时每个查询使用单独连接并发执行，最后一个在当前session执行
+     * 事务中或使用外部连接时只有一个连接，顺序执行
+     */
+    private List<Object> queryConcurrently(List<QueryRequest> requests) {
+        List<Object> results = new ArrayList<>(requests.size());
+        if (dataSource == null || inTransaction()) {
+            for (QueryRequest request : requests) {
+                results.add(query(request.getOrql(), request.getParams(), request.getOffset(), request.getLimit()));
+            }
+            return results;
+        }
+        List<CompletableFuture<Object>> futures = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size() - 1; i ++) {
+            QueryRequest request = requests.get(i);
+            DefaultSession session = fork();
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> session.query(request.getOrql(), request.getParams(), request.getOffset(), request.getLimit()),
+                    configuration.getAsyncExecutor()));
+        }
+        Object last = null;
+        if (! requests.isEmpty()) {
+            QueryRequest request = requests.get(requests.size() - 1);
+            last = query(request.getOrql(), request.getParams(), request.getOffset(), request.getLimit());
+        }
+        for (CompletableFuture<Object> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                // 与当前session执行时一致，异常抛出
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw e;
+            }
+        }
+        if (! requests.isEmpty()) results.add(last);
+        return results;
+    }
+
     @Override
     public Object add(String reql, Map<String, Object> params) {
-        OrqlNode tree = parser.parse(reql);
-        return add(tree.getRoot(), params);
+        return admitted(reql, () -> {
+            OrqlNode tree = parser.parse(reql);
+            Schema schema = tree.getRoot().getRef();
+            if (isShardRouted(schema)) {
+                int index = ShardExecutor.route(schema, params.get(schema.getShardKey().getName()), configuration.getShards().size());
+                return shardSession(index).add(tree.getRoot(), params);
+            }
+            return add(tree.getRoot(), params);
+        });
+    }
+
+    /**
+     * 插入前先处理belongsTo,获取其id一起插入
+     */
+    private void bindBelongsTo(Schema schema, Map<String, Object> params) {
+        for (Association association : schema.getAssociations()) {
+            String name = association.getName();
+            if (params.containsKey(name) && params.get(name) != null) {
+                if (association.getType() == Association.Type.BelongsTo) {
+                    Map<String, Object> childData = (Map<String, Object>) params.get(name);
+                    Object childId = childData.get(association.getRefId().getName());
+                    if (childId != null) {
+                        params.put(association.getRefKey(), childId);
+                    }
+                }
+            }
+        }
     }
 
     private Object add(OrqlNode.ReqlRefItem root, Map<String, Object> params) {
         try {
+            List<Object> ids = insertRows(root, Collections.singletonList(params));
+            return ids.isEmpty() ? null : ids.get(0);
+        } catch (SQLException e) {
+            onError(e);
+        } finally {
+            release();
+        }
+        return null;
+    }
+
+    @Override
+    public List<Object> addAll(String reql, List<Map<String, Object>> paramsList) {
+        return admitted(reql, () -> {
+            OrqlNode tree = parser.parse(reql);
+            OrqlNode.OrqlRefItem root = tree.getRoot();
             Schema schema = root.getRef();
-            for (Association association : schema.getAssociations()) {
-                String name = association.getName();
-                if (params.containsKey(name) && params.get(name) != null) {
-                    // 插入前先处理belongsTo,获取其id一起插入
-                    if (association.getType() == Association.Type.BelongsTo) {
-                        Map<String, Object> childData = (Map<String, Object>) params.get(name);
-                        Object childId = childData.get(association.getRefId().getName());
-                        if (childId != null) {
-                            params.put(association.getRefKey(), childId);
+            List<Object> ids = new ArrayList<>(paramsList.size());
+            if (paramsList.isEmpty()) return ids;
+            // 分片按行路由
+            if (isShardRouted(schema)) {
+                for (Map<String, Object> params : paramsList) {
+                    ids.add(add(reql, params));
+                }
+                return ids;
+            }
+            try {
+                return insertRows(root, paramsList);
+            } catch (SQLException e) {
+                onError(e);
+            } finally {
+                release();
+            }
+            return ids;
+        });
+    }
+
+    /**
+     * 插入一层，多行时每批一条多行insert，不能返回多行id时逐行插入
+     * id写回各行参数，有级联下级时然后整层插入下级
+     * @param item
+     * @param rows
+     * @return 各行id
+     * @throws SQLException
+     */
+    private List<Object> insertRows(OrqlNode.OrqlRefItem item, List<Map<String, Object>> rows) throws SQLException {
+        Schema schema = item.getRef();
+        List<Object> ids = new ArrayList<>(rows.size());
+        if (rows.isEmpty()) return ids;
+        if (schema.isHiLo()) {
+            ids = insertHiLo(item, rows);
+        } else if (rows.size() == 1 || ! configuration.getDialect().supportsMultiRowGeneratedKeys()) {
+            String sql = orqlToSql.toAdd(item);
+            for (Map<String, Object> row : rows) {
+                bindBelongsTo(schema, row);
+                NamedParamSql namedParamSql = new NamedParamSql(sql, row);
+                namedParamSql.setGeneratedKey(true);
+                namedParamSql.idType(schema.getIdColumn().getDataType());
+                ids.add(sqlExecutor.insert(writeConnection(), namedParamSql));
+            }
+        } else {
+            List<String> names = orqlToSql.addParamNames(item);
+            int chunkSize = bulkChunkSize(names.size());
+            for (int from = 0; from < rows.size(); from += chunkSize) {
+                List<Map<String, Object>> chunk = rows.subList(from, Math.min(from + chunkSize, rows.size()));
+                NamedParamSql namedParamSql = new NamedParamSql(orqlToSql.toAddAll(item, chunk.size()), bulkParams(schema, chunk, names));
+                namedParamSql.setGeneratedKey(true);
+                namedParamSql.idType(schema.getIdColumn().getDataType());
+                ids.addAll(sqlExecutor.insertAll(writeConnection(), namedParamSql));
+            }
+        }
+        if (ids.size() != rows.size()) return ids;
+        for (int i = 0; i < rows.size(); i ++) {
+            rows.get(i).put(schema.getIdName(), ids.get(i));
+        }
+        if (hasCascade(item)) insertChildren(item, rows);
+        return ids;
+    }
+
+    /**
+     * 没有id的行先分配hiLo id，插入不读取生成的id，不受supportsMultiRowGeneratedKeys限制
+     * @return 各行id
+     */
+    private List<Object> insertHiLo(OrqlNode.OrqlRefItem item, List<Map<String, Object>> rows) throws SQLException {
+        Schema schema = item.getRef();
+        String idName = schema.getIdName();
+        int missing = 0;
+        for (Map<String, Object> row : rows) {
+            if (row.get(idName) == null) missing ++;
+        }
+        if (missing > 0) {
+            Iterator<Object> newIds = configuration.getIdGenerator().next(schema, missing).iterator();
+            for (Map<String, Object> row : rows) {
+                if (row.get(idName) == null) row.put(idName, newIds.next());
+            }
+        }
+        if (rows.size() == 1) {
+            Map<String, Object> row = rows.get(0);
+            bindBelongsTo(schema, row);
+            sqlExecutor.update(writeConnection(), new NamedParamSql(orqlToSql.toAdd(item), row));
+        } else {
+            List<String> names = orqlToSql.addParamNames(item);
+            int chunkSize = bulkChunkSize(names.size());
+            for (int from = 0; from < rows.size(); from += chunkSize) {
+                List<Map<String, Object>> chunk = rows.subList(from, Math.min(from + chunkSize, rows.size()));
+                sqlExecutor.update(writeConnection(), new NamedParamSql(orqlToSql.toAddAll(item, chunk.size()), bulkParams(schema, chunk, names)));
+            }
+        }
+        List<Object> ids = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            ids.add(row.get(idName));
+        }
+        return ids;
+    }
+
+    /**
+     * 是否有需要级联插入的hasOne/hasMany/belongsToMany
+     */
+    private boolean hasCascade(OrqlNode.OrqlRefItem item) {
+        for (OrqlNode.OrqlItem child : item.getChildren()) {
+            if (child instanceof OrqlNode.OrqlRefItem && ((OrqlNode.OrqlRefItem) child).getAssociation().getType() != Association.Type.BelongsTo) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * hasOne/hasMany 上级id赋值到下级外键，整层一起插入，已有id的下级只修改外键
+     * belongsToMany 没有id的先整层插入，然后中间表多行insert
+     * @param parent
+     * @param parentRows 已写回id的上级参数
+     * @throws SQLException
+     */
+    private void insertChildren(OrqlNode.OrqlRefItem parent, List<Map<String, Object>> parentRows) throws SQLException {
+        String idName = parent.getRef().getIdName();
+        for (OrqlNode.OrqlItem item : parent.getChildren()) {
+            if (! (item instanceof OrqlNode.OrqlRefItem)) continue;
+            OrqlNode.OrqlRefItem child = (OrqlNode.OrqlRefItem) item;
+            Association association = child.getAssociation();
+            if (association.getType() == Association.Type.BelongsTo) continue;
+            String childIdName = child.getRef().getIdName();
+            List<Map<String, Object>> rows = new ArrayList<>();
+            // 同一对象在多个上级中只插入一次，bean转换时共用的对象为同一map
+            Set<Map<String, Object>> added = Collections.newSetFromMap(new IdentityHashMap<>());
+            // 已有id的hasOne/hasMany下级，只修改外键
+            List<NamedParamSql> moves = new ArrayList<>();
+            // [上级id, 下级参数]
+            List<Object[]> links = new ArrayList<>();
+            for (Map<String, Object> parentRow : parentRows) {
+                Object parentId = parentRow.get(idName);
+                for (Map<String, Object> row : childRows(parentRow.get(association.getName()))) {
+                    if (association.getType() == Association.Type.BelongsToMany) {
+                        if (row.get(childIdName) == null && added.add(row)) rows.add(row);
+                        links.add(new Object[]{parentId, row});
+                    } else if (added.add(row)) {
+                        row.put(association.getRefKey(), parentId);
+                        if (row.get(childIdName) == null) {
+                            rows.add(row);
+                        } else {
+                            moves.add(new NamedParamSql(orqlToSql.toUpdateRefKey(association), row));
                         }
                     }
                 }
             }
-            NamedParamSql namedParamSql = new NamedParamSql(orqlToSql.toAdd(root), params);
-            namedParamSql.setGeneratedKey(true);
-            namedParamSql.idType(schema.getIdColumn().getDataType());
-            return sqlExecutor.insert(conn, namedParamSql);
-        } catch (SQLException e) {
-            e.printStackTrace();
+            if (! moves.isEmpty()) sqlExecutor.updateBatch(writeConnection(), moves);
+            insertRows(child, rows);
+            for (Object[] link : links) {
+                link[1] = ((Map<String, Object>) link[1]).get(childIdName);
+            }
+            insertMiddle(association, links);
+        }
+    }
+
+    private List<Map<String, Object>> childRows(Object value) {
+        if (value instanceof List) return (List<Map<String, Object>>) value;
+        if (value instanceof Map) return Collections.singletonList((Map<String, Object>) value);
+        return Collections.emptyList();
+    }
+
+    /**
+     * 中间表每批一条多行insert
+     * @param links [上级id, 下级id]
+     */
+    private void insertMiddle(Association association, List<Object[]> links) throws SQLException {
+        int chunkSize = bulkChunkSize(2);
+        for (int from = 0; from < links.size(); from += chunkSize) {
+            List<Object[]> chunk = links.subList(from, Math.min(from + chunkSize, links.size()));
+            Map<String, Object> params = new HashMap<>();
+            for (int row = 0; row < chunk.size(); row ++) {
+                params.put(row + "." + association.getMiddleKey(), chunk.get(row)[0]);
+                params.put(row + "." + association.getRefMiddleKey(), chunk.get(row)[1]);
+            }
+            sqlExecutor.update(writeConnection(), new NamedParamSql(orqlToSql.toAddMiddle(association, chunk.size()), params));
         }
-        return null;
     }
 
     @Override
-    public void delete(String reql, Map<String, Object> params) {
+    public int syncMiddle(Association association, Map<Object, ? extends Collection<?>> refIds) {
+        if (refIds.isEmpty()) return 0;
         try {
-            OrqlNode tree = parser.parse(reql);
-            OrqlNode.ReqlRefItem root = tree.getRoot();
-            NamedParamSql namedParamSql = new NamedParamSql(orqlToSql.toDelete(root), params);
-            sqlExecutor.delete(conn, namedParamSql);
+            // 一次查询当前关联 {上级id : 下级id}
+            Map<Object, Set<Object>> current = new HashMap<>();
+            for (Object[] link : middleKeys(writeConnection(), association, refIds.keySet())) {
+                current.computeIfAbsent(middleKey(link[0]), key -> new HashSet<>()).add(middleKey(link[1]));
+            }
+            List<NamedParamSql> deletes = new ArrayList<>();
+            List<Object[]> adds = new ArrayList<>();
+            String deleteSql = orqlToSql.toDeleteMiddle(association);
+            for (Map.Entry<Object, ? extends Collection<?>> entry : refIds.entrySet()) {
+                Object id = entry.getKey();
+                Set<Object> existing = current.getOrDefault(middleKey(id), Collections.emptySet());
+                Set<Object> desired = new LinkedHashSet<>();
+                for (Object refId : entry.getValue()) {
+                    desired.add(middleKey(refId));
+                }
+                for (Object refId : existing) {
+                    if (desired.contains(refId)) continue;
+                    Map<String, Object> deleteParams = new HashMap<>();
+                    deleteParams.put(association.getMiddleKey(), id);
+                    deleteParams.put(association.getRefMiddleKey(), refId);
+                    deletes.add(new NamedParamSql(deleteSql, deleteParams));
+                }
+                for (Object refId : desired) {
+                    if (! existing.contains(refId)) adds.add(new Object[]{id, refId});
+                }
+            }
+            if (! deletes.isEmpty()) sqlExecutor.updateBatch(writeConnection(), deletes);
+            insertMiddle(association, adds);
+            return deletes.size() + adds.size();
         } catch (SQLException e) {
-            e.printStackTrace();
+            onError(e);
+        } finally {
+            release();
+        }
+        return 0;
+    }
+
+    /**
+     * 整数id统一为Long比较，数据库列类型与对象字段类型可能不同
+     */
+    private static Object middleKey(Object id) {
+        if (id instanceof Integer || id instanceof Short || id instanceof Byte) return ((Number) id).longValue();
+        return id;
+    }
+
+    /**
+     * 每条多行语句的行数
+     */
+    private int bulkChunkSize(int paramsPerRow) {
+        return Math.max(1, Math.min(configuration.getBulkMaxRows(), configuration.getBulkMaxParams() / Math.max(1, paramsPerRow)));
+    }
+
+    /**
+     * 多行语句参数 行号.参数名
+     */
+    private Map<String, Object> bulkParams(Schema schema, List<Map<String, Object>> chunk, List<String> names) {
+        Map<String, Object> params = new HashMap<>();
+        for (int row = 0; row < chunk.size(); row ++) {
+            Map<String, Object> rowParams = chunk.get(row);
+            bindBelongsTo(schema, rowParams);
+            for (String name : names) {
+                params.put(row + "." + name, rowParams.get(name));
+            }
         }
+        return params;
     }
 
     @Override
-    public void update(String reql, Map<String, Object> params) {
-        try {
+    public int upsert(String reql, Map<String, Object> params) {
+        return admitted(reql, () -> {
             OrqlNode tree = parser.parse(reql);
-            OrqlNode.ReqlRefItem root = tree.getRoot();
+            OrqlNode.OrqlRefItem root = tree.getRoot();
             Schema schema = root.getRef();
-            for (Association association : schema.getAssociations()) {
-                String name = association.getName();
-                if (params.containsKey(name) && params.get(name) != null) {
-                    // 更改前先处理belongsTo
-                    if (association.getType() == Association.Type.BelongsTo) {
-                        Map<String, Object> childData = (Map<String, Object>) params.get(name);
-                        params.put(association.getRefKey(), childData.get(association.getRefId().getName()));
+            if (isShardRouted(schema)) {
+                int index = ShardExecutor.route(schema, params.get(schema.getShardKey().getName()), configuration.getShards().size());
+                return shardSession(index).upsert(reql, params);
+            }
+            try {
+                bindBelongsTo(schema, params);
+                return sqlExecutor.update(writeConnection(), new NamedParamSql(orqlToSql.toUpsert(root), params));
+            } catch (SQLException e) {
+                onError(e);
+            } finally {
+                release();
+            }
+            return 0;
+        });
+    }
+
+    @Override
+    public int upsertAll(String reql, List<Map<String, Object>> paramsList) {
+        return admitted(reql, () -> {
+            OrqlNode tree = parser.parse(reql);
+            OrqlNode.OrqlRefItem root = tree.getRoot();
+            Schema schema = root.getRef();
+            int rows = 0;
+            if (isShardRouted(schema)) {
+                for (Map<String, Object> params : paramsList) {
+                    rows += upsert(reql, params);
+                }
+                return rows;
+            }
+            List<String> names = orqlToSql.addParamNames(root);
+            int chunkSize = bulkChunkSize(names.size());
+            try {
+                for (int from = 0; from < paramsList.size(); from += chunkSize) {
+                    List<Map<String, Object>> chunk = paramsList.subList(from, Math.min(from + chunkSize, paramsList.size()));
+                    NamedParamSql namedParamSql = new NamedParamSql(orqlToSql.toUpsertAll(root, chunk.size()), bulkParams(schema, chunk, names));
+                    rows += sqlExecutor.update(writeConnection(), namedParamSql);
+                }
+            } catch (SQLException e) {
+                onError(e);
+            } finally {
+                release();
+            }
+            return rows;
+        });
+    }
+
+    @Override
+    public int delete(String reql, Map<String, Object> params) {
+        return admitted(reql, () -> {
+            try {
+                OrqlNode tree = parser.parse(reql);
+                OrqlNode.ReqlRefItem root = tree.getRoot();
+                if (isShardRouted(root.getRef())) {
+                    return forEachRoutedShard(root, params, shardSession -> shardSession.delete(reql, params));
+                }
+                int chunkSize = configuration.getMutationChunkSize();
+                if (chunkSize <= 0) {
+                    NamedParamSql namedParamSql = new NamedParamSql(orqlToSql.toDelete(root), params);
+                    return sqlExecutor.delete(writeConnection(), namedParamSql);
+                }
+                // 每批单独执行，非事务时每批提交，避免长时间锁
+                NamedParamSql namedParamSql = new NamedParamSql(orqlToSql.toDelete(root, chunkSize), params);
+                int rows = 0;
+                int count;
+                do {
+                    count = sqlExecutor.delete(writeConnection(), namedParamSql);
+                    release();
+                    rows += count;
+                } while (count >= chunkSize);
+                return rows;
+            } catch (SQLException e) {
+                onError(e);
+            } finally {
+                release();
+            }
+            return 0;
+        });
+    }
+
+    @Override
+    public int update(String reql, Map<String, Object> params) {
+        return admitted(reql, () -> {
+            try {
+                OrqlNode tree = parser.parse(reql);
+                OrqlNode.ReqlRefItem root = tree.getRoot();
+                if (isShardRouted(root.getRef())) {
+                    return forEachRoutedShard(root, params, shardSession -> shardSession.update(reql, params));
+                }
+                Schema schema = root.getRef();
+                for (Association association : schema.getAssociations()) {
+                    String name = association.getName();
+                    if (params.containsKey(name) && params.get(name) != null) {
+                        // 更改前先处理belongsTo
+                        if (association.getType() == Association.Type.BelongsTo) {
+                            Map<String, Object> childData = (Map<String, Object>) params.get(name);
+                            params.put(association.getRefKey(), childData.get(association.getRefId().getName()));
+                        }
                     }
                 }
+                int chunkSize = configuration.getMutationChunkSize();
+                if (chunkSize <= 0) {
+                    NamedParamSql namedParamSql = new NamedParamSql(orqlToSql.toUpdate(root), params);
+                    return sqlExecutor.update(writeConnection(), namedParamSql);
+                }
+                return updateChunks(root, params, chunkSize);
+            } catch ( SQLException e) {
+                onError(e);
+            } finally {
+                release();
             }
-            NamedParamSql namedParamSql = new NamedParamSql(orqlToSql.toUpdate(root), params);
-            sqlExecutor.update(conn, namedParamSql);
-        } catch ( SQLException e) {
-            e.printStackTrace();
+            return 0;
+        });
+    }
+
+    @Override
+    public int[] updateBatch(String reql, List<Map<String, Object>> paramsList) {
+        return admitted(reql, () -> {
+            OrqlNode tree = parser.parse(reql);
+            OrqlNode.OrqlRefItem root = tree.getRoot();
+            Schema schema = root.getRef();
+            int[] rows = new int[paramsList.size()];
+            if (isShardRouted(schema)) {
+                int shardCount = configuration.getShards().size();
+                for (int i = 0; i < paramsList.size(); i ++) {
+                    Map<String, Object> params = paramsList.get(i);
+                    Integer index = ShardExecutor.route(schema, root.getWhere(), params, shardCount);
+                    if (index == null) {
+                        rows[i] = update(reql, params);
+                        continue;
+                    }
+                    int[] shardRows = shardSession(index).updateBatch(reql, Collections.singletonList(params));
+                    // 执行失败
+                    if (shardRows.length == 0) return new int[0];
+                    rows[i] = shardRows[0];
+                }
+                return rows;
+            }
+            String sql = orqlToSql.toUpdate(root);
+            List<NamedParamSql> namedParamSqls = new ArrayList<>(paramsList.size());
+            for (Map<String, Object> params : paramsList) {
+                bindBelongsTo(schema, params);
+                namedParamSqls.add(new NamedParamSql(sql, params));
+            }
+            try {
+                return sqlExecutor.updateBatch(writeConnection(), namedParamSqls);
+            } catch (SQLException e) {
+                onError(e);
+            } finally {
+                release();
+            }
+            // 执行失败时不返回每行结果，避免被当作冲突
+            return new int[0];
+        });
+    }
+
+    /**
+     * 按id顺序每次取chunkSize个匹配id更新，更新后仍匹配条件的行不会重复更新
+     */
+    private int updateChunks(OrqlNode.OrqlRefItem root, Map<String, Object> params, int chunkSize) throws SQLException {
+        int rows = 0;
+        Object lastId = null;
+        while (true) {
+            Map<String, Object> chunkParams = new HashMap<>(params);
+            if (lastId != null) chunkParams.put(OrqlToSql.ChunkLastId, lastId);
+            List<Object> ids = new ArrayList<>();
+            ResultSet resultSet = sqlExecutor.query(writeConnection(), new NamedParamSql(orqlToSql.toChunkIds(root, chunkSize, lastId != null), chunkParams));
+            try {
+                while (resultSet.next()) {
+                    ids.add(resultSet.getObject(1));
+                }
+            } finally {
+                resultSet.getStatement().close();
+            }
+            if (ids.isEmpty()) break;
+            chunkParams.put(OrqlToSql.ChunkIds, ids);
+            rows += sqlExecutor.update(writeConnection(), new NamedParamSql(orqlToSql.toUpdateChunk(root), chunkParams));
+            release();
+            if (ids.size() < chunkSize) break;
+            lastId = ids.get(ids.size() - 1);
+        }
+        return rows;
+    }
+
+    /**
+     * where有分片键时在一个分片执行，否则在所有分片执行
+     * @return 影响行数之和
+     */
+    private int forEachRoutedShard(OrqlNode.OrqlRefItem root, Map<String, Object> params, ToIntFunction<DefaultSession> function) {
+        int shardCount = configuration.getShards().size();
+        Integer index = ShardExecutor.route(root.getRef(), root.getWhere(), params, shardCount);
+        if (index != null) {
+            return function.applyAsInt(shardSession(index));
+        }
+        int rows = 0;
+        for (int i = 0; i < shardCount; i ++) {
+            rows += function.applyAsInt(shardSession(i));
         }
+        return rows;
     }
 
     @Override
     public ResultSet nativeQuery(NamedParamSql namedParamSql) {
-        try {
-            return sqlExecutor.query(conn, namedParamSql);
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return null;
+        return admitted(namedParamSql.getSql(), () -> {
+            try {
+                // ResultSet在调用方读取，连接持有到close
+                pinned = true;
+                return sqlExecutor.query(connection(), namedParamSql);
+            } catch (SQLException e) {
+                onError(e);
+            }
+            return null;
+        });
     }
 
     @Override
     public Object nativeAdd(NamedParamSql namedParamSql) {
-        try {
-            return sqlExecutor.insert(conn, namedParamSql);
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return null;
+        return admitted(namedParamSql.getSql(), () -> {
+            try {
+                return sqlExecutor.insert(writeConnection(), namedParamSql);
+            } catch (SQLException e) {
+                onError(e);
+            } finally {
+                release();
+            }
+            return null;
+        });
     }
 
     @Override
     public int nativeUpdate(NamedParamSql namedParamSql) {
-        try {
-            return sqlExecutor.update(this.conn, namedParamSql);
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return 0;
+        return admitted(namedParamSql.getSql(), () -> {
+            try {
+                return sqlExecutor.update(writeConnection(), namedParamSql);
+            } catch (SQLException e) {
+                onError(e);
+            } finally {
+                release();
+            }
+            return 0;
+        });
+    }
+
+    @Override
+    public int[] nativeUpdateBatch(List<NamedParamSql> namedParamSqls) {
+        return admitted(namedParamSqls.isEmpty() ? null : namedParamSqls.get(0).getSql(), () -> {
+            try {
+                return sqlExecutor.updateBatch(writeConnection(), namedParamSqls);
+            } catch (SQLException e) {
+                onError(e);
+            } finally {
+                release();
+            }
+            return new int[0];
+        });
     }
 
     @Override
     public int nativeDelete(NamedParamSql namedParamSql) {
+        return admitted(namedParamSql.getSql(), () -> {
+            try {
+                return sqlExecutor.delete(writeConnection(), namedParamSql);
+            } catch (SQLException e) {
+                onError(e);
+            } finally {
+                release();
+            }
+            return 0;
+        });
+    }
+
+    @Override
+    public void preload(List<?> entities, String... associationPaths) {
+        AssociationFetcher fetcher = new AssociationFetcher(this, configuration.getLoadBatchSize());
+        new AssociationPreloader(schemaManager, fetcher).preload(entities, associationPaths);
+    }
+
+    @Override
+    public Map<Object, List<Object>> queryMiddleKeys(Association association, Collection<?> ids) {
+        Map<Object, List<Object>> keys = new LinkedHashMap<>();
+        if (ids.isEmpty()) return keys;
         try {
-            return sqlExecutor.delete(this.conn, namedParamSql);
+            for (Object[] link : middleKeys(readConnection(), association, ids)) {
+                keys.computeIfAbsent(link[0], key -> new ArrayList<>()).add(link[1]);
+            }
         } catch (SQLException e) {
-            e.printStackTrace();
+            onError(e);
+        } finally {
+            release();
         }
-        return 0;
+        return keys;
+    }
+
+    /**
+     * 中间表中上级id的关联
+     * @return [上级id, 下级id]
+     */
+    private List<Object[]> middleKeys(Connection conn, Association association, Collection<?> ids) throws SQLException {
+        Map<String, Object> params = new HashMap<>();
+        params.put(OrqlToSql.MiddleIds, new ArrayList<>(ids));
+        List<Object[]> links = new ArrayList<>();
+        ResultSet resultSet = sqlExecutor.query(conn, new NamedParamSql(orqlToSql.toMiddleKeys(association), params));
+        try {
+            while (resultSet.next()) {
+                links.add(new Object[]{resultSet.getObject(1), resultSet.getObject(2)});
+            }
+        } finally {
+            resultSet.getStatement().close();
+        }
+        return links;
     }
 
     @Override
     public QueryBuilder buildQuery() {
-        return new QueryBuilder(this, schemaManager);
+        return new QueryBuilder(this, schemaManager).lazyBatchSize(configuration.getLoadBatchSize());
     }
 
     @Override
     public UpdateBuilder buildUpdate() {
-        return new UpdateBuilder(this, schemaManager);
+        return new UpdateBuilder(this, schemaManager).writePlans(configuration.getWritePlans());
     }
 
     @Override
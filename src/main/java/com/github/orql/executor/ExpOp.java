@@ -9,7 +9,8 @@ public enum ExpOp {
     Le("<="),
     Ne("!="),
     Eq("="),
-    Like("like");
+    Like("like"),
+    In("in");
 
     private String text;
 
@@ -0,0 +1,126 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.schema.DataType;
+import com.github.orql.executor.schema.Schema;
+import com.github.orql.executor.sql.NamedParamSql;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * hiLo主键生成，从序列表按块预留id，在内存中分配，多个session共享
+ * update orql_sequence set next_id = next_id + 100 where name = 'user' 预留(next_id - 100, next_id]
+ * 预留在独立连接的事务中执行，session回滚不会重复分配
+ */
+public class IdGenerator {
+
+    private static final int MaxRetries = 3;
+
+    private final Configuration configuration;
+
+    private final Map<Schema, Block> blocks = new ConcurrentHashMap<>();
+
+    private volatile boolean tableCreated = false;
+
+    IdGenerator(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * 已预留未分配的id (next, max]
+     */
+    private static class Block {
+
+        long next = 0;
+
+        long max = 0;
+    }
+
+    /**
+     * 分配count个id，当前块不够时预留新块，一次需要的超过块大小时按需要的数量预留
+     * @param schema
+     * @param count
+     * @return 按主键类型的id
+     */
+    public List<Object> next(Schema schema, int count) {
+        Block block = blocks.computeIfAbsent(schema, key -> new Block());
+        boolean isInt = schema.getIdColumn().getDataType() == DataType.Int;
+        List<Object> ids = new ArrayList<>(count);
+        synchronized (block) {
+            while (ids.size() < count) {
+                if (block.next >= block.max) {
+                    int size = Math.max(configuration.getIdBlockSize(), count - ids.size());
+                    block.max = reserve(schema, size);
+                    block.next = block.max - size;
+                }
+                block.next ++;
+                ids.add(isInt ? (Object) (int) block.next : (Object) block.next);
+            }
+        }
+        return ids;
+    }
+
+    public Object next(Schema schema) {
+        return next(schema, 1).get(0);
+    }
+
+    /**
+     * 预留size个id
+     * @return 预留的最大id
+     */
+    private long reserve(Schema schema, int size) {
+        DataSource dataSource = configuration.getDataSource();
+        if (dataSource == null) {
+            throw new IllegalStateException("schema " + schema.getName() + " hiLo id requires dataSource");
+        }
+        SqlExecutor sqlExecutor = configuration.getSqlExecutor();
+        String table = configuration.getIdSequenceTable();
+        Map<String, Object> params = new HashMap<>();
+        params.put("name", schema.getName());
+        params.put("size", size);
+        SQLException last = null;
+        for (int i = 0; i < MaxRetries; i ++) {
+            try (Connection conn = dataSource.getConnection()) {
+                if (! tableCreated) {
+                    sqlExecutor.update(conn, new NamedParamSql("create table if not exists " + table + "(name varchar(64) primary key, next_id bigint not null)", params));
+                    tableCreated = true;
+                }
+                conn.setAutoCommit(false);
+                try {
+                    NamedParamSql increment = new NamedParamSql("update " + table + " set next_id = next_id + $size where name = $name", params);
+                    if (sqlExecutor.update(conn, increment) == 0) {
+                        // 首次使用从表中已有的最大id开始，并发插入时主键冲突后重试
+                        sqlExecutor.update(conn, new NamedParamSql("insert into " + table + "(name, next_id) select $name, coalesce(max(" +
+                                schema.getIdField() + "), 0) from " + schema.getTable(), params));
+                        sqlExecutor.update(conn, increment);
+                    }
+                    ResultSet resultSet = sqlExecutor.query(conn, new NamedParamSql("select next_id from " + table + " where name = $name", params));
+                    long max;
+                    try {
+                        resultSet.next();
+                        max = resultSet.getLong(1);
+                    } finally {
+                        resultSet.getStatement().close();
+                    }
+                    conn.commit();
+                    return max;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                last = e;
+            }
+        }
+        throw new IllegalStateException("schema " + schema.getName() + " reserve id block failed", last);
+    }
+}
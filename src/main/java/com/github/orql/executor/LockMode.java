@@ -0,0 +1,19 @@
+package com.github.orql.executor;
+
+/**
+ * 查询行锁
+ */
+public enum LockMode {
+    /**
+     * for update，等待其他事务释放锁
+     */
+    ForUpdate,
+    /**
+     * for update skip locked，跳过已被锁定的行
+     */
+    SkipLocked,
+    /**
+     * for update nowait，行已被锁定时立即失败
+     */
+    NoWait
+}
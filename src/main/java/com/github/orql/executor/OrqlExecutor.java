@@ -1,27 +1,73 @@
 package com.github.orql.executor;
 
+import com.github.orql.executor.loader.IdBatchLoader;
+
 import java.sql.Connection;
-import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class OrqlExecutor {
 
     protected Configuration configuration;
 
+    private volatile IdBatchLoader idBatchLoader;
+
     public OrqlExecutor(Configuration configuration) {
         this.configuration = configuration;
     }
 
+    /**
+     * 连接在首次执行语句时获取，事务外每条语句后归还
+     */
     public Session newSession() {
-        try {
-            return new DefaultSession(configuration, configuration.getDataSource().getConnection());
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return null;
+        return new DefaultSession(configuration, configuration.getDataSource());
     }
 
     public Session newSession(Connection conn) {
         return new DefaultSession(configuration, conn);
     }
 
-}
\ No newline at end of file
+    public AsyncSession newAsyncSession() {
+        return new DefaultAsyncSession(configuration);
+    }
+
+    public CompletableFuture<Object> queryAsync(String reql, Map<String, Object> params) {
+        return newAsyncSession().query(reql, params, null, null);
+    }
+
+    public CompletableFuture<Object> queryAsync(String reql, Map<String, Object> params, Long offset, Integer limit) {
+        return newAsyncSession().query(reql, params, offset, limit);
+    }
+
+    /**
+     * 按id查询，并发请求按schema合并为一次in查询
+     * @param clazz
+     * @param id
+     * @param <T>
+     * @return
+     */
+    public <T> CompletableFuture<T> loadById(Class<T> clazz, Object id) {
+        return getIdBatchLoader().load(clazz, id);
+    }
+
+    /**
+     * 批量查询在asyncExecutor中执行，IdBatchLoader.shutdown只关闭自己的计时线程，不关闭asyncExecutor
+     * @return
+     */
+    public IdBatchLoader getIdBatchLoader() {
+        if (idBatchLoader == null) {
+            synchronized (this) {
+                if (idBatchLoader == null) {
+                    idBatchLoader = new IdBatchLoader(
+                            this,
+                            configuration.getSchemaManager(),
+                            configuration.getBatchWindowMillis(),
+                            configuration.getBatchMaxSize(),
+                            configuration.getAsyncExecutor());
+                }
+            }
+        }
+        return idBatchLoader;
+    }
+
+}
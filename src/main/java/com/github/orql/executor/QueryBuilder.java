@@ -1,15 +1,27 @@
 package com.github.orql.executor;
 
+import com.github.orql.executor.loader.AssociationFetcher;
+import com.github.orql.executor.loader.AssociationLoader;
+import com.github.orql.executor.schema.Association;
+import com.github.orql.executor.schema.Schema;
 import com.github.orql.executor.schema.SchemaManager;
 import com.github.orql.executor.util.MapBean;
 
+import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class QueryBuilder {
 
+    /**
+     * claim更新的id集合参数名
+     */
+    private static final String ClaimIds = "claimIds";
+
     private Integer page;
 
     private Integer size;
@@ -26,6 +38,18 @@ public class QueryBuilder {
 
     private SchemaManager schemaManager;
 
+    /**
+     * 懒加载的集合关联
+     */
+    private List<String> lazyAssociations = new ArrayList<>();
+
+    private int lazyBatchSize = 100;
+
+    /**
+     * 超时、预算或取消，null使用默认值
+     */
+    private QueryHandle handle;
+
     public QueryBuilder(Session session, SchemaManager schemaManager) {
         this.session = session;
         this.schemaManager = schemaManager;
@@ -66,27 +90,219 @@ public class QueryBuilder {
         return this;
     }
 
+    /**
+     * 未在orql中查询的集合关联首次访问时加载，同一结果中的对象按批一起加载
+     * @param associations hasMany belongsToMany关联名
+     * @return
+     */
+    public QueryBuilder lazy(String... associations) {
+        this.lazyAssociations.addAll(Arrays.asList(associations));
+        return this;
+    }
+
+    public QueryBuilder lazyBatchSize(int lazyBatchSize) {
+        this.lazyBatchSize = lazyBatchSize;
+        return this;
+    }
+
+    /**
+     * 查询超时秒数，超时抛出QueryTimeoutException
+     * @param seconds
+     * @return
+     */
+    public QueryBuilder timeout(int seconds) {
+        handle().timeout(seconds);
+        return this;
+    }
+
+    /**
+     * 最大结果行数，超出抛出QueryBudgetExceededException
+     * @param maxRows
+     * @return
+     */
+    public QueryBuilder maxRows(int maxRows) {
+        handle().maxRows(maxRows);
+        return this;
+    }
+
+    /**
+     * 结果估算最大字节数，超出抛出QueryBudgetExceededException
+     * @param maxBytes
+     * @return
+     */
+    public QueryBuilder maxBytes(long maxBytes) {
+        handle().maxBytes(maxBytes);
+        return this;
+    }
+
+    /**
+     * 准入控制标签，同一标签的查询共享并发限制
+     * @param tag
+     * @return
+     */
+    public QueryBuilder tag(String tag) {
+        handle().tag(tag);
+        return this;
+    }
+
+    /**
+     * 查询加行锁，需要在事务中执行，在主库查询
+     * @param lockMode
+     * @return
+     */
+    public QueryBuilder lock(LockMode lockMode) {
+        handle().lock(lockMode);
+        return this;
+    }
+
+    public QueryBuilder forUpdate() {
+        return lock(LockMode.ForUpdate);
+    }
+
+    /**
+     * 跳过其他事务已锁定的行，用于多个worker并发领取
+     * @return
+     */
+    public QueryBuilder skipLocked() {
+        return lock(LockMode.SkipLocked);
+    }
+
+    /**
+     * 行已被锁定时立即失败
+     * @return
+     */
+    public QueryBuilder noWait() {
+        return lock(LockMode.NoWait);
+    }
+
+    /**
+     * 查询句柄，可在其他线程调用cancel取消，取消后抛出QueryCancelledException
+     * @return
+     */
+    public QueryHandle handle() {
+        if (handle == null) {
+            handle = new QueryHandle();
+        }
+        return handle;
+    }
+
     public <T> List<T> queryAll(Class<T> clazz) {
         if (page != null && size != null) {
             offset = (long) (page - 1) * size;
             limit = size;
         }
-        Object result = session.query(reql, params, offset, limit);
+        Object result = session.query(reql, params, offset, limit, handle);
         List<T> list = new ArrayList<>();
         for (Object child : (List) result) {
             list.add((T) MapBean.toBean((Map) child, clazz));
         }
+        snapshot(list);
+        attachLazy(list, clazz);
         return list;
     }
 
     public <T> T queryOne(Class<T> clazz) {
-        Object result = session.query(reql, params, null, null);
+        Object result = session.query(reql, params, null, null, handle);
         if (result == null) return null;
-        return (T) MapBean.toBean((Map) result, clazz);
+        T bean = (T) MapBean.toBean((Map) result, clazz);
+        snapshot(Collections.singletonList(bean));
+        attachLazy(Collections.singletonList(bean), clazz);
+        return bean;
+    }
+
+    /**
+     * 队列领取，for update skip locked 查询最多n行，按id一条语句更新领取到的行
+     * 多个worker并发领取时跳过彼此锁定的行，不互相等待
+     * session不在事务中时开启事务并提交，已在事务中时在该事务中执行，由调用方提交
+     * 更新行数与领取行数不一致或失败时回滚自己开启的事务并抛出
+     * buildQuery().reql("query job(status = #status order id) : [*]").param("status", "new").claim(Job.class, 10, sets)
+     * @param clazz
+     * @param n 最多领取行数
+     * @param sets 更新的列 {列名 : 值}，同时赋值到返回的对象
+     * @return 领取到的对象
+     */
+    public <T> List<T> claim(Class<T> clazz, int n, Map<String, Object> sets) {
+        Schema schema = schemaManager.getSchema(clazz);
+        String idName = schema.getIdName();
+        limit(n).skipLocked();
+        boolean own = ! session.inTransaction();
+        if (own) session.beginTransaction();
+        try {
+            List<T> claimed = queryAll(clazz);
+            if (! claimed.isEmpty() && ! sets.isEmpty()) {
+                List<Object> ids = new ArrayList<>(claimed.size());
+                Field idField = clazz.getDeclaredField(idName);
+                idField.setAccessible(true);
+                for (T bean : claimed) {
+                    ids.add(idField.get(bean));
+                }
+                // update job(id in #claimIds) : {status, owner}
+                String update = "update " + schema.getName() + "(" + idName + " in #" + ClaimIds + ") : {" + String.join(", ", sets.keySet()) + "}";
+                Map<String, Object> updateParams = new HashMap<>(sets);
+                updateParams.put(ClaimIds, ids);
+                int rows = session.update(update, updateParams);
+                if (rows != ids.size()) {
+                    throw new IllegalStateException("claim " + schema.getName() + " updated " + rows + " of " + ids.size() + " rows");
+                }
+                for (T bean : claimed) {
+                    for (Map.Entry<String, Object> entry : sets.entrySet()) {
+                        Field field = clazz.getDeclaredField(entry.getKey());
+                        field.setAccessible(true);
+                        field.set(bean, entry.getValue());
+                    }
+                    Snapshots snapshots = session.getSnapshots();
+                    if (snapshots != null) snapshots.refresh(bean);
+                }
+            }
+            if (own) session.commit();
+            return claimed;
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            if (own) session.rollback();
+            throw new IllegalStateException("claim " + schema.getName() + " failed", e);
+        } catch (RuntimeException e) {
+            if (own) session.rollback();
+            throw e;
+        }
+    }
+
+    private void snapshot(List<?> beans) {
+        Snapshots snapshots = session.getSnapshots();
+        if (snapshots == null) return;
+        for (Object bean : beans) {
+            snapshots.take(bean);
+        }
+    }
+
+    private <T> void attachLazy(List<T> beans, Class<T> clazz) {
+        if (lazyAssociations.isEmpty() || beans.isEmpty()) return;
+        Schema schema = schemaManager.getSchema(clazz);
+        AssociationFetcher fetcher = new AssociationFetcher(session, lazyBatchSize);
+        try {
+            Field idField = clazz.getDeclaredField(schema.getIdName());
+            idField.setAccessible(true);
+            for (String name : lazyAssociations) {
+                Association association = schema.getAssociation(name);
+                if (association == null || ! association.isArray()) {
+                    throw new IllegalArgumentException("schema " + schema.getName() + " not exist array association " + name);
+                }
+                Field field = clazz.getDeclaredField(name);
+                field.setAccessible(true);
+                AssociationLoader loader = new AssociationLoader(fetcher, association, lazyBatchSize);
+                for (T bean : beans) {
+                    // 已在orql中查询
+                    if (field.get(bean) != null) continue;
+                    Object id = idField.get(bean);
+                    if (id == null) continue;
+                    field.set(bean, loader.register(id));
+                }
+            }
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            e.printStackTrace();
+        }
     }
 
     public Long count() {
-        return (Long) session.query(reql, params, null, null);
+        return (Long) session.query(reql, params, null, null, handle);
     }
 
 }
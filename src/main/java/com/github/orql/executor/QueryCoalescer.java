@@ -0,0 +1,143 @@
+package com.github.orql.executor;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 合并相同的并发查询
+ * 相同orql、参数、分页的查询执行中时，后来者等待第一个查询的结果
+ * 执行者得到原结果，等待者各自得到结果的副本，互不影响
+ */
+public class QueryCoalescer {
+
+    private final Map<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 实际执行次数
+     */
+    private final AtomicLong executions = new AtomicLong();
+
+    /**
+     * 合并次数，即节省的执行次数
+     */
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private static class Key {
+        final String orql;
+        final Map<String, Object> params;
+        final Long offset;
+        final Integer limit;
+
+        Key(String orql, Map<String, Object> params, Long offset, Integer limit) {
+            this.orql = orql;
+            this.params = params == null ? Collections.emptyMap() : new HashMap<>(params);
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (! (obj instanceof Key)) return false;
+            Key key = (Key) obj;
+            return orql.equals(key.orql) &&
+                    params.equals(key.params) &&
+                    Objects.equals(offset, key.offset) &&
+                    Objects.equals(limit, key.limit);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(orql, params, offset, limit);
+        }
+    }
+
+    public Object query(String orql, Map<String, Object> params, Long offset, Integer limit, Supplier<Object> query) {
+        Key key = new Key(orql, params, offset, limit);
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            try {
+                return copy(running.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw e;
+            }
+        }
+        executions.incrementAndGet();
+        try {
+            Object result = query.get();
+            // 执行者返回后可能修改结果，等待者从只读快照复制
+            future.complete(freeze(result));
+            return result;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * 结果转为只读
+     * @param result
+     * @return
+     */
+    private Object freeze(Object result) {
+        if (result instanceof List) {
+            List<Object> list = new ArrayList<>(((List) result).size());
+            for (Object child : (List) result) {
+                list.add(freeze(child));
+            }
+            return Collections.unmodifiableList(list);
+        }
+        if (result instanceof Map) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) result).entrySet()) {
+                map.put(entry.getKey(), freeze(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(map);
+        }
+        return result;
+    }
+
+    /**
+     * 复制为可修改的结果
+     * @param result
+     * @return
+     */
+    private Object copy(Object result) {
+        if (result instanceof List) {
+            List<Object> list = new ArrayList<>(((List) result).size());
+            for (Object child : (List) result) {
+                list.add(copy(child));
+            }
+            return list;
+        }
+        if (result instanceof Map) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) result).entrySet()) {
+                map.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return map;
+        }
+        return result;
+    }
+
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+}
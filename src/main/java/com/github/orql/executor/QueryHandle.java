@@ -0,0 +1,136 @@
+package com.github.orql.executor;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 查询句柄，通过Statement.cancel取消执行中的语句
+ * 可设置单次查询的超时和行数/内存预算，未设置时使用Configuration中的默认值
+ */
+public class QueryHandle {
+
+    private volatile Statement statement;
+
+    private volatile boolean cancelled = false;
+
+    /**
+     * 超时秒数
+     */
+    private Integer timeout;
+
+    private Integer maxRows;
+
+    private Long maxBytes;
+
+    /**
+     * 准入控制标签，null按orql限制
+     */
+    private String tag;
+
+    /**
+     * 行锁，null不加锁
+     */
+    private LockMode lock;
+
+    /**
+     * 并行子查询的句柄，取消时一起取消
+     */
+    private final List<QueryHandle> children = new CopyOnWriteArrayList<>();
+
+    public QueryHandle timeout(int seconds) {
+        this.timeout = seconds;
+        return this;
+    }
+
+    public QueryHandle maxRows(int maxRows) {
+        this.maxRows = maxRows;
+        return this;
+    }
+
+    public QueryHandle maxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    public QueryHandle tag(String tag) {
+        this.tag = tag;
+        return this;
+    }
+
+    public QueryHandle lock(LockMode lock) {
+        this.lock = lock;
+        return this;
+    }
+
+    public LockMode getLock() {
+        return lock;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public Integer getTimeout() {
+        return timeout;
+    }
+
+    public Integer getMaxRows() {
+        return maxRows;
+    }
+
+    public Long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        Statement current = statement;
+        if (current != null) {
+            try {
+                current.cancel();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        for (QueryHandle child : children) {
+            child.cancel();
+        }
+    }
+
+    /**
+     * 在其他连接并行执行的子查询使用，超时、预算、标签和锁与当前句柄相同
+     * @return
+     */
+    QueryHandle fork() {
+        QueryHandle child = new QueryHandle();
+        child.timeout = timeout;
+        child.maxRows = maxRows;
+        child.maxBytes = maxBytes;
+        child.tag = tag;
+        child.lock = lock;
+        children.add(child);
+        // 加入前已取消
+        if (cancelled) child.cancel();
+        return child;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void attach(Statement statement) throws SQLException {
+        this.statement = statement;
+        // 执行前已取消
+        if (cancelled) {
+            this.statement = null;
+            throw new SQLException("query cancelled");
+        }
+    }
+
+    void detach() {
+        this.statement = null;
+    }
+
+}
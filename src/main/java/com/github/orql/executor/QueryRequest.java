@@ -0,0 +1,45 @@
+package com.github.orql.executor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Session.queryAll中的一个查询
+ */
+public class QueryRequest {
+
+    private String orql;
+
+    private Map<String, Object> params;
+
+    private Long offset;
+
+    private Integer limit;
+
+    public QueryRequest(String orql, Map<String, Object> params) {
+        this(orql, params, null, null);
+    }
+
+    public QueryRequest(String orql, Map<String, Object> params, Long offset, Integer limit) {
+        this.orql = orql;
+        this.params = params == null ? new HashMap<>() : params;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    public String getOrql() {
+        return orql;
+    }
+
+    public Map<String, Object> getParams() {
+        return params;
+    }
+
+    public Long getOffset() {
+        return offset;
+    }
+
+    public Integer getLimit() {
+        return limit;
+    }
+}
@@ -1,8 +1,11 @@
 package com.github.orql.executor;
 
+import com.github.orql.executor.schema.Association;
 import com.github.orql.executor.sql.NamedParamSql;
 
 import java.sql.ResultSet;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 public interface Session {
@@ -15,8 +18,48 @@ public interface Session {
 
     void rollback();
 
+    /**
+     * 是否在事务中
+     * @return
+     */
+    boolean inTransaction();
+
+    /**
+     * 开启工作单元，之后UpdateBuilder按对象的add/update/delete先记录，commit或flush时按外键依赖批量执行
+     * 直接执行orql写入和查询涉及待写入的schema前先flush
+     */
+    void beginUnitOfWork();
+
+    /**
+     * flush后关闭工作单元
+     */
+    void endUnitOfWork();
+
+    /**
+     * 执行工作单元中待执行的写操作
+     */
+    void flush();
+
+    /**
+     * 未开启工作单元时为null
+     * @return
+     */
+    UnitOfWork getUnitOfWork();
+
     Object query(String reql, Map<String, Object> params, Long offset, Integer limit);
 
+    /**
+     * @param handle 可通过handle取消执行中的查询
+     */
+    Object query(String reql, Map<String, Object> params, Long offset, Integer limit, QueryHandle handle);
+
+    /**
+     * 多个独立查询一次往返执行，支持多语句时拼接为一条执行，否则并发执行
+     * @param requests
+     * @return 与requests顺序一致的结果
+     */
+    List<Object> queryAll(List<QueryRequest> requests);
+
     /**
      * hasOne hasMany 先插入上级，然后把上级id赋值到下级外键，然后插入下一级
      * belongsTo 把id赋值到当前的外键上，插入
@@ -27,13 +70,65 @@ public interface Session {
     Object add(String reql, Map<String, Object> params);
 
     /**
-     *
+     * 批量插入，按方言生成多行insert，每条语句的行数受bulkMaxRows和参数数限制
+     * 级联的hasOne/hasMany/belongsToMany按层插入，每层所有上级的下级一起批量插入，生成的id写回各行参数
+     * add post : {title, comments : [content], tags : [name]}
+     * @param reql
+     * @param paramsList 每行参数
+     * @return 按行顺序的自增id
+     */
+    List<Object> addAll(String reql, List<Map<String, Object>> paramsList);
+
+    /**
+     * 按差异同步belongsToMany中间表
+     * 一次查询当前关联，多余的关联jdbc batch删除，新增的关联多行insert，未变化的关联不写
+     * @param association belongsToMany关联
+     * @param refIds {上级id : 目标关联id}
+     * @return 删除和新增的关联数
+     */
+    int syncMiddle(Association association, Map<Object, ? extends Collection<?>> refIds);
+
+    /**
+     * 按id存在时更新，不存在时插入，单条语句
+     * upsert user : {id, name, email}
      * @param reql
      * @param params
+     * @return 影响行数
      */
-    void delete(String reql, Map<String, Object> params);
+    int upsert(String reql, Map<String, Object> params);
 
-    void update(String reql, Map<String, Object> params);
+    /**
+     * 批量upsert，按批生成多行语句
+     * @param reql
+     * @param paramsList
+     * @return 影响行数
+     */
+    int upsertAll(String reql, List<Map<String, Object>> paramsList);
+
+    /**
+     * 按条件删除，可带关联条件，配置mutationChunkSize时分批执行，没有条件时抛出SyntaxException
+     * delete post(createdAt < #expired) : {author(name = #name)}
+     * @param reql
+     * @param params
+     * @return 影响行数
+     */
+    int delete(String reql, Map<String, Object> params);
+
+    /**
+     * 按条件更新，可带关联条件，配置mutationChunkSize时按id分批执行，没有条件时抛出SyntaxException
+     * @param reql
+     * @param params
+     * @return 影响行数
+     */
+    int update(String reql, Map<String, Object> params);
+
+    /**
+     * 同一update多组参数，jdbc batch执行
+     * @param reql
+     * @param paramsList
+     * @return 每组参数的影响行数
+     */
+    int[] updateBatch(String reql, List<Map<String, Object>> paramsList);
 
     ResultSet nativeQuery(NamedParamSql namedParamSql);
 
@@ -41,10 +136,38 @@ public interface Session {
 
     int nativeUpdate(NamedParamSql namedParamSql);
 
+    /**
+     * 同一sql多组参数jdbc batch执行
+     * @param namedParamSqls
+     * @return 每组的影响行数
+     */
+    int[] nativeUpdateBatch(List<NamedParamSql> namedParamSqls);
+
     int nativeDelete(NamedParamSql namedParamSql);
 
+    /**
+     * 为已有对象加载关联，每个关联层级按批一次in查询
+     * @param entities 同一schema的对象
+     * @param associationPaths 关联路径, 如 author, tags, author.roles
+     */
+    void preload(List<?> entities, String... associationPaths);
+
+    /**
+     * 读取belongsToMany中间表的当前关联，不读取上级表和关联表
+     * @param association belongsToMany关联
+     * @param ids 上级id
+     * @return {上级id : 关联id}, 键为数据库返回的值
+     */
+    Map<Object, List<Object>> queryMiddleKeys(Association association, Collection<?> ids);
+
     QueryBuilder buildQuery();
 
+    /**
+     * 未开启dirtyChecking时为null
+     * @return
+     */
+    Snapshots getSnapshots();
+
     UpdateBuilder buildUpdate();
 
     NativeBuilder buildNative();
@@ -0,0 +1,227 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.exception.ShardException;
+import com.github.orql.executor.orql.OrqlNode;
+import com.github.orql.executor.orql.OrqlNode.*;
+import com.github.orql.executor.schema.Column;
+import com.github.orql.executor.schema.Schema;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 分片查询
+ * where中有分片键相等条件时只查询一个分片，否则并行查询所有分片后合并
+ * 有order时按各分片有序结果k路归并，limit在归并时截取，每个分片最多查询offset + limit行
+ * 关联数据需与根数据在同一分片
+ * 各分片使用调用方句柄的超时和预算，预算按每个分片计算，任一分片失败时抛出
+ */
+class ShardExecutor {
+
+    private Configuration configuration;
+
+    /**
+     * 分片游标，k路归并用
+     */
+    private static class Cursor {
+        List<Map<String, Object>> rows;
+        int index;
+
+        Map<String, Object> current() {
+            return rows.get(index);
+        }
+    }
+
+    ShardExecutor(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * 按分片键的值路由
+     */
+    static int route(Schema schema, Object shardKey, int shardCount) {
+        if (shardKey == null) {
+            throw new ShardException("schema " + schema.getName() + " missing shard key " + schema.getShardKey().getName());
+        }
+        return schema.getShardRouter().route(shardKey, shardCount);
+    }
+
+    /**
+     * 按where路由
+     * @return 分片下标，null查询所有分片
+     */
+    static Integer route(Schema schema, OrqlWhere where, Map<String, Object> params, int shardCount) {
+        if (where == null || where.getExp() == null) return null;
+        Object shardKey = findShardKey(where.getExp(), schema.getShardKey(), params);
+        return shardKey == null ? null : route(schema, shardKey, shardCount);
+    }
+
+    /**
+     * 只在and连接的条件中查找分片键相等条件
+     */
+    private static Object findShardKey(OrqlExp exp, Column shardKey, Map<String, Object> params) {
+        if (exp instanceof OrqlNestExp) {
+            return findShardKey(((OrqlNestExp) exp).getExp(), shardKey, params);
+        }
+        if (exp instanceof OrqlAndExp) {
+            Object left = findShardKey(((OrqlAndExp) exp).getLeft(), shardKey, params);
+            return left != null ? left : findShardKey(((OrqlAndExp) exp).getRight(), shardKey, params);
+        }
+        if (exp instanceof OrqlColumnExp) {
+            OrqlColumnExp columnExp = (OrqlColumnExp) exp;
+            if (columnExp.getLeft() != shardKey || columnExp.getOp() != ExpOp.Eq) return null;
+            if (columnExp.getRightParam() != null) {
+                return params == null ? null : params.get(columnExp.getRightParam());
+            }
+            Object value = columnExp.getRightValue();
+            return value instanceof NullValue ? null : value;
+        }
+        return null;
+    }
+
+    Object query(DefaultSession session, OrqlNode tree, Map<String, Object> params, Long offset, Integer limit, QueryHandle handle) {
+        OrqlRefItem root = tree.getRoot();
+        int shardCount = configuration.getShards().size();
+        Integer shard = route(root.getRef(), root.getWhere(), params, shardCount);
+        if (shard != null) {
+            return session.shardSession(shard).queryTree(tree, params, offset, limit, handle);
+        }
+        // 排序列不在结果中时临时加入
+        List<String> addedColumns = new ArrayList<>();
+        List<OrqlOrder> orders = root.getWhere() == null || root.getWhere().getOrders() == null
+                ? Collections.emptyList() : root.getWhere().getOrders();
+        OrqlNode scatterTree = tree;
+        if (tree.getOp() == OrqlOp.Query && ! orders.isEmpty()) {
+            List<OrqlItem> children = new ArrayList<>(root.getChildren());
+            Set<String> names = new HashSet<>();
+            boolean all = false;
+            for (OrqlItem child : children) {
+                if (child instanceof OrqlAllItem) all = true;
+                names.add(child.getName());
+            }
+            for (OrqlOrder order : orders) {
+                for (Column column : order.getColumns()) {
+                    if (! all && names.add(column.getName())) {
+                        children.add(new OrqlColumnItem(column));
+                        addedColumns.add(column.getName());
+                    }
+                }
+            }
+            if (! addedColumns.isEmpty()) {
+                OrqlRefItem scatterRoot = root instanceof OrqlArrayItem
+                        ? new OrqlArrayItem(root.getName(), root.getRef(), null, children, root.getWhere())
+                        : new OrqlObjectItem(root.getName(), root.getRef(), null, children, root.getWhere());
+                scatterTree = new OrqlNode(tree.getOp(), scatterRoot);
+            }
+        }
+        // 每个分片取前offset + limit行
+        Integer shardLimit = limit == null ? null : (int) ((offset == null ? 0 : offset) + limit);
+        List<DefaultSession> shardSessions = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i ++) {
+            shardSessions.add(session.shardSession(i));
+        }
+        OrqlNode shardTree = scatterTree;
+        List<CompletableFuture<Object>> futures = new ArrayList<>(shardCount);
+        for (int i = 1; i < shardCount; i ++) {
+            DefaultSession shardSession = shardSessions.get(i);
+            // 其他线程的分片使用子句柄，超时和预算相同，与调用方一起取消
+            QueryHandle forkHandle = handle == null ? null : handle.fork();
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> shardSession.queryTree(shardTree, params, null, shardLimit, forkHandle),
+                    configuration.getAsyncExecutor()));
+        }
+        List<Object> results = new ArrayList<>(shardCount);
+        results.add(shardSessions.get(0).queryTree(shardTree, params, null, shardLimit, handle));
+        for (CompletableFuture<Object> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                // 与当前分片执行时一致，超时、取消等异常抛出
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw e;
+            }
+        }
+        if (results.contains(null) && (tree.getOp() == OrqlOp.Count || root instanceof OrqlArrayItem)) return null;
+        if (tree.getOp() == OrqlOp.Count) {
+            long count = 0;
+            for (Object result : results) {
+                count += (Long) result;
+            }
+            return count;
+        }
+        List<Map<String, Object>> merged = merge(results, orders, offset == null ? 0 : offset, limit);
+        for (Map<String, Object> row : merged) {
+            for (String name : addedColumns) {
+                row.remove(name);
+            }
+        }
+        if (root instanceof OrqlArrayItem) return merged;
+        return merged.isEmpty() ? null : merged.get(0);
+    }
+
+    private List<Map<String, Object>> merge(List<Object> results, List<OrqlOrder> orders, long offset, Integer limit) {
+        List<Cursor> cursors = new ArrayList<>();
+        for (Object result : results) {
+            if (result == null) continue;
+            Cursor cursor = new Cursor();
+            cursor.rows = result instanceof List
+                    ? (List<Map<String, Object>>) result
+                    : Collections.singletonList((Map<String, Object>) result);
+            if (! cursor.rows.isEmpty()) cursors.add(cursor);
+        }
+        List<Map<String, Object>> merged = new ArrayList<>();
+        long skip = offset;
+        if (orders.isEmpty()) {
+            for (Cursor cursor : cursors) {
+                for (Map<String, Object> row : cursor.rows) {
+                    if (limit != null && merged.size() >= limit) return merged;
+                    if (skip > 0) {
+                        skip --;
+                        continue;
+                    }
+                    merged.add(row);
+                }
+            }
+            return merged;
+        }
+        Comparator<Map<String, Object>> comparator = comparator(orders);
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(Math.max(1, cursors.size()), (a, b) -> comparator.compare(a.current(), b.current()));
+        queue.addAll(cursors);
+        while (! queue.isEmpty() && (limit == null || merged.size() < limit)) {
+            Cursor cursor = queue.poll();
+            if (skip > 0) {
+                skip --;
+            } else {
+                merged.add(cursor.current());
+            }
+            cursor.index ++;
+            if (cursor.index < cursor.rows.size()) queue.add(cursor);
+        }
+        return merged;
+    }
+
+    /**
+     * 与sql排序一致，null最小
+     */
+    private static Comparator<Map<String, Object>> comparator(List<OrqlOrder> orders) {
+        return (a, b) -> {
+            for (OrqlOrder order : orders) {
+                int sign = "desc".equals(order.getSort()) ? -1 : 1;
+                for (Column column : order.getColumns()) {
+                    Comparable left = (Comparable) a.get(column.getName());
+                    Comparable right = (Comparable) b.get(column.getName());
+                    int result;
+                    if (left == null || right == null) {
+                        result = left == right ? 0 : (left == null ? -1 : 1);
+                    } else {
+                        result = left.compareTo(right);
+                    }
+                    if (result != 0) return sign * result;
+                }
+            }
+            return 0;
+        };
+    }
+
+}
@@ -0,0 +1,175 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.schema.Association;
+import com.github.orql.executor.schema.Column;
+import com.github.orql.executor.schema.Schema;
+import com.github.orql.executor.schema.SchemaManager;
+
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 会话内查询出的对象快照，update时与快照比较只写修改的字段
+ * 快照为按字段顺序的值数组，belongsTo关联记录关联对象的id
+ */
+public class Snapshots {
+
+    /**
+     * 快照字段缓存 {class : 字段}
+     */
+    private static final Map<Class, SnapshotFields> fieldCaches = new ConcurrentHashMap<>();
+
+    private final SchemaManager schemaManager;
+
+    private final Map<Object, Object[]> snapshots = new IdentityHashMap<>();
+
+    Snapshots(SchemaManager schemaManager) {
+        this.schemaManager = schemaManager;
+    }
+
+    /**
+     * 一个schema类参与快照的字段
+     */
+    private static class SnapshotFields {
+
+        Field[] fields;
+
+        /**
+         * belongsTo关联对象的id字段，普通列为null
+         */
+        Field[] refIds;
+
+        /**
+         * hasOne/hasMany/belongsToMany字段，快照其中的对象
+         */
+        Field[] children;
+    }
+
+    private SnapshotFields getFields(Class clazz) {
+        SnapshotFields cached = fieldCaches.get(clazz);
+        if (cached != null) return cached;
+        Schema schema = schemaManager.getSchema(clazz);
+        if (schema == null) return null;
+        List<Field> fields = new ArrayList<>();
+        List<Field> refIds = new ArrayList<>();
+        List<Field> children = new ArrayList<>();
+        try {
+            for (Column column : schema.getColumns()) {
+                // 外键列没有对应字段，由belongsTo关联记录
+                if (column.isRefKey()) continue;
+                fields.add(accessible(clazz.getDeclaredField(column.getName())));
+                refIds.add(null);
+            }
+            for (Association association : schema.getAssociations()) {
+                Field field = accessible(clazz.getDeclaredField(association.getName()));
+                if (association.getType() == Association.Type.BelongsTo) {
+                    fields.add(field);
+                    refIds.add(accessible(association.getRef().getClazz().getDeclaredField(association.getRef().getIdName())));
+                } else {
+                    children.add(field);
+                }
+            }
+        } catch (NoSuchFieldException e) {
+            e.printStackTrace();
+            return null;
+        }
+        SnapshotFields snapshotFields = new SnapshotFields();
+        snapshotFields.fields = fields.toArray(new Field[0]);
+        snapshotFields.refIds = refIds.toArray(new Field[0]);
+        snapshotFields.children = children.toArray(new Field[0]);
+        fieldCaches.put(clazz, snapshotFields);
+        return snapshotFields;
+    }
+
+    private static Field accessible(Field field) {
+        field.setAccessible(true);
+        return field;
+    }
+
+    private Object[] values(Object bean, SnapshotFields snapshotFields) throws IllegalAccessException {
+        Object[] values = new Object[snapshotFields.fields.length];
+        for (int i = 0; i < values.length; i ++) {
+            Object value = snapshotFields.fields[i].get(bean);
+            if (value != null && snapshotFields.refIds[i] != null) {
+                value = snapshotFields.refIds[i].get(value);
+            }
+            values[i] = value;
+        }
+        return values;
+    }
+
+    /**
+     * 快照对象及其嵌套的关联对象
+     * @param bean
+     */
+    public synchronized void take(Object bean) {
+        if (bean == null) return;
+        SnapshotFields snapshotFields = getFields(bean.getClass());
+        if (snapshotFields == null) return;
+        try {
+            snapshots.put(bean, values(bean, snapshotFields));
+            for (int i = 0; i < snapshotFields.fields.length; i ++) {
+                if (snapshotFields.refIds[i] != null) {
+                    take(snapshotFields.fields[i].get(bean));
+                }
+            }
+            for (Field field : snapshotFields.children) {
+                Object value = field.get(bean);
+                if (value instanceof Collection) {
+                    for (Object child : (Collection) value) {
+                        take(child);
+                    }
+                } else {
+                    take(value);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 更新后刷新已有快照，不含嵌套对象
+     * @param bean
+     */
+    public synchronized void refresh(Object bean) {
+        if (! snapshots.containsKey(bean)) return;
+        try {
+            snapshots.put(bean, values(bean, getFields(bean.getClass())));
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 与快照比较修改过的字段名，包含改为null的字段
+     * @param bean
+     * @return 没有快照时为null
+     */
+    public synchronized List<String> dirtyFields(Object bean) {
+        Object[] snapshot = snapshots.get(bean);
+        if (snapshot == null) return null;
+        SnapshotFields snapshotFields = getFields(bean.getClass());
+        List<String> dirty = new ArrayList<>();
+        try {
+            Object[] values = values(bean, snapshotFields);
+            for (int i = 0; i < values.length; i ++) {
+                if (! Objects.equals(values[i], snapshot[i])) {
+                    dirty.add(snapshotFields.fields[i].getName());
+                }
+            }
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        }
+        return dirty;
+    }
+
+    public synchronized void remove(Object bean) {
+        snapshots.remove(bean);
+    }
+
+    public synchronized void clear() {
+        snapshots.clear();
+    }
+}
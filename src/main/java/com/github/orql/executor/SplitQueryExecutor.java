@@ -0,0 +1,177 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.orql.OrqlNode;
+import com.github.orql.executor.orql.OrqlNode.*;
+import com.github.orql.executor.schema.Column;
+import com.github.orql.executor.schema.Schema;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 拆分查询
+ * 根节点先查询，各集合关联互不依赖，按根节点id拆分为子查询，fork到不同连接并行执行后合并
+ * query user : [*, posts : [*], roles : [*]]
+ * => query user : [*]
+ * => query user(id in #splitIds) : [id, posts : [*]]
+ * => query user(id in #splitIds) : [id, roles : [*]]
+ * 只拆分根节点下一层，集合或其下有where条件时不拆分，连接查询时条件同时过滤根节点
+ * 每个子查询最多loadBatchSize个id
+ * 子查询使用调用方句柄的超时和预算，预算按每个子查询计算，取消时一起取消，任一子查询失败时抛出
+ */
+class SplitQueryExecutor {
+
+    /**
+     * 子查询id参数名
+     */
+    static final String IdsParam = "splitIds";
+
+    private Configuration configuration;
+
+    /**
+     * 子查询
+     */
+    private static class SubQuery {
+        OrqlArrayItem item;
+        OrqlNode tree;
+        Map<String, Object> params;
+        CompletableFuture<Object> future;
+        Object result;
+    }
+
+    SplitQueryExecutor(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    private static boolean isArray(OrqlItem item) {
+        return item instanceof OrqlArrayItem && ! ((OrqlArrayItem) item).getChildren().isEmpty();
+    }
+
+    private static boolean hasWhere(OrqlRefItem item) {
+        if (item.getWhere() != null && item.getWhere().getExp() != null) return true;
+        for (OrqlItem child : item.getChildren()) {
+            if (child instanceof OrqlRefItem && hasWhere((OrqlRefItem) child)) return true;
+        }
+        return false;
+    }
+
+    static boolean canSplit(OrqlNode tree) {
+        if (tree.getOp() != OrqlOp.Query) return false;
+        boolean hasArray = false;
+        for (OrqlItem child : tree.getRoot().getChildren()) {
+            if (isArray(child)) {
+                // 条件会过滤根节点，拆分后结果不一致
+                if (hasWhere((OrqlArrayItem) child)) return false;
+                hasArray = true;
+            }
+        }
+        return hasArray;
+    }
+
+    Object query(DefaultSession session, OrqlNode tree, Map<String, Object> params, Long offset, Integer limit, QueryHandle handle) {
+        OrqlRefItem root = tree.getRoot();
+        Schema schema = root.getRef();
+        Column idColumn = schema.getIdColumn();
+        List<OrqlItem> rootChildren = new ArrayList<>();
+        List<OrqlArrayItem> arrays = new ArrayList<>();
+        boolean hasId = false;
+        for (OrqlItem child : root.getChildren()) {
+            if (isArray(child)) {
+                arrays.add((OrqlArrayItem) child);
+            } else if (! (child instanceof OrqlArrayItem)) {
+                rootChildren.add(child);
+                if (child instanceof OrqlColumnItem && ((OrqlColumnItem) child).getColumn() == idColumn) hasId = true;
+            }
+        }
+        // 子查询按id合并
+        if (! hasId) rootChildren.add(new OrqlColumnItem(idColumn));
+        OrqlRefItem splitRoot = root instanceof OrqlArrayItem
+                ? new OrqlArrayItem(root.getName(), schema, null, rootChildren, root.getWhere())
+                : new OrqlObjectItem(root.getName(), schema, null, rootChildren, root.getWhere());
+        Object rootResult = session.queryTree(new OrqlNode(OrqlOp.Query, splitRoot), params, offset, limit, handle);
+        if (rootResult == null) return null;
+        List<Map<String, Object>> rootList = rootResult instanceof List
+                ? (List<Map<String, Object>>) rootResult
+                : Collections.singletonList((Map<String, Object>) rootResult);
+        if (rootList.isEmpty()) return rootResult;
+        List<Object> ids = new ArrayList<>(rootList.size());
+        for (Map<String, Object> rootMap : rootList) {
+            ids.add(rootMap.get(idColumn.getName()));
+        }
+        int batchSize = configuration.getLoadBatchSize();
+        List<SubQuery> subQueries = new ArrayList<>();
+        OrqlWhere where = new OrqlWhere(new OrqlColumnExp(idColumn, ExpOp.In, IdsParam), null);
+        for (OrqlArrayItem array : arrays) {
+            OrqlArrayItem item = new OrqlArrayItem(root.getName(), schema, null, Arrays.asList(new OrqlColumnItem(idColumn), array), where);
+            OrqlNode subTree = new OrqlNode(OrqlOp.Query, item);
+            for (int from = 0; from < ids.size(); from += batchSize) {
+                SubQuery subQuery = new SubQuery();
+                subQuery.item = array;
+                subQuery.tree = subTree;
+                subQuery.params = params == null ? new HashMap<>() : new HashMap<>(params);
+                subQuery.params.put(IdsParam, ids.subList(from, Math.min(from + batchSize, ids.size())));
+                subQueries.add(subQuery);
+            }
+        }
+        // fork 除最后一个外在其他连接执行
+        for (int i = 0; i < subQueries.size() - 1; i ++) {
+            SubQuery subQuery = subQueries.get(i);
+            QueryHandle forkHandle = handle == null ? null : handle.fork();
+            subQuery.future = CompletableFuture.supplyAsync(() -> fork(session, subQuery, forkHandle), configuration.getAsyncExecutor());
+        }
+        // 最后一个在当前连接执行
+        SubQuery last = subQueries.get(subQueries.size() - 1);
+        last.result = session.queryTree(last.tree, last.params, null, null, handle);
+        // join
+        for (SubQuery subQuery : subQueries) {
+            if (subQuery.future != null) {
+                try {
+                    subQuery.result = subQuery.future.join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                    throw e;
+                }
+            }
+            if (subQuery.result == null) return null;
+        }
+        return merge(rootResult, rootList, idColumn, subQueries);
+    }
+
+    private Object fork(DefaultSession session, SubQuery subQuery, QueryHandle handle) {
+        return session.fork().queryTree(subQuery.tree, subQuery.params, null, null, handle);
+    }
+
+    private Object merge(Object rootResult, List<Map<String, Object>> rootList, Column idColumn, List<SubQuery> subQueries) {
+        // {集合名 : {id : 集合}}
+        Map<String, Map<Object, Object>> arrayValues = new LinkedHashMap<>();
+        Map<String, OrqlArrayItem> arrayItems = new LinkedHashMap<>();
+        for (SubQuery subQuery : subQueries) {
+            String name = subQuery.item.getName();
+            arrayItems.put(name, subQuery.item);
+            Map<Object, Object> values = arrayValues.computeIfAbsent(name, key -> new HashMap<>());
+            for (Object result : (List) subQuery.result) {
+                Map<String, Object> resultMap = (Map<String, Object>) result;
+                values.put(resultMap.get(idColumn.getName()), resultMap.get(name));
+            }
+        }
+        List<Map<String, Object>> merged = new ArrayList<>(rootList.size());
+        for (Map<String, Object> rootMap : rootList) {
+            Object id = rootMap.get(idColumn.getName());
+            boolean missing = false;
+            for (Map.Entry<String, Map<Object, Object>> entry : arrayValues.entrySet()) {
+                Object value = entry.getValue().get(id);
+                if (value == null) {
+                    // 必须关联为inner join，与不拆分时一致，不返回该行
+                    if (arrayItems.get(entry.getKey()).getAssociation().isRequired()) missing = true;
+                    value = new ArrayList<>();
+                }
+                rootMap.put(entry.getKey(), value);
+            }
+            if (! missing) merged.add(rootMap);
+        }
+        if (rootResult instanceof List) return merged;
+        return merged.isEmpty() ? null : merged.get(0);
+    }
+
+}
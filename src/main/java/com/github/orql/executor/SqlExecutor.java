@@ -1,10 +1,14 @@
 package com.github.orql.executor;
 
+import com.github.orql.executor.schema.DataType;
 import com.github.orql.executor.sql.NamedParamSql;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 class SqlExecutor {
 
@@ -32,13 +36,7 @@ class SqlExecutor {
         if (namedParamSql.isGeneratedKey()) {
             ResultSet resultSet = statement.getGeneratedKeys();
             if (resultSet.next()) {
-                switch (namedParamSql.getIdType()) {
-                    case Int:
-                        return resultSet.getInt(1);
-                    case Long:
-                        return resultSet.getLong(1);
-                }
-                return resultSet.getObject(1);
+                return getId(resultSet, namedParamSql.getIdType());
             } else {
                 throw new SQLException();
             }
@@ -46,6 +44,37 @@ class SqlExecutor {
         return null;
     }
 
+    private Object getId(ResultSet resultSet, DataType idType) throws SQLException {
+        if (idType == null) return resultSet.getObject(1);
+        switch (idType) {
+            case Int:
+                return resultSet.getInt(1);
+            case Long:
+                return resultSet.getLong(1);
+        }
+        return resultSet.getObject(1);
+    }
+
+    /**
+     * 多行insert
+     * @return 按行顺序的自增id，未设置generatedKey时为空
+     */
+    public List<Object> insertAll(Connection conn, NamedParamSql namedParamSql) throws SQLException {
+        logger.debug(namedParamSql.toString());
+        List<Object> ids = new ArrayList<>();
+        try (PreparedStatement statement = namedParamSql.isGeneratedKey() ? conn.prepareStatement(namedParamSql.getSql(), Statement.RETURN_GENERATED_KEYS) : conn.prepareStatement(namedParamSql.getSql())) {
+            setParams(statement, namedParamSql.getParams());
+            statement.executeUpdate();
+            if (namedParamSql.isGeneratedKey()) {
+                ResultSet resultSet = statement.getGeneratedKeys();
+                while (resultSet.next()) {
+                    ids.add(getId(resultSet, namedParamSql.getIdType()));
+                }
+            }
+        }
+        return ids;
+    }
+
     private int mutation(Connection conn, NamedParamSql namedParamSql) throws SQLException {
          PreparedStatement statement = conn.prepareStatement(namedParamSql.getSql());
          setParams(statement, namedParamSql.getParams());
@@ -62,9 +91,86 @@ class SqlExecutor {
         return mutation(conn, namedParamSql);
     }
 
+    /**
+     * 同一sql多组参数batch执行
+     * @return 每组的影响行数，驱动可能返回SUCCESS_NO_INFO
+     */
+    public int[] updateBatch(Connection conn, List<NamedParamSql> namedParamSqls) throws SQLException {
+        if (namedParamSqls.isEmpty()) return new int[0];
+        logger.debug(namedParamSqls.get(0).getSql() + " batch: " + namedParamSqls.size());
+        try (PreparedStatement statement = conn.prepareStatement(namedParamSqls.get(0).getSql())) {
+            for (NamedParamSql namedParamSql : namedParamSqls) {
+                setParams(statement, namedParamSql.getParams());
+                statement.addBatch();
+            }
+            return statement.executeBatch();
+        }
+    }
+
+    /**
+     * 多结果集回调，回调返回后结果集关闭
+     */
+    @FunctionalInterface
+    interface ResultSetCallback {
+        void call(int index, ResultSet resultSet) throws SQLException;
+    }
+
+    /**
+     * 多条查询拼接为一条多语句执行，需驱动支持(mysql allowMultiQueries=true)
+     * 返回的结果集少于语句数时抛出SQLFeatureNotSupportedException，之前的结果集已回调
+     */
+    public void queryMulti(Connection conn, List<NamedParamSql> namedParamSqls, int timeout, ResultSetCallback callback) throws SQLException {
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        for (NamedParamSql namedParamSql : namedParamSqls) {
+            logger.debug(namedParamSql.toString());
+            if (sql.length() > 0) sql.append("; ");
+            sql.append(namedParamSql.getSql());
+            params.addAll(Arrays.asList(namedParamSql.getParams()));
+        }
+        try (PreparedStatement statement = conn.prepareStatement(sql.toString())) {
+            if (timeout > 0) statement.setQueryTimeout(timeout);
+            setParams(statement, params.toArray());
+            boolean isResultSet = statement.execute();
+            int index = 0;
+            while (true) {
+                if (isResultSet) {
+                    try (ResultSet resultSet = statement.getResultSet()) {
+                        callback.call(index ++, resultSet);
+                    }
+                } else if (statement.getUpdateCount() == -1) {
+                    break;
+                }
+                isResultSet = statement.getMoreResults();
+            }
+            // 驱动只执行了第一条语句
+            if (index < namedParamSqls.size()) {
+                throw new SQLFeatureNotSupportedException("multi statement returned " + index + " of " + namedParamSqls.size() + " results");
+            }
+        }
+    }
+
     public ResultSet query(Connection conn, NamedParamSql namedParamSql) throws SQLException {
+        return query(conn, namedParamSql, null);
+    }
+
+    /**
+     * @param handle 非null时绑定statement，用于取消
+     */
+    public ResultSet query(Connection conn, NamedParamSql namedParamSql, QueryHandle handle) throws SQLException {
+        return query(conn, namedParamSql, handle, 0, 0);
+    }
+
+    /**
+     * @param timeout 超时秒数，0不限制
+     * @param maxRows 最大行数，0不限制，多取一行用于判断超出
+     */
+    public ResultSet query(Connection conn, NamedParamSql namedParamSql, QueryHandle handle, int timeout, int maxRows) throws SQLException {
         logger.debug(namedParamSql.toString());
         PreparedStatement statement = conn.prepareStatement(namedParamSql.getSql());
+        if (timeout > 0) statement.setQueryTimeout(timeout);
+        if (maxRows > 0 && maxRows < Integer.MAX_VALUE) statement.setMaxRows(maxRows + 1);
+        if (handle != null) handle.attach(statement);
         setParams(statement, namedParamSql.getParams());
         return statement.executeQuery();
     }
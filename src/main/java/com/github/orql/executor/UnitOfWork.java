@@ -0,0 +1,213 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.orql.OrqlNode;
+import com.github.orql.executor.schema.Association;
+import com.github.orql.executor.schema.Schema;
+import com.github.orql.executor.schema.SchemaManager;
+
+import java.util.*;
+
+/**
+ * 工作单元，UpdateBuilder的add/update/delete先记录，flush时按外键依赖排序后批量执行
+ * 插入先父后子，同一对象多次update合并为一次，删除先子后父
+ */
+public class UnitOfWork {
+
+    private enum Type {
+        Insert,
+        Update,
+        Delete
+    }
+
+    private static class Op {
+
+        Type type;
+
+        Object bean;
+
+        Schema schema;
+
+        Op(Type type, Object bean, Schema schema) {
+            this.type = type;
+            this.bean = bean;
+            this.schema = schema;
+        }
+    }
+
+    private final SchemaManager schemaManager;
+
+    /**
+     * 按记录顺序
+     */
+    private final List<Op> ops = new ArrayList<>();
+
+    private final Map<Object, Op> index = new IdentityHashMap<>();
+
+    private boolean flushing = false;
+
+    UnitOfWork(SchemaManager schemaManager) {
+        this.schemaManager = schemaManager;
+    }
+
+    private void record(Type type, Object bean) {
+        Op op = new Op(type, bean, schemaManager.getSchema(bean.getClass()));
+        ops.add(op);
+        index.put(bean, op);
+    }
+
+    public synchronized void add(Object bean) {
+        if (index.containsKey(bean)) return;
+        record(Type.Insert, bean);
+    }
+
+    /**
+     * 待插入的对象flush时按当前值插入，待更新的对象合并，待删除的对象忽略
+     * @param bean
+     */
+    public synchronized void update(Object bean) {
+        if (index.containsKey(bean)) return;
+        record(Type.Update, bean);
+    }
+
+    /**
+     * 待插入的对象直接取消，待更新的对象改为删除
+     * @param bean
+     */
+    public synchronized void delete(Object bean) {
+        Op op = index.get(bean);
+        if (op == null) {
+            record(Type.Delete, bean);
+        } else if (op.type == Type.Insert) {
+            ops.remove(op);
+            index.remove(bean);
+        } else {
+            op.type = Type.Delete;
+        }
+    }
+
+    public synchronized boolean hasPending() {
+        return ! ops.isEmpty();
+    }
+
+    public synchronized boolean isFlushing() {
+        return flushing;
+    }
+
+    /**
+     * 查询涉及的schema有待执行的写操作
+     * @param tree
+     * @return
+     */
+    public synchronized boolean touches(OrqlNode tree) {
+        if (ops.isEmpty()) return false;
+        Set<Schema> schemas = new HashSet<>();
+        collectSchemas(tree.getRoot(), schemas);
+        for (Op op : ops) {
+            if (schemas.contains(op.schema)) return true;
+        }
+        return false;
+    }
+
+    private void collectSchemas(OrqlNode.OrqlRefItem item, Set<Schema> schemas) {
+        schemas.add(item.getRef());
+        for (OrqlNode.OrqlItem child : item.getChildren()) {
+            if (child instanceof OrqlNode.OrqlRefItem) {
+                collectSchemas((OrqlNode.OrqlRefItem) child, schemas);
+            }
+        }
+    }
+
+    /**
+     * 按依赖执行全部写操作，builder在flush期间直接执行
+     * @param builder
+     */
+    public synchronized void flush(UpdateBuilder builder) {
+        if (ops.isEmpty() || flushing) return;
+        List<Op> pending = new ArrayList<>(ops);
+        ops.clear();
+        index.clear();
+        flushing = true;
+        try {
+            List<Schema> order = sortSchemas(pending);
+            // 插入先父后子，子对象flush时才取父对象的id
+            for (Schema schema : order) {
+                List<Object> beans = beans(pending, schema, Type.Insert);
+                if (! beans.isEmpty()) builder.addAll(beans);
+            }
+            List<Object> updates = new ArrayList<>();
+            for (Schema schema : order) {
+                updates.addAll(beans(pending, schema, Type.Update));
+            }
+            if (! updates.isEmpty()) builder.updateAll(updates);
+            // 删除先子后父
+            for (int i = order.size() - 1; i >= 0; i --) {
+                List<Object> beans = beans(pending, order.get(i), Type.Delete);
+                if (! beans.isEmpty()) builder.deleteAll(beans);
+            }
+        } finally {
+            flushing = false;
+        }
+    }
+
+    private List<Object> beans(List<Op> pending, Schema schema, Type type) {
+        List<Object> beans = new ArrayList<>();
+        for (Op op : pending) {
+            if (op.schema == schema && op.type == type) beans.add(op.bean);
+        }
+        return beans;
+    }
+
+    /**
+     * 按外键依赖排序，被引用的schema在前，有环时剩余的按记录顺序
+     */
+    private List<Schema> sortSchemas(List<Op> pending) {
+        Set<Schema> schemas = new LinkedHashSet<>();
+        for (Op op : pending) {
+            schemas.add(op.schema);
+        }
+        // {schema : 依赖的schema}
+        Map<Schema, Set<Schema>> dependencies = new HashMap<>();
+        for (Schema schema : schemas) {
+            dependencies.put(schema, new HashSet<>());
+        }
+        for (Schema schema : schemas) {
+            for (Association association : schema.getAssociations()) {
+                Schema ref = association.getRef();
+                if (ref == schema || ! schemas.contains(ref)) continue;
+                if (association.getType() == Association.Type.BelongsTo) {
+                    // 外键在当前表
+                    dependencies.get(schema).add(ref);
+                } else if (association.getType() == Association.Type.HasMany || association.getType() == Association.Type.HasOne) {
+                    // 外键在关联表
+                    dependencies.get(ref).add(schema);
+                }
+            }
+        }
+        List<Schema> order = new ArrayList<>();
+        Set<Schema> remaining = new LinkedHashSet<>(schemas);
+        while (! remaining.isEmpty()) {
+            Schema next = null;
+            for (Schema schema : remaining) {
+                if (order.containsAll(dependencies.get(schema))) {
+                    next = schema;
+                    break;
+                }
+            }
+            if (next == null) {
+                order.addAll(remaining);
+                break;
+            }
+            order.add(next);
+            remaining.remove(next);
+        }
+        return order;
+    }
+
+    /**
+     * 丢弃未执行的写操作
+     */
+    public synchronized void clear() {
+        ops.clear();
+        index.clear();
+    }
+}
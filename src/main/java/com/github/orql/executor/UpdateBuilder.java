@@ -1,15 +1,26 @@
 package com.github.orql.executor;
 
+import com.github.orql.executor.exception.OptimisticLockException;
+import com.github.orql.executor.exception.ShardException;
+import com.github.orql.executor.schema.Association;
+import com.github.orql.executor.schema.Column;
+import com.github.orql.executor.schema.DataType;
 import com.github.orql.executor.schema.Schema;
 import com.github.orql.executor.schema.SchemaManager;
+import com.github.orql.executor.sql.NamedParamSql;
 import com.github.orql.executor.util.MapBean;
 import com.github.orql.executor.util.OrqlUtil;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class UpdateBuilder {
@@ -18,46 +29,315 @@ public class UpdateBuilder {
 
     protected Session session;
 
+    /**
+     * insert/update执行计划，null时每次拼接orql
+     */
+    protected WritePlans writePlans;
+
     public UpdateBuilder(Session session, SchemaManager schemaManager) {
         this.schemaManager = schemaManager;
         this.session = session;
     }
 
+    public UpdateBuilder writePlans(WritePlans writePlans) {
+        this.writePlans = writePlans;
+        return this;
+    }
+
     /**
-     * 不插入自增id,插回自增id
+     * 可使用执行计划时返回字段，分片schema需要按分片键路由，不使用执行计划
+     * hiLo主键插入前分配，insert不使用执行计划，update不受影响
+     * @param instance
+     * @param insert
+     */
+    private WritePlans.BeanFields planFields(Object instance, boolean insert) {
+        if (writePlans == null) return null;
+        WritePlans.BeanFields bean = writePlans.getBeanFields(instance.getClass());
+        if (bean == null || bean.schema.isSharded() || (insert && bean.schema.isHiLo())) return null;
+        return bean;
+    }
+
+    /**
+     * 开启工作单元且不在flush中时返回工作单元，按对象的写操作先记录
+     */
+    private UnitOfWork deferred() {
+        UnitOfWork unitOfWork = session.getUnitOfWork();
+        return unitOfWork != null && ! unitOfWork.isFlushing() ? unitOfWork : null;
+    }
+
+    /**
+     * 不插入自增id,插回自增id，工作单元中flush后才插回
      * @param instance
      */
     public void add(Object instance) {
-        // FIXME 关联插入未实现
-        Class clazz = instance.getClass();
-        Schema schema = schemaManager.getSchema(clazz);
-        Field[] fields = clazz.getDeclaredFields();
+        UnitOfWork unitOfWork = deferred();
+        if (unitOfWork != null) {
+            unitOfWork.add(instance);
+            return;
+        }
+        initVersion(instance);
+        // 有级联下级时走orql，按层插入
+        WritePlans.BeanFields bean = hasChildren(instance) ? null : planFields(instance, true);
+        if (bean != null) {
+            try {
+                long mask = writePlans.presentMask(bean, instance, true);
+                if (mask == 0) return;
+                Object id = session.nativeAdd(writePlans.insertPlan(bean, mask).bind(instance));
+                // id插回
+                if (id != null) bean.fields[bean.idIndex].set(instance, id);
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        String reql = toReql("add", instance, false);
+        if (reql == null) return;
+        add(reql, instance);
+    }
+
+    /**
+     * 非null字段生成orql，没有字段时返回null
+     * add时hasOne/hasMany/belongsToMany展开下级字段级联插入
+     * add post : {title, author, comments : [content], tags : [name]}
+     * @param op
+     * @param instance
+     * @param withId 是否包含id
+     * @return
+     */
+    private String toReql(String op, Object instance, boolean withId) {
+        Schema schema = schemaManager.getSchema(instance.getClass());
+        String items = toItems(schema, Collections.singletonList(instance), withId, op.equals("add"));
+        if (items.isEmpty()) return null;
+        return op + " " + schema.getName() + " : {" + items + "}";
+    }
+
+    /**
+     * 任一对象非null的字段
+     * @param cascade 是否展开hasOne/hasMany/belongsToMany，下级不含id
+     */
+    private String toItems(Schema schema, List<?> instances, boolean withId, boolean cascade) {
         String idName = schema.getIdName();
         List<String> items = new ArrayList<>();
-        for (Field field : fields) {
+        for (Field field : schema.getClazz().getDeclaredFields()) {
             field.setAccessible(true);
             String fieldName = field.getName();
-            if (fieldName.equals(idName)) {
+            if (fieldName.equals(idName) && ! withId) {
                 continue;
             }
-            if (schema.containsColumn(fieldName) || schema.containsAssociation(fieldName)) {
-                try {
-                    if (field.get(instance) != null) {
-                        items.add(fieldName);
-                    }
-                } catch (IllegalAccessException e) {
-                    e.printStackTrace();
+            if (! schema.containsColumn(fieldName) && ! schema.containsAssociation(fieldName)) continue;
+            List<Object> values = new ArrayList<>();
+            try {
+                for (Object instance : instances) {
+                    Object value = field.get(instance);
+                    if (value != null) values.add(value);
+                }
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            }
+            if (values.isEmpty()) continue;
+            Association association = schema.containsAssociation(fieldName) ? schema.getAssociation(fieldName) : null;
+            if (! cascade || association == null || association.getType() == Association.Type.BelongsTo) {
+                items.add(fieldName);
+                continue;
+            }
+            List<Object> children = new ArrayList<>();
+            for (Object value : values) {
+                if (value instanceof Collection) {
+                    children.addAll((Collection<?>) value);
+                } else {
+                    children.add(value);
                 }
             }
+            if (children.isEmpty()) continue;
+            String childItems = toItems(association.getRef(), children, false, true);
+            if (childItems.isEmpty()) {
+                items.add(fieldName);
+            } else if (association.isArray()) {
+                items.add(fieldName + " : [" + childItems + "]");
+            } else {
+                items.add(fieldName + " : {" + childItems + "}");
+            }
+        }
+        return items.stream().collect(Collectors.joining(", "));
+    }
+
+    /**
+     * 是否有需要级联插入的hasOne/hasMany/belongsToMany对象
+     */
+    private boolean hasChildren(Object instance) {
+        Schema schema = schemaManager.getSchema(instance.getClass());
+        for (Association association : schema.getAssociations()) {
+            if (association.getType() == Association.Type.BelongsTo) continue;
+            Object value = getFieldValue(instance, association.getName());
+            if (value instanceof Collection ? ! ((Collection) value).isEmpty() : value != null) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 级联插入后下级参数中的id插回对象
+     */
+    private void setChildIds(Object instance, Map<String, Object> params) {
+        Schema schema = schemaManager.getSchema(instance.getClass());
+        for (Association association : schema.getAssociations()) {
+            if (association.getType() == Association.Type.BelongsTo) continue;
+            Object value = getFieldValue(instance, association.getName());
+            Object childParams = params.get(association.getName());
+            if (value instanceof List && childParams instanceof List) {
+                List<?> children = (List<?>) value;
+                List<?> childrenParams = (List<?>) childParams;
+                for (int i = 0; i < children.size() && i < childrenParams.size(); i ++) {
+                    setChildId(association.getRef(), children.get(i), (Map<String, Object>) childrenParams.get(i));
+                }
+            } else if (value != null && childParams instanceof Map) {
+                setChildId(association.getRef(), value, (Map<String, Object>) childParams);
+            }
+        }
+    }
+
+    private void setChildId(Schema schema, Object child, Map<String, Object> params) {
+        Object id = params.get(schema.getIdName());
+        if (id != null && getFieldValue(child, schema.getIdName()) == null) {
+            setFieldValue(child, schema.getIdName(), id);
+        }
+        setChildIds(child, params);
+    }
+
+    private Object getId(Object instance) {
+        Schema schema = schemaManager.getSchema(instance.getClass());
+        return getFieldValue(instance, schema.getIdName());
+    }
+
+    private Object getFieldValue(Object instance, String name) {
+        try {
+            Field field = instance.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            return field.get(instance);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    private void setFieldValue(Object instance, String name, Object value) {
+        try {
+            Field field = instance.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(instance, value);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 插入时版本号为null初始化为0
+     */
+    private void initVersion(Object instance) {
+        Column versionColumn = schemaManager.getSchema(instance.getClass()).getVersionColumn();
+        if (versionColumn == null || getFieldValue(instance, versionColumn.getName()) != null) return;
+        setFieldValue(instance, versionColumn.getName(), versionColumn.getDataType() == DataType.Long ? (Object) 0L : (Object) 0);
+    }
+
+    /**
+     * 版本号不为null时参与乐观锁
+     */
+    private boolean isVersioned(Object instance) {
+        Column versionColumn = schemaManager.getSchema(instance.getClass()).getVersionColumn();
+        return versionColumn != null && getFieldValue(instance, versionColumn.getName()) != null;
+    }
+
+    /**
+     * 更新成功后版本号加一
+     */
+    private void incrementVersion(Object instance) {
+        if (! isVersioned(instance)) return;
+        String name = schemaManager.getSchema(instance.getClass()).getVersionColumn().getName();
+        Object version = getFieldValue(instance, name);
+        setFieldValue(instance, name, version instanceof Long ? (Object) ((Long) version + 1) : (Object) ((Integer) version + 1));
+    }
+
+    /**
+     * 按id存在时更新非null字段，不存在时插入，id为null时直接插入并插回id
+     * 有id时不记录到工作单元，先flush已记录的写操作再立即执行
+     * 有id时不参与乐观锁，版本号按对象的值写入，不检查不加一，为null时不初始化
+     * @param instance
+     */
+    public void upsert(Object instance) {
+        if (getId(instance) == null) {
+            add(instance);
+            return;
+        }
+        session.upsert(toReql("upsert", instance, true), MapBean.toMap(instance));
+    }
+
+    /**
+     * 批量upsert，非null字段相同的对象合并为一条多行语句
+     * 与upsert一致，有id的对象立即执行，不经过工作单元和乐观锁，id为null的对象按addAll插入
+     * @param instances
+     */
+    public void upsertAll(List<?> instances) {
+        List<Object> adds = new ArrayList<>();
+        Map<String, List<Map<String, Object>>> groups = new LinkedHashMap<>();
+        for (Object instance : instances) {
+            if (getId(instance) == null) {
+                adds.add(instance);
+                continue;
+            }
+            groups.computeIfAbsent(toReql("upsert", instance, true), key -> new ArrayList<>()).add(MapBean.toMap(instance));
+        }
+        for (Map.Entry<String, List<Map<String, Object>>> entry : groups.entrySet()) {
+            session.upsertAll(entry.getKey(), entry.getValue());
+        }
+        addAll(adds);
+    }
+
+    /**
+     * 批量插入，非null字段相同的对象合并为多行insert，插回自增id
+     * @param instances
+     */
+    public void addAll(List<?> instances) {
+        UnitOfWork unitOfWork = deferred();
+        if (unitOfWork != null) {
+            instances.forEach(unitOfWork::add);
+            return;
+        }
+        Map<String, List<Object>> groups = new LinkedHashMap<>();
+        for (Object instance : instances) {
+            initVersion(instance);
+            String reql = toReql("add", instance, false);
+            if (reql == null) continue;
+            groups.computeIfAbsent(reql, key -> new ArrayList<>()).add(instance);
+        }
+        for (Map.Entry<String, List<Object>> entry : groups.entrySet()) {
+            addAll(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public void addAll(String reql, List<?> instances) {
+        // 多个上级共用的下级对象转为同一map，只插入一次
+        List<Map<String, Object>> paramsList = MapBean.toMaps(instances);
+        List<Object> ids = session.addAll(reql, paramsList);
+        if (ids.size() != instances.size()) return;
+        for (int i = 0; i < instances.size(); i ++) {
+            setChildIds(instances.get(i), paramsList.get(i));
+        }
+        Schema schema = schemaManager.getSchema(OrqlUtil.getSchema(reql));
+        try {
+            Field idField = schema.getClazz().getDeclaredField(schema.getIdName());
+            idField.setAccessible(true);
+            // id插回
+            for (int i = 0; i < instances.size(); i ++) {
+                idField.set(instances.get(i), ids.get(i));
+            }
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            e.printStackTrace();
         }
-        if (items.isEmpty()) return;
-        String reql = "add " + schema.getName() + " : {" + items.stream().collect(Collectors.joining(", ")) + "}";
-        add(reql, instance);
     }
 
     public void add(String reql, Object instance) {
         Map<String, Object> params = MapBean.toMap(instance);
         Object id = session.add(reql, params);
+        setChildIds(instance, params);
         if (id != null) {
             String schemaName = OrqlUtil.getSchema(reql);
             Schema schema = schemaManager.getSchema(schemaName);
@@ -73,7 +353,13 @@ public class UpdateBuilder {
         }
     }
 
+    /**
+     * 分片schema的分片键不是id时，id在各分片可能重复，不能只按id删除
+     */
     public void delete(Schema schema, Object id) {
+        if (schema.isSharded() && ! schema.getShardKey().getName().equals(schema.getIdName())) {
+            throw new ShardException("schema " + schema.getName() + " is sharded, delete by instance with shard key " + schema.getShardKey().getName());
+        }
         String reql = "delete " + schema.getName() + "(" + schema.getIdName() + " = #" + schema.getIdName() + ")";
         Map<String, Object> params = new HashMap<>();
         params.put(schema.getIdName(), id);
@@ -86,57 +372,324 @@ public class UpdateBuilder {
     }
 
     public void delete(Object instance) {
+        UnitOfWork unitOfWork = deferred();
+        if (unitOfWork != null) {
+            unitOfWork.delete(instance);
+            return;
+        }
         try {
             Class clazz = instance.getClass();
             Schema schema = schemaManager.getSchema(clazz);
             Field field = clazz.getDeclaredField(schema.getIdName());
             field.setAccessible(true);
             Object id = field.get(instance);
-            delete(schema, id);
+            String shardWhere = shardWhere(schema, instance);
+            if (shardWhere.isEmpty()) {
+                delete(schema, id);
+            } else {
+                // delete message(id = #id && userId = #userId)
+                String shardKey = schema.getShardKey().getName();
+                Map<String, Object> params = new HashMap<>();
+                params.put(schema.getIdName(), id);
+                params.put(shardKey, getFieldValue(instance, shardKey));
+                session.delete("delete " + schema.getName() + "(" + schema.getIdName() + " = #" + schema.getIdName() + shardWhere + ")", params);
+            }
+            // 与deleteAll一致，删除后不再脏检查
+            Snapshots snapshots = session.getSnapshots();
+            if (snapshots != null) snapshots.remove(instance);
         } catch (IllegalAccessException | NoSuchFieldException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * 按id批量删除，每个schema一条in语句，分片schema按对象逐个删除
+     * delete post(id in #ids)
+     * @param instances
+     */
+    public void deleteAll(List<?> instances) {
+        UnitOfWork unitOfWork = deferred();
+        if (unitOfWork != null) {
+            instances.forEach(unitOfWork::delete);
+            return;
+        }
+        Map<Schema, List<Object>> groups = new LinkedHashMap<>();
+        for (Object instance : instances) {
+            Schema schema = schemaManager.getSchema(instance.getClass());
+            Object id = getId(instance);
+            if (id == null) continue;
+            if (! shardWhere(schema, instance).isEmpty()) {
+                delete(instance);
+                continue;
+            }
+            groups.computeIfAbsent(schema, key -> new ArrayList<>()).add(id);
+        }
+        for (Map.Entry<Schema, List<Object>> entry : groups.entrySet()) {
+            Schema schema = entry.getKey();
+            String reql = "delete " + schema.getName() + "(" + schema.getIdName() + " in #ids)";
+            Map<String, Object> params = new HashMap<>();
+            params.put("ids", entry.getValue());
+            session.delete(reql, params);
+        }
+        Snapshots snapshots = session.getSnapshots();
+        if (snapshots != null) instances.forEach(snapshots::remove);
+    }
+
+    /**
+     * 按差异同步belongsToMany关联，只删除和插入变化的中间表行
+     * @param instance
+     * @param associationName belongsToMany关联名，如 tags
+     * @return 删除和新增的关联数
+     */
+    public int sync(Object instance, String associationName) {
+        return syncAll(Collections.singletonList(instance), associationName);
+    }
+
+    /**
+     * 批量按差异同步belongsToMany关联，一次查询当前关联，一次batch删除，多行insert新增
+     * 关联为null的对象不处理，空集合删除全部关联，没有id的关联对象先插入
+     * @param instances 同一schema的对象
+     * @param associationName
+     * @return 删除和新增的关联数
+     */
+    public int syncAll(List<?> instances, String associationName) {
+        if (instances.isEmpty()) return 0;
+        Schema schema = schemaManager.getSchema(instances.get(0).getClass());
+        Association association = schema.containsAssociation(associationName) ? schema.getAssociation(associationName) : null;
+        if (association == null || association.getType() != Association.Type.BelongsToMany) {
+            throw new IllegalArgumentException("schema " + schema.getName() + " not exist belongsToMany association " + associationName);
+        }
+        List<Object> adds = new ArrayList<>();
+        Set<Object> added = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Object instance : instances) {
+            Collection<?> children = (Collection<?>) getFieldValue(instance, associationName);
+            if (children == null) continue;
+            for (Object child : children) {
+                if (getId(child) == null && added.add(child)) adds.add(child);
+            }
+        }
+        if (! adds.isEmpty()) {
+            addAll(adds);
+            // 需要插回的id
+            if (deferred() != null) session.flush();
+        }
+        Map<Object, Collection<?>> refIds = new LinkedHashMap<>();
+        for (Object instance : instances) {
+            Object id = getId(instance);
+            Collection<?> children = (Collection<?>) getFieldValue(instance, associationName);
+            if (id == null || children == null) continue;
+            List<Object> ids = new ArrayList<>(children.size());
+            for (Object child : children) {
+                Object childId = getId(child);
+                if (childId != null) ids.add(childId);
+            }
+            refIds.put(id, ids);
+        }
+        return session.syncMiddle(association, refIds);
+    }
+
+    /**
+     * 分片键不是id的分片schema按对象写入时，条件加上对象的分片键，只在所在分片执行
+     * @return 不需要时为空字符串
+     */
+    private String shardWhere(Schema schema, Object instance) {
+        if (! schema.isSharded()) return "";
+        String shardKey = schema.getShardKey().getName();
+        if (shardKey.equals(schema.getIdName())) return "";
+        if (getFieldValue(instance, shardKey) == null) {
+            throw new ShardException("schema " + schema.getName() + " missing shard key " + shardKey);
+        }
+        return " && " + shardKey + " = #" + shardKey;
+    }
+
     /**
      * 使用reql和instance作为params更新
      * @param reql
      * @param instance
+     * @return 影响行数
      */
-    public void update(String reql, Object instance) {
+    public int update(String reql, Object instance) {
         Map<String, Object> params = MapBean.toMap(instance);
-        session.update(reql, params);
+        return session.update(reql, params);
     }
 
     /**
-     * 使用id作为条件，更新非null值
+     * 使用id作为条件，更新非null值，对象有快照时只更新修改过的字段，没有修改时不执行
+     * 有版本号时条件加上版本号并加一，没有更新行时抛出OptimisticLockException
+     * 工作单元中同一对象多次update合并，flush时执行
      * @param instance
      */
     public void update(Object instance) {
+        UnitOfWork unitOfWork = deferred();
+        if (unitOfWork != null) {
+            unitOfWork.update(instance);
+            return;
+        }
+        // 单行batch执行，执行失败时为空数组，与updateAll一致只有更新0行才是冲突
+        int[] rows;
+        WritePlans.BeanFields bean = planFields(instance, false);
+        if (bean != null) {
+            WritePlans.WritePlan plan = updatePlan(bean, instance);
+            if (plan == null) return;
+            try {
+                rows = session.nativeUpdateBatch(Collections.singletonList(plan.bind(instance)));
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+                return;
+            }
+        } else {
+            String reql = toUpdateReql(instance);
+            if (reql == null) return;
+            rows = session.updateBatch(reql, Collections.singletonList(MapBean.toMap(instance)));
+        }
+        List<Object> conflicts = new ArrayList<>();
+        checkRows(Collections.singletonList(instance), rows, conflicts);
+        if (! conflicts.isEmpty()) {
+            throw new OptimisticLockException(instance.getClass().getName() + " " + getId(instance) + " version conflict", instance);
+        }
+    }
+
+    /**
+     * 更新成功后版本号加一，刷新快照
+     */
+    private void updated(Object instance) {
+        incrementVersion(instance);
+        Snapshots snapshots = session.getSnapshots();
+        if (snapshots != null) snapshots.refresh(instance);
+    }
+
+    /**
+     * 批量按id更新，非null字段相同的对象合并为一次jdbc batch
+     * 冲突的行不影响其他行，全部执行后抛出OptimisticLockException，getConflicts为冲突的对象
+     * @param instances
+     */
+    public void updateAll(List<?> instances) {
+        UnitOfWork unitOfWork = deferred();
+        if (unitOfWork != null) {
+            instances.forEach(unitOfWork::update);
+            return;
+        }
+        Map<WritePlans.WritePlan, List<Object>> planGroups = new LinkedHashMap<>();
+        Map<String, List<Object>> groups = new LinkedHashMap<>();
+        for (Object instance : instances) {
+            WritePlans.BeanFields bean = planFields(instance, false);
+            if (bean != null) {
+                WritePlans.WritePlan plan = updatePlan(bean, instance);
+                if (plan == null) continue;
+                planGroups.computeIfAbsent(plan, key -> new ArrayList<>()).add(instance);
+                continue;
+            }
+            String reql = toUpdateReql(instance);
+            if (reql == null) continue;
+            groups.computeIfAbsent(reql, key -> new ArrayList<>()).add(instance);
+        }
+        List<Object> conflicts = new ArrayList<>();
+        for (Map.Entry<WritePlans.WritePlan, List<Object>> entry : planGroups.entrySet()) {
+            List<Object> group = entry.getValue();
+            List<NamedParamSql> namedParamSqls = new ArrayList<>(group.size());
+            try {
+                for (Object instance : group) {
+                    namedParamSqls.add(entry.getKey().bind(instance));
+                }
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+                continue;
+            }
+            checkRows(group, session.nativeUpdateBatch(namedParamSqls), conflicts);
+        }
+        for (Map.Entry<String, List<Object>> entry : groups.entrySet()) {
+            List<Object> group = entry.getValue();
+            List<Map<String, Object>> paramsList = new ArrayList<>(group.size());
+            for (Object instance : group) {
+                paramsList.add(MapBean.toMap(instance));
+            }
+            checkRows(group, session.updateBatch(entry.getKey(), paramsList), conflicts);
+        }
+        if (! conflicts.isEmpty()) {
+            throw new OptimisticLockException(conflicts.size() + " rows version conflict", conflicts);
+        }
+    }
+
+    /**
+     * batch每行结果，没有更新的版本号对象加入conflicts
+     */
+    private void checkRows(List<Object> group, int[] rows, List<Object> conflicts) {
+        if (rows.length != group.size()) return;
+        for (int i = 0; i < rows.length; i ++) {
+            Object instance = group.get(i);
+            if (rows[i] == 0) {
+                if (isVersioned(instance)) conflicts.add(instance);
+            } else {
+                // SUCCESS_NO_INFO视为成功
+                updated(instance);
+            }
+        }
+    }
+
+    /**
+     * 有快照时按修改过的字段，否则按非null字段取执行计划
+     * @return 没有更新字段时为null
+     */
+    private WritePlans.WritePlan updatePlan(WritePlans.BeanFields bean, Object instance) {
+        try {
+            Snapshots snapshots = session.getSnapshots();
+            List<String> dirtyFields = snapshots != null ? snapshots.dirtyFields(instance) : null;
+            long mask = dirtyFields != null ? writePlans.dirtyMask(bean, dirtyFields) : writePlans.presentMask(bean, instance, false);
+            if (mask == 0) return null;
+            return writePlans.updatePlan(bean, mask, isVersioned(instance));
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * update user(id = #id && version = #version) : {name, version += 1}
+     * 分片schema加上分片键 update message(id = #id && userId = #userId) : {content}
+     * @param instance
+     * @return 没有更新字段时为null
+     */
+    private String toUpdateReql(Object instance) {
         Class clazz = instance.getClass();
         Schema schema = schemaManager.getSchema(clazz);
         Field[] fields = clazz.getDeclaredFields();
         String idName = schema.getIdName();
+        Column versionColumn = schema.getVersionColumn();
+        String versionName = versionColumn != null ? versionColumn.getName() : null;
         List<String> items = new ArrayList<>();
-        for (Field field : fields) {
-            field.setAccessible(true);
-            String fieldName = field.getName();
-            if (fieldName.equals(idName)) {
-                continue;
+        Snapshots snapshots = session.getSnapshots();
+        List<String> dirtyFields = snapshots != null ? snapshots.dirtyFields(instance) : null;
+        if (dirtyFields != null) {
+            // 有快照时只更新修改过的字段
+            for (String fieldName : dirtyFields) {
+                if (fieldName.equals(idName) || fieldName.equals(versionName)) continue;
+                items.add(fieldName);
             }
-            if (schema.containsColumn(fieldName) || schema.containsAssociation(fieldName)) {
-                try {
-                    if (field.get(instance) != null) {
-                        items.add(fieldName);
+        } else {
+            for (Field field : fields) {
+                field.setAccessible(true);
+                String fieldName = field.getName();
+                if (fieldName.equals(idName) || fieldName.equals(versionName)) {
+                    continue;
+                }
+                if (schema.containsColumn(fieldName) || schema.containsAssociation(fieldName)) {
+                    try {
+                        if (field.get(instance) != null) {
+                            items.add(fieldName);
+                        }
+                    } catch (IllegalAccessException e) {
+                        e.printStackTrace();
                     }
-                } catch (IllegalAccessException e) {
-                    e.printStackTrace();
                 }
             }
         }
-        if (items.isEmpty()) return;
-        String reql = "update " + schema.getName() + "(" + schema.getIdName() + " = #" + schema.getIdName() + ") : {" + items.stream().collect(Collectors.joining(", ")) + "}";
-        update(reql, instance);
+        if (items.isEmpty()) return null;
+        String where = idName + " = #" + idName + shardWhere(schema, instance);
+        if (isVersioned(instance)) {
+            where += " && " + versionName + " = #" + versionName;
+            items.add(versionName + " += 1");
+        }
+        return "update " + schema.getName() + "(" + where + ") : {" + items.stream().collect(Collectors.joining(", ")) + "}";
     }
 
 }
@@ -0,0 +1,251 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.exception.SqlGenException;
+import com.github.orql.executor.orql.OrqlNode;
+import com.github.orql.executor.schema.Association;
+import com.github.orql.executor.schema.Column;
+import com.github.orql.executor.schema.DataType;
+import com.github.orql.executor.schema.Schema;
+import com.github.orql.executor.sql.NamedParamSql;
+
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * UpdateBuilder的insert/update执行计划缓存
+ * 按(类, 字段位图)缓存编译好的sql和参数取值字段，直接从对象按位置绑定参数，不再拼接orql和转换map
+ */
+public class WritePlans {
+
+    private final Configuration configuration;
+
+    private final Map<Class, BeanFields> beans = new ConcurrentHashMap<>();
+
+    WritePlans(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * 一个schema类的字段，位图第i位为fields[i]
+     */
+    static class BeanFields {
+
+        Schema schema;
+
+        Field[] fields;
+
+        /**
+         * belongsTo关联对象的id字段，普通列为null
+         */
+        Field[] refIds;
+
+        /**
+         * {列名/数据库字段/关联名/外键 : 下标}
+         */
+        Map<String, Integer> indexes = new HashMap<>();
+
+        int idIndex;
+
+        int versionIndex = -1;
+
+        Map<Long, WritePlan> inserts = new ConcurrentHashMap<>();
+
+        Map<Long, WritePlan> updates = new ConcurrentHashMap<>();
+
+        Map<Long, WritePlan> versionedUpdates = new ConcurrentHashMap<>();
+
+        /**
+         * 字段位图，不含id，update时不含版本号
+         */
+        long mask(int index, boolean insert) {
+            if (index == idIndex || (! insert && index == versionIndex)) return 0;
+            return 1L << index;
+        }
+    }
+
+    /**
+     * 编译好的语句，参数按位置从对象取值
+     */
+    public static class WritePlan {
+
+        private final String sql;
+
+        private final Field[] fields;
+
+        private final Field[] refIds;
+
+        /**
+         * insert时的自增id类型，update为null
+         */
+        private final DataType idType;
+
+        WritePlan(String sql, Field[] fields, Field[] refIds, DataType idType) {
+            this.sql = sql;
+            this.fields = fields;
+            this.refIds = refIds;
+            this.idType = idType;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        NamedParamSql bind(Object bean) throws IllegalAccessException {
+            Object[] values = new Object[fields.length];
+            for (int i = 0; i < fields.length; i ++) {
+                Object value = fields[i].get(bean);
+                if (value != null && refIds[i] != null) {
+                    value = refIds[i].get(value);
+                }
+                values[i] = value;
+            }
+            NamedParamSql namedParamSql = NamedParamSql.positional(sql, values);
+            if (idType != null) {
+                namedParamSql.setGeneratedKey(true);
+                namedParamSql.idType(idType);
+            }
+            return namedParamSql;
+        }
+    }
+
+    /**
+     * 字段超过63个或不是schema类时返回null
+     */
+    BeanFields getBeanFields(Class clazz) {
+        BeanFields cached = beans.get(clazz);
+        if (cached != null) return cached;
+        Schema schema = configuration.getSchemaManager().getSchema(clazz);
+        if (schema == null) return null;
+        BeanFields bean = new BeanFields();
+        bean.schema = schema;
+        List<Field> fields = new ArrayList<>();
+        List<Field> refIds = new ArrayList<>();
+        try {
+            for (Column column : schema.getColumns()) {
+                if (column.isRefKey()) continue;
+                int index = fields.size();
+                bean.indexes.put(column.getName(), index);
+                bean.indexes.put(column.getField(), index);
+                if (column == schema.getIdColumn()) bean.idIndex = index;
+                if (column.isVersion()) bean.versionIndex = index;
+                fields.add(accessible(clazz.getDeclaredField(column.getName())));
+                refIds.add(null);
+            }
+            for (Association association : schema.getAssociations()) {
+                if (association.getType() != Association.Type.BelongsTo) continue;
+                int index = fields.size();
+                bean.indexes.put(association.getName(), index);
+                bean.indexes.put(association.getRefKey(), index);
+                fields.add(accessible(clazz.getDeclaredField(association.getName())));
+                Schema ref = association.getRef();
+                refIds.add(accessible(ref.getClazz().getDeclaredField(ref.getIdName())));
+            }
+        } catch (NoSuchFieldException e) {
+            e.printStackTrace();
+            return null;
+        }
+        if (fields.size() > 63) return null;
+        bean.fields = fields.toArray(new Field[0]);
+        bean.refIds = refIds.toArray(new Field[0]);
+        beans.put(clazz, bean);
+        return bean;
+    }
+
+    private static Field accessible(Field field) {
+        field.setAccessible(true);
+        return field;
+    }
+
+    /**
+     * 非null字段位图
+     */
+    long presentMask(BeanFields bean, Object instance, boolean insert) throws IllegalAccessException {
+        long mask = 0;
+        for (int i = 0; i < bean.fields.length; i ++) {
+            if (bean.fields[i].get(instance) != null) {
+                mask |= bean.mask(i, insert);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * 修改过的字段位图
+     */
+    long dirtyMask(BeanFields bean, List<String> dirtyFields) {
+        long mask = 0;
+        for (String name : dirtyFields) {
+            Integer index = bean.indexes.get(name);
+            if (index != null) mask |= bean.mask(index, false);
+        }
+        return mask;
+    }
+
+    /**
+     * add user : {name, email}
+     */
+    WritePlan insertPlan(BeanFields bean, long mask) {
+        return bean.inserts.computeIfAbsent(mask, key -> {
+            String reql = "add " + bean.schema.getName() + " : {" + items(bean, mask) + "}";
+            OrqlNode tree = configuration.getParser().parse(reql);
+            String sql = configuration.getOrqlToSql().toAdd(tree.getRoot());
+            return compile(bean, sql, bean.schema.getIdColumn().getDataType());
+        });
+    }
+
+    /**
+     * update user(id = #id && version = #version) : {name, version += 1}
+     */
+    WritePlan updatePlan(BeanFields bean, long mask, boolean versioned) {
+        Map<Long, WritePlan> plans = versioned ? bean.versionedUpdates : bean.updates;
+        return plans.computeIfAbsent(mask, key -> {
+            String idName = bean.schema.getIdName();
+            String where = idName + " = #" + idName;
+            String items = items(bean, mask);
+            if (versioned) {
+                String versionName = bean.fields[bean.versionIndex].getName();
+                where += " && " + versionName + " = #" + versionName;
+                items += ", " + versionName + " += 1";
+            }
+            String reql = "update " + bean.schema.getName() + "(" + where + ") : {" + items + "}";
+            OrqlNode tree = configuration.getParser().parse(reql);
+            String sql = configuration.getOrqlToSql().toUpdate(tree.getRoot());
+            return compile(bean, sql, null);
+        });
+    }
+
+    private String items(BeanFields bean, long mask) {
+        StringJoiner items = new StringJoiner(", ");
+        for (int i = 0; i < bean.fields.length; i ++) {
+            if ((mask & (1L << i)) != 0) {
+                items.add(bean.fields[i].getName());
+            }
+        }
+        return items.toString();
+    }
+
+    /**
+     * 命名参数转为按位置取值的字段
+     */
+    private WritePlan compile(BeanFields bean, String sql, DataType idType) {
+        NamedParamSql namedParamSql = new NamedParamSql(sql);
+        List<String> names = namedParamSql.getParamNames();
+        Field[] fields = new Field[names.size()];
+        Field[] refIds = new Field[names.size()];
+        for (int i = 0; i < names.size(); i ++) {
+            Integer index = bean.indexes.get(names.get(i));
+            if (index == null) throw new SqlGenException();
+            fields[i] = bean.fields[index];
+            refIds[i] = bean.refIds[index];
+        }
+        return new WritePlan(namedParamSql.getSql(), fields, refIds, idType);
+    }
+
+    /**
+     * 方言改变后重新编译
+     */
+    void clear() {
+        beans.clear();
+    }
+}
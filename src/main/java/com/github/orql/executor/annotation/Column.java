@@ -40,4 +40,10 @@ public @interface Column {
      * @return
      */
     boolean required() default false;
+
+    /**
+     * 乐观锁版本号，Integer或Long
+     * @return
+     */
+    boolean version() default false;
 }
@@ -1,5 +1,8 @@
 package com.github.orql.executor.annotation;
 
+import com.github.orql.executor.shard.ModShardRouter;
+import com.github.orql.executor.shard.ShardRouter;
+
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -23,4 +26,21 @@ public @interface Schema {
      */
     String table() default "";
 
+    /**
+     * 分片键列名，为空不分片
+     * @return
+     */
+    String shardKey() default "";
+
+    /**
+     * 分片路由
+     * @return
+     */
+    Class<? extends ShardRouter> shardRouter() default ModShardRouter.class;
+
+    /**
+     * 主键从序列表按块预分配，插入前在客户端赋值，不读取自增id
+     * @return
+     */
+    boolean hiLo() default false;
 }
@@ -0,0 +1,63 @@
+package com.github.orql.executor.dialect;
+
+import com.github.orql.executor.LockMode;
+import com.github.orql.executor.schema.DataType;
+
+import java.util.List;
+
+/**
+ * 数据库方言
+ */
+public interface Dialect {
+
+    /**
+     * 分页
+     * @param offset 可为null
+     * @param limit 非null
+     * @return 以空格开头的分页子句
+     */
+    String page(Long offset, Integer limit);
+
+    /**
+     * delete每次执行行数限制
+     * @param limit
+     * @return 以空格开头的limit子句
+     */
+    String mutationLimit(int limit);
+
+    /**
+     * 查询行锁
+     * @param lockMode
+     * @return 以空格开头的锁定子句
+     */
+    String lock(LockMode lockMode);
+
+    /**
+     * 列类型，不含长度
+     * @param dataType
+     * @return
+     */
+    String columnType(DataType dataType);
+
+    /**
+     * upsert语句
+     * @param table
+     * @param columns 插入列
+     * @param keys 冲突判断列
+     * @param values 以 (...), (...) 形式的values
+     * @return
+     */
+    String upsert(String table, List<String> columns, List<String> keys, String values);
+
+    /**
+     * 单条语句最大参数数
+     * @return
+     */
+    int maxParams();
+
+    /**
+     * 多行insert时getGeneratedKeys是否按行返回全部id
+     * @return
+     */
+    boolean supportsMultiRowGeneratedKeys();
+}
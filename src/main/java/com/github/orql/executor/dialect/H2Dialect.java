@@ -0,0 +1,65 @@
+package com.github.orql.executor.dialect;
+
+import com.github.orql.executor.LockMode;
+import com.github.orql.executor.schema.DataType;
+
+import java.util.List;
+
+public class H2Dialect implements Dialect {
+
+    @Override
+    public String page(Long offset, Integer limit) {
+        return offset != null ? " limit " + limit + " offset " + offset : " limit " + limit;
+    }
+
+    @Override
+    public String mutationLimit(int limit) {
+        return " limit " + limit;
+    }
+
+    /**
+     * h2 1.4不支持skip locked和nowait，都按for update执行，等待时间由LOCK_TIMEOUT控制
+     */
+    @Override
+    public String lock(LockMode lockMode) {
+        return " for update";
+    }
+
+    @Override
+    public String columnType(DataType dataType) {
+        switch (dataType) {
+            case Int:
+                return "int";
+            case Long:
+                return "bigint";
+            case Float:
+                return "real";
+            case Bool:
+                return "boolean";
+            case Date:
+                return "timestamp";
+            case String:
+                return "varchar";
+            case Enum:
+                return "varchar";
+            case Double:
+                return "double";
+        }
+        return "";
+    }
+
+    @Override
+    public String upsert(String table, List<String> columns, List<String> keys, String values) {
+        return "merge into " + table + "(" + String.join(", ", columns) + ") key(" + String.join(", ", keys) + ") values " + values;
+    }
+
+    @Override
+    public int maxParams() {
+        return 100000;
+    }
+
+    @Override
+    public boolean supportsMultiRowGeneratedKeys() {
+        return true;
+    }
+}
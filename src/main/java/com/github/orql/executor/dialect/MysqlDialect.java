@@ -0,0 +1,85 @@
+package com.github.orql.executor.dialect;
+
+import com.github.orql.executor.LockMode;
+import com.github.orql.executor.schema.DataType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MysqlDialect implements Dialect {
+
+    @Override
+    public String page(Long offset, Integer limit) {
+        return offset != null ? " limit " + offset + ", " + limit : " limit " + limit;
+    }
+
+    @Override
+    public String mutationLimit(int limit) {
+        return " limit " + limit;
+    }
+
+    /**
+     * skip locked和nowait需要mysql 8.0
+     */
+    @Override
+    public String lock(LockMode lockMode) {
+        switch (lockMode) {
+            case SkipLocked:
+                return " for update skip locked";
+            case NoWait:
+                return " for update nowait";
+        }
+        return " for update";
+    }
+
+    @Override
+    public String columnType(DataType dataType) {
+        switch (dataType) {
+            case Int:
+                return "int";
+            case Long:
+                return "bigint";
+            case Float:
+                return "float";
+            case Bool:
+                return "boolean";
+            case Date:
+                return "datetime";
+            case String:
+                return "varchar";
+            case Enum:
+                return "enum";
+            case Double:
+                return "double";
+        }
+        return "";
+    }
+
+    /**
+     * insert ... on duplicate key update，冲突判断使用表的主键和唯一索引
+     */
+    @Override
+    public String upsert(String table, List<String> columns, List<String> keys, String values) {
+        List<String> sets = new ArrayList<>();
+        for (String column : columns) {
+            if (! keys.contains(column)) sets.add(column + " = values(" + column + ")");
+        }
+        // 只有主键时不修改
+        if (sets.isEmpty()) sets.add(keys.get(0) + " = " + keys.get(0));
+        return "insert into " + table + "(" + String.join(", ", columns) + ") values " + values +
+                " on duplicate key update " + String.join(", ", sets);
+    }
+
+    /**
+     * 协议限制占位符数量不超过65535
+     */
+    @Override
+    public int maxParams() {
+        return 65535;
+    }
+
+    @Override
+    public boolean supportsMultiRowGeneratedKeys() {
+        return true;
+    }
+}
@@ -0,0 +1,9 @@
+package com.github.orql.executor.exception;
+
+public class AdmissionRejectedException extends RuntimeException {
+
+    public AdmissionRejectedException(String message) {
+        super(message);
+    }
+
+}
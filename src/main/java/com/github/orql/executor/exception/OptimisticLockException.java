@@ -0,0 +1,29 @@
+package com.github.orql.executor.exception;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 乐观锁冲突，版本号不匹配或行已删除
+ */
+public class OptimisticLockException extends RuntimeException {
+
+    /**
+     * 冲突的对象
+     */
+    private List<Object> conflicts;
+
+    public OptimisticLockException(String message, Object conflict) {
+        this(message, Collections.singletonList(conflict));
+    }
+
+    public OptimisticLockException(String message, List<Object> conflicts) {
+        super(message);
+        this.conflicts = conflicts;
+    }
+
+    public List<Object> getConflicts() {
+        return conflicts;
+    }
+
+}
@@ -0,0 +1,13 @@
+package com.github.orql.executor.exception;
+
+public class QueryTimeoutException extends RuntimeException {
+
+    public QueryTimeoutException(String message) {
+        super(message);
+    }
+
+    public QueryTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
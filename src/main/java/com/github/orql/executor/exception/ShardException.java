@@ -0,0 +1,9 @@
+package com.github.orql.executor.exception;
+
+public class ShardException extends RuntimeException {
+
+    public ShardException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,13 @@
+package com.github.orql.executor.exception;
+
+public class SqlExecutionException extends RuntimeException {
+
+    public SqlExecutionException(String message) {
+        super(message);
+    }
+
+    public SqlExecutionException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
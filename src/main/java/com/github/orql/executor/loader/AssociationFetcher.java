@@ -0,0 +1,192 @@
+package com.github.orql.executor.loader;
+
+import com.github.orql.executor.Session;
+import com.github.orql.executor.schema.Association;
+import com.github.orql.executor.schema.DataType;
+import com.github.orql.executor.schema.Schema;
+import com.github.orql.executor.util.MapBean;
+
+import java.util.*;
+
+/**
+ * 按键批量加载关联，每批一次in查询，只查询关联表，不重新读取上级
+ * belongsTo 按外键查询关联表 query user(id in #ids) : [*]
+ * hasOne/hasMany 按外键查询下级后分组 query post(authorId in #ids order id) : [*, authorId]
+ * belongsToMany 先读取中间表，再按id查询关联表 query tag(id in #ids) : [*]
+ */
+public class AssociationFetcher {
+
+    private Session session;
+
+    private int batchSize;
+
+    public AssociationFetcher(Session session, int batchSize) {
+        this.session = session;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 加载关联
+     * @param association
+     * @param ids current schema的id
+     * @return {id : 关联值}, 集合关联为List, 对象关联为bean, 不存在时为空List或null
+     */
+    public Map<Object, Object> fetch(Association association, Collection<?> ids) {
+        // 去重
+        List<Object> idList = new ArrayList<>(new LinkedHashSet<>(ids));
+        DataType idType = association.getCurrent().getIdColumn().getDataType();
+        // {转换后的id : 关联值}
+        Map<Object, Object> fetched;
+        switch (association.getType()) {
+            case BelongsTo:
+                fetched = fetchBelongsTo(association, idList);
+                break;
+            case BelongsToMany:
+                fetched = fetchBelongsToMany(association, idList);
+                break;
+            default:
+                fetched = fetchByRefKey(association, idList);
+        }
+        Map<Object, Object> values = new HashMap<>();
+        for (Object id : idList) {
+            Object value = fetched.get(idType.convert(id));
+            values.put(id, value != null ? value : association.isArray() ? new ArrayList<>() : null);
+        }
+        return values;
+    }
+
+    /**
+     * 按外键加载belongsTo关联
+     * @param association belongsTo关联
+     * @param refIds 外键值
+     * @return {外键值 : bean}, 不存在的外键没有值
+     */
+    public Map<Object, Object> fetchRefs(Association association, Collection<?> refIds) {
+        Schema ref = association.getRef();
+        String idName = ref.getIdName();
+        DataType idType = ref.getIdColumn().getDataType();
+        Map<Object, Object> refs = new HashMap<>();
+        for (Map<String, Object> result : queryIn("query " + ref.getName() + "(" + idName + " in #ids) : [*]", refIds)) {
+            refs.put(idType.convert(result.get(idName)), MapBean.toBean(result, ref.getClazz()));
+        }
+        Map<Object, Object> values = new HashMap<>();
+        for (Object refId : refIds) {
+            Object value = refs.get(idType.convert(refId));
+            if (value != null) values.put(refId, value);
+        }
+        return values;
+    }
+
+    /**
+     * 读取belongsTo的外键，对象中没有关联对象时使用，只读取id和外键列
+     * query post(id in #ids) : [id, authorId]
+     * @param association belongsTo关联
+     * @param ids current schema的id
+     * @return {id : 外键值}, 外键为null时没有值
+     */
+    public Map<Object, Object> foreignKeys(Association association, Collection<?> ids) {
+        Schema schema = association.getCurrent();
+        String idName = schema.getIdName();
+        String refKey = association.getRefKey();
+        DataType idType = schema.getIdColumn().getDataType();
+        Map<Object, Object> keys = new HashMap<>();
+        for (Map<String, Object> result : queryIn("query " + schema.getName() + "(" + idName + " in #ids) : [" + idName + ", " + refKey + "]", ids)) {
+            if (result.get(refKey) != null) keys.put(idType.convert(result.get(idName)), result.get(refKey));
+        }
+        Map<Object, Object> values = new HashMap<>();
+        for (Object id : ids) {
+            Object key = keys.get(idType.convert(id));
+            if (key != null) values.put(id, key);
+        }
+        return values;
+    }
+
+    private Map<Object, Object> fetchBelongsTo(Association association, List<Object> ids) {
+        DataType idType = association.getCurrent().getIdColumn().getDataType();
+        Map<Object, Object> keys = foreignKeys(association, ids);
+        Map<Object, Object> refs = fetchRefs(association, new LinkedHashSet<>(keys.values()));
+        Map<Object, Object> values = new HashMap<>();
+        for (Map.Entry<Object, Object> entry : keys.entrySet()) {
+            Object ref = refs.get(entry.getValue());
+            if (ref != null) values.put(idType.convert(entry.getKey()), ref);
+        }
+        return values;
+    }
+
+    /**
+     * hasOne/hasMany 外键在下级表，按外键分组
+     */
+    private Map<Object, Object> fetchByRefKey(Association association, List<Object> ids) {
+        Schema ref = association.getRef();
+        String refKey = association.getRefKey();
+        DataType idType = association.getCurrent().getIdColumn().getDataType();
+        String orql = "query " + ref.getName() + "(" + refKey + " in #ids order " + ref.getIdName() + ") : [*, " + refKey + "]";
+        Map<Object, Object> values = new HashMap<>();
+        for (Map<String, Object> result : queryIn(orql, ids)) {
+            // 外键不是对象字段，转为bean前移除
+            Object key = idType.convert(result.remove(refKey));
+            Object bean = MapBean.toBean(result, ref.getClazz());
+            if (association.isArray()) {
+                ((List<Object>) values.computeIfAbsent(key, k -> new ArrayList<>())).add(bean);
+            } else {
+                values.putIfAbsent(key, bean);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 中间表按批读取关联id，所有关联id一起查询关联表
+     */
+    private Map<Object, Object> fetchBelongsToMany(Association association, List<Object> ids) {
+        Schema ref = association.getRef();
+        String idName = ref.getIdName();
+        DataType idType = association.getCurrent().getIdColumn().getDataType();
+        DataType refIdType = ref.getIdColumn().getDataType();
+        Map<Object, List<Object>> links = new HashMap<>();
+        Set<Object> refIds = new LinkedHashSet<>();
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<Object> batch = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            for (Map.Entry<Object, List<Object>> entry : session.queryMiddleKeys(association, batch).entrySet()) {
+                List<Object> linked = links.computeIfAbsent(idType.convert(entry.getKey()), key -> new ArrayList<>());
+                for (Object refId : entry.getValue()) {
+                    linked.add(refIdType.convert(refId));
+                    refIds.add(refIdType.convert(refId));
+                }
+            }
+        }
+        Map<Object, Map<String, Object>> refs = new HashMap<>();
+        for (Map<String, Object> result : queryIn("query " + ref.getName() + "(" + idName + " in #ids order " + idName + ") : [*]", refIds)) {
+            refs.put(refIdType.convert(result.get(idName)), result);
+        }
+        Map<Object, Object> values = new HashMap<>();
+        for (Map.Entry<Object, List<Object>> entry : links.entrySet()) {
+            List<Object> list = new ArrayList<>();
+            for (Object refId : entry.getValue()) {
+                // 每个上级单独的对象
+                if (refs.containsKey(refId)) list.add(MapBean.toBean(refs.get(refId), ref.getClazz()));
+            }
+            values.put(entry.getKey(), list);
+        }
+        return values;
+    }
+
+    /**
+     * 按批执行in查询
+     * @param orql 参数名为ids的数组查询
+     * @param keys
+     * @return 所有批的结果
+     */
+    private List<Map<String, Object>> queryIn(String orql, Collection<?> keys) {
+        List<Object> keyList = new ArrayList<>(keys);
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (int from = 0; from < keyList.size(); from += batchSize) {
+            Map<String, Object> params = new HashMap<>();
+            params.put("ids", keyList.subList(from, Math.min(from + batchSize, keyList.size())));
+            Object batchResults = session.query(orql, params, null, null);
+            if (batchResults != null) results.addAll((List<Map<String, Object>>) batchResults);
+        }
+        return results;
+    }
+
+}
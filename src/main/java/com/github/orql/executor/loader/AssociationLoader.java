@@ -0,0 +1,53 @@
+package com.github.orql.executor.loader;
+
+import com.github.orql.executor.schema.Association;
+
+import java.util.*;
+
+/**
+ * 同一查询结果中兄弟对象共享的懒加载器
+ * 首次访问任一对象的关联时，连同其他未加载的兄弟对象一起批量加载，避免N+1
+ */
+public class AssociationLoader {
+
+    private AssociationFetcher fetcher;
+
+    private Association association;
+
+    private int batchSize;
+
+    /**
+     * 未加载 {id : lazyList}
+     */
+    private Map<Object, List<LazyList>> pending = new LinkedHashMap<>();
+
+    public AssociationLoader(AssociationFetcher fetcher, Association association, int batchSize) {
+        this.fetcher = fetcher;
+        this.association = association;
+        this.batchSize = batchSize;
+    }
+
+    public synchronized <E> LazyList<E> register(Object id) {
+        LazyList<E> list = new LazyList<>(this, id);
+        pending.computeIfAbsent(id, key -> new ArrayList<>()).add(list);
+        return list;
+    }
+
+    synchronized void load(Object id) {
+        // 已被其他兄弟对象一起加载
+        if (! pending.containsKey(id)) return;
+        List<Object> batch = new ArrayList<>();
+        batch.add(id);
+        for (Object key : pending.keySet()) {
+            if (batch.size() >= batchSize) break;
+            if (! key.equals(id)) batch.add(key);
+        }
+        Map<Object, Object> values = fetcher.fetch(association, batch);
+        for (Object key : batch) {
+            for (LazyList list : pending.remove(key)) {
+                list.fill((List) values.get(key));
+            }
+        }
+    }
+
+}
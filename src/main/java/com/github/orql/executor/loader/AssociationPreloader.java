@@ -0,0 +1,162 @@
+package com.github.orql.executor.loader;
+
+import com.github.orql.executor.schema.Association;
+import com.github.orql.executor.schema.Schema;
+import com.github.orql.executor.schema.SchemaManager;
+
+import java.lang.reflect.Field;
+import java.util.*;
+
+/**
+ * 为已有对象列表加载关联
+ * preload(posts, "author", "tags", "author.roles")
+ * 每个关联层级按批一次in查询，公共前缀只加载一次
+ */
+public class AssociationPreloader {
+
+    private SchemaManager schemaManager;
+
+    private AssociationFetcher fetcher;
+
+    /**
+     * 关联路径树
+     */
+    private static class PathNode {
+        Map<String, PathNode> children = new LinkedHashMap<>();
+    }
+
+    public AssociationPreloader(SchemaManager schemaManager, AssociationFetcher fetcher) {
+        this.schemaManager = schemaManager;
+        this.fetcher = fetcher;
+    }
+
+    public void preload(List<?> entities, String... associationPaths) {
+        List<Object> beans = new ArrayList<>();
+        for (Object entity : entities) {
+            if (entity != null) beans.add(entity);
+        }
+        if (beans.isEmpty()) return;
+        PathNode root = new PathNode();
+        for (String path : associationPaths) {
+            PathNode node = root;
+            for (String name : path.split("\\.")) {
+                node = node.children.computeIfAbsent(name, key -> new PathNode());
+            }
+        }
+        Schema schema = schemaManager.getSchema(beans.get(0).getClass());
+        preload(schema, beans, root);
+    }
+
+    private void preload(Schema schema, List<Object> beans, PathNode node) {
+        if (beans.isEmpty()) return;
+        for (Map.Entry<String, PathNode> entry : node.children.entrySet()) {
+            String name = entry.getKey();
+            Association association = schema.getAssociation(name);
+            if (association == null) {
+                throw new IllegalArgumentException("schema " + schema.getName() + " not exist association " + name);
+            }
+            List<Object> children = association.getType() == Association.Type.BelongsTo
+                    ? loadBelongsTo(schema, association, beans)
+                    : load(schema, association, beans);
+            preload(association.getRef(), children, entry.getValue());
+        }
+    }
+
+    /**
+     * 按外键加载belongsTo，外键取自对象中已有关联对象的id，没有关联对象时只读取外键列
+     * @return 加载到的下一层对象
+     */
+    private List<Object> loadBelongsTo(Schema schema, Association association, List<Object> beans) {
+        List<Object> children = new ArrayList<>();
+        try {
+            Class<?> clazz = schema.getClazz();
+            Field idField = clazz.getDeclaredField(schema.getIdName());
+            idField.setAccessible(true);
+            Field field = clazz.getDeclaredField(association.getName());
+            field.setAccessible(true);
+            Field refIdField = association.getRef().getClazz().getDeclaredField(association.getRef().getIdName());
+            refIdField.setAccessible(true);
+            // {bean : 外键}
+            Map<Object, Object> beanKeys = new IdentityHashMap<>();
+            // 外键未知 {id : beans}
+            Map<Object, List<Object>> missing = new LinkedHashMap<>();
+            for (Object bean : beans) {
+                Object ref = field.get(bean);
+                Object refId = ref != null ? refIdField.get(ref) : null;
+                if (refId != null) {
+                    beanKeys.put(bean, refId);
+                    continue;
+                }
+                Object id = idField.get(bean);
+                if (id != null) missing.computeIfAbsent(id, key -> new ArrayList<>()).add(bean);
+            }
+            if (! missing.isEmpty()) {
+                Map<Object, Object> keys = fetcher.foreignKeys(association, missing.keySet());
+                for (Map.Entry<Object, List<Object>> entry : missing.entrySet()) {
+                    Object refId = keys.get(entry.getKey());
+                    for (Object bean : entry.getValue()) {
+                        if (refId != null) {
+                            beanKeys.put(bean, refId);
+                        } else {
+                            field.set(bean, null);
+                        }
+                    }
+                }
+            }
+            if (beanKeys.isEmpty()) return children;
+            Map<Object, Object> refs = fetcher.fetchRefs(association, new LinkedHashSet<>(beanKeys.values()));
+            Set<Object> added = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Object bean : beans) {
+                if (! beanKeys.containsKey(bean)) continue;
+                Object ref = refs.get(beanKeys.get(bean));
+                field.set(bean, ref);
+                if (ref != null && added.add(ref)) children.add(ref);
+            }
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            e.printStackTrace();
+        }
+        return children;
+    }
+
+    /**
+     * 加载一层hasOne/hasMany/belongsToMany关联
+     * @return 加载到的下一层对象
+     */
+    private List<Object> load(Schema schema, Association association, List<Object> beans) {
+        List<Object> children = new ArrayList<>();
+        try {
+            Class<?> clazz = schema.getClazz();
+            Field idField = clazz.getDeclaredField(schema.getIdName());
+            idField.setAccessible(true);
+            Field field = clazz.getDeclaredField(association.getName());
+            field.setAccessible(true);
+            // 同一id可能对应多个对象 {id : beans}
+            Map<Object, List<Object>> idBeans = new LinkedHashMap<>();
+            for (Object bean : beans) {
+                Object id = idField.get(bean);
+                if (id == null) continue;
+                idBeans.computeIfAbsent(id, key -> new ArrayList<>()).add(bean);
+            }
+            if (idBeans.isEmpty()) return children;
+            Map<Object, Object> values = fetcher.fetch(association, idBeans.keySet());
+            for (Map.Entry<Object, List<Object>> entry : idBeans.entrySet()) {
+                Object value = values.get(entry.getKey());
+                boolean first = true;
+                for (Object bean : entry.getValue()) {
+                    // 集合不在对象间共享
+                    field.set(bean, first || ! (value instanceof List) ? value : new ArrayList<>((List) value));
+                    first = false;
+                }
+                if (value instanceof List) {
+                    children.addAll((List) value);
+                } else if (value != null) {
+                    children.add(value);
+                }
+            }
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            e.printStackTrace();
+        }
+        return children;
+    }
+
+}
@@ -0,0 +1,177 @@
+package com.github.orql.executor.loader;
+
+import com.github.orql.executor.OrqlExecutor;
+import com.github.orql.executor.Session;
+import com.github.orql.executor.schema.DataType;
+import com.github.orql.executor.schema.Schema;
+import com.github.orql.executor.schema.SchemaManager;
+import com.github.orql.executor.util.MapBean;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 跨线程合并按id查询
+ * 同一schema的并发请求在很短的窗口内(或达到最大批量时)合并为一次 id in 查询
+ * query user(id in #ids) : [*]
+ */
+public class IdBatchLoader {
+
+    private OrqlExecutor orqlExecutor;
+
+    private SchemaManager schemaManager;
+
+    /**
+     * 合并窗口
+     */
+    private long windowMillis;
+
+    private int maxBatchSize;
+
+    /**
+     * 窗口计时
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * 执行查询，由调用方传入，shutdown时不关闭
+     */
+    private ExecutorService executor;
+
+    private boolean shutdown = false;
+
+    /**
+     * 每个schema当前收集中的批次
+     */
+    private final Map<Schema, Batch> batches = new HashMap<>();
+
+    private static class Batch {
+        Schema schema;
+        /**
+         * {转换为主键类型的id : 请求}
+         */
+        Map<Object, List<CompletableFuture<Object>>> requests = new LinkedHashMap<>();
+        boolean dispatched = false;
+
+        Batch(Schema schema) {
+            this.schema = schema;
+        }
+    }
+
+    public IdBatchLoader(OrqlExecutor orqlExecutor, SchemaManager schemaManager, long windowMillis, int maxBatchSize, ExecutorService executor) {
+        this.orqlExecutor = orqlExecutor;
+        this.schemaManager = schemaManager;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.executor = executor;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "orql-id-batch-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 按id查询，与其他线程的同schema请求合并执行
+     * @param clazz
+     * @param id
+     * @param <T>
+     * @return 不存在时为null
+     */
+    public <T> CompletableFuture<T> load(Class<T> clazz, Object id) {
+        Schema schema = schemaManager.getSchema(clazz);
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        // Integer参数与Long主键合并为同一个请求
+        Object key = schema.getIdColumn().getDataType().convert(id);
+        Batch full = null;
+        synchronized (batches) {
+            if (shutdown) {
+                future.completeExceptionally(new RejectedExecutionException("id batch loader is shut down"));
+                return (CompletableFuture<T>) future;
+            }
+            Batch batch = batches.get(schema);
+            if (batch == null) {
+                batch = new Batch(schema);
+                batches.put(schema, batch);
+                Batch scheduled = batch;
+                scheduler.schedule(() -> dispatch(scheduled), windowMillis, TimeUnit.MILLISECONDS);
+            }
+            batch.requests.computeIfAbsent(key, k -> new ArrayList<>()).add(future);
+            if (batch.requests.size() >= maxBatchSize) {
+                full = batch;
+            }
+        }
+        if (full != null) dispatch(full);
+        return (CompletableFuture<T>) future;
+    }
+
+    private void dispatch(Batch batch) {
+        synchronized (batches) {
+            if (batch.dispatched) return;
+            batch.dispatched = true;
+            batches.remove(batch.schema, batch);
+        }
+        try {
+            executor.execute(() -> execute(batch));
+        } catch (RejectedExecutionException e) {
+            fail(batch, e);
+        }
+    }
+
+    private void execute(Batch batch) {
+        Schema schema = batch.schema;
+        String idName = schema.getIdName();
+        DataType idType = schema.getIdColumn().getDataType();
+        String orql = "query " + schema.getName() + "(" + idName + " in #ids) : [*]";
+        Map<String, Object> params = new HashMap<>();
+        params.put("ids", new ArrayList<>(batch.requests.keySet()));
+        Session session = null;
+        try {
+            session = orqlExecutor.newSession();
+            Object results = session.query(orql, params, null, null);
+            if (results == null) {
+                throw new IllegalStateException("batch query " + schema.getName() + " failed");
+            }
+            Map<Object, Object> beans = new HashMap<>();
+            for (Object result : (List) results) {
+                Map<String, Object> resultMap = (Map<String, Object>) result;
+                beans.put(idType.convert(resultMap.get(idName)), MapBean.toBean(resultMap, schema.getClazz()));
+            }
+            for (Map.Entry<Object, List<CompletableFuture<Object>>> entry : batch.requests.entrySet()) {
+                Object bean = beans.get(entry.getKey());
+                for (CompletableFuture<Object> future : entry.getValue()) {
+                    future.complete(bean);
+                }
+            }
+        } catch (RuntimeException e) {
+            fail(batch, e);
+        } finally {
+            if (session != null) session.close();
+        }
+    }
+
+    private void fail(Batch batch, Throwable e) {
+        for (List<CompletableFuture<Object>> futures : batch.requests.values()) {
+            for (CompletableFuture<Object> future : futures) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * 收集中的批次立即执行，然后关闭计时，之后的请求以RejectedExecutionException失败
+     * 执行查询的executor由调用方关闭
+     */
+    public void shutdown() {
+        List<Batch> pending;
+        synchronized (batches) {
+            shutdown = true;
+            pending = new ArrayList<>(batches.values());
+        }
+        for (Batch batch : pending) {
+            dispatch(batch);
+        }
+        scheduler.shutdownNow();
+    }
+
+}
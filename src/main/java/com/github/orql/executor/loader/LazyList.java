@@ -0,0 +1,64 @@
+package com.github.orql.executor.loader;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * 懒加载集合，首次访问时通过AssociationLoader加载
+ * 加载依赖查询时的session，session关闭后不可再触发加载
+ * @param <E>
+ */
+public class LazyList<E> extends AbstractList<E> {
+
+    private AssociationLoader loader;
+
+    private Object id;
+
+    private volatile List<E> values;
+
+    LazyList(AssociationLoader loader, Object id) {
+        this.loader = loader;
+        this.id = id;
+    }
+
+    void fill(List<E> values) {
+        this.values = values;
+    }
+
+    public boolean isLoaded() {
+        return values != null;
+    }
+
+    private List<E> values() {
+        if (values == null) {
+            loader.load(id);
+        }
+        return values;
+    }
+
+    @Override
+    public E get(int index) {
+        return values().get(index);
+    }
+
+    @Override
+    public int size() {
+        return values().size();
+    }
+
+    @Override
+    public E set(int index, E element) {
+        return values().set(index, element);
+    }
+
+    @Override
+    public void add(int index, E element) {
+        values().add(index, element);
+    }
+
+    @Override
+    public E remove(int index) {
+        return values().remove(index);
+    }
+
+}
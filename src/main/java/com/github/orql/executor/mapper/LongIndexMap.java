@@ -0,0 +1,91 @@
+package com.github.orql.executor.mapper;
+
+import java.util.Arrays;
+
+/**
+ * long -> int 开放寻址哈希表
+ * 用于Int/Long主键分组，避免装箱和Entry分配
+ */
+class LongIndexMap {
+
+    /**
+     * 不存在
+     */
+    static final int Absent = -1;
+
+    private long[] keys;
+
+    private int[] values;
+
+    private int mask;
+
+    private int size;
+
+    LongIndexMap(int expected) {
+        int capacity = 16;
+        // 负载因子0.5
+        while (capacity < expected * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        // 空槽位value为Absent
+        Arrays.fill(values, Absent);
+        mask = capacity - 1;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    int get(long key) {
+        int i = hash(key) & mask;
+        while (values[i] != Absent) {
+            if (keys[i] == key) return values[i];
+            i = (i + 1) & mask;
+        }
+        return Absent;
+    }
+
+    /**
+     * @param key
+     * @param value 非负
+     */
+    void put(long key, int value) {
+        int i = hash(key) & mask;
+        while (values[i] != Absent) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size ++;
+        if (size * 2 > keys.length) {
+            rehash();
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length << 1);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i ++) {
+            if (oldValues[i] != Absent) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
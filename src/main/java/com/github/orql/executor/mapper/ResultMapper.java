@@ -12,6 +12,24 @@ public class ResultMapper {
 
     private Logger logger = LoggerFactory.getLogger(ResultMapper.class);
 
+    /**
+     * 不超过该行数时线性查找分组
+     */
+    private static final int SmallGroupSize = 16;
+
+    /**
+     * 是否对Int/Long id使用原始类型分组
+     */
+    private boolean primitiveIdGrouping = true;
+
+    public boolean isPrimitiveIdGrouping() {
+        return primitiveIdGrouping;
+    }
+
+    public void setPrimitiveIdGrouping(boolean primitiveIdGrouping) {
+        this.primitiveIdGrouping = primitiveIdGrouping;
+    }
+
     public Object getValue(ResultSet resultSet, String field, DataType type) throws SQLException {
         switch (type) {
             case Int:
@@ -33,6 +51,13 @@ public class ResultMapper {
     }
 
     public List<Map<String, Object>> mappe(ResultRoot resultRoot, ResultSet resultSet) throws SQLException {
+        return mappe(resultRoot, resultSet, null);
+    }
+
+    /**
+     * @param budget 非null时每行计入预算，超出时停止读取
+     */
+    public List<Map<String, Object>> mappe(ResultRoot resultRoot, ResultSet resultSet, RowBudget budget) throws SQLException {
         // 原始结果集合
         List<Map<String, Object>> resultMapList = new ArrayList<>();
         // 获取全部结果
@@ -45,28 +70,112 @@ public class ResultMapper {
 //                logger.info("field: " + field + ", value: " + value);
                 resultMap.put(field, value);
             }
+            if (budget != null) budget.consume(resultMap);
             resultMapList.add(resultMap);
         }
         return mappe(resultRoot, resultMapList);
     }
 
-    private List<Map<String, Object>> mappe(ResultRoot resultRoot, List<Map<String, Object>> resultMapList) {
-        List<Map<String, Object>> data = new ArrayList<>();
-        ResultId resultId = resultRoot.getId();
-        // 按id切割, {id : resultSetList}
-        Map<Object, List<Map<String, Object>>> idListMap = new LinkedHashMap<>();
+    /**
+     * 按id切割后的结果，ids与rows一一对应，保持出现顺序
+     */
+    static class IdGroups {
+        final List<Object> ids = new ArrayList<>();
+        final List<List<Map<String, Object>>> rows = new ArrayList<>();
+
+        List<Map<String, Object>> add(Object id) {
+            List<Map<String, Object>> list = new ArrayList<>();
+            ids.add(id);
+            rows.add(list);
+            return list;
+        }
+    }
+
+    IdGroups groupById(ResultId resultId, List<Map<String, Object>> resultMapList) {
+        DataType type = resultId.getType();
+        if (primitiveIdGrouping && (type == DataType.Int || type == DataType.Long)) {
+            return groupByLongId(resultId.getField(), resultMapList);
+        }
+        return groupByObjectId(resultId.getField(), resultMapList);
+    }
+
+    private IdGroups groupByLongId(String field, List<Map<String, Object>> resultMapList) {
+        IdGroups groups = new IdGroups();
+        // 单行无需建表
+        if (resultMapList.size() == 1) {
+            Map<String, Object> resultMap = resultMapList.get(0);
+            Object idValue = resultMap.get(field);
+            if (idValue != null) groups.add(idValue).add(resultMap);
+            return groups;
+        }
+        if (resultMapList.size() <= SmallGroupSize) {
+            return groupBySmallLongId(field, resultMapList, groups);
+        }
+        LongIndexMap indexMap = new LongIndexMap(resultMapList.size());
         for (Map<String, Object> resultMap : resultMapList) {
-            Object idValue = resultMap.get(resultId.getField());
+            Object idValue = resultMap.get(field);
             // 避免null id列被映射
             if (idValue == null) continue;
-            if (! idListMap.containsKey(idValue)) {
-                idListMap.put(idValue, new ArrayList<>());
+            long key = ((Number) idValue).longValue();
+            int index = indexMap.get(key);
+            if (index == LongIndexMap.Absent) {
+                indexMap.put(key, groups.ids.size());
+                groups.add(idValue).add(resultMap);
+            } else {
+                groups.rows.get(index).add(resultMap);
             }
-            idListMap.get(idValue).add(resultMap);
         }
-        for (Map.Entry<Object, List<Map<String, Object>>> entry : idListMap.entrySet()) {
-            Object idValue = entry.getKey();
-            List<Map<String, Object>> idList = entry.getValue();
+        return groups;
+    }
+
+    /**
+     * 行数较少时线性查找，比建哈希表分配更少
+     */
+    private IdGroups groupBySmallLongId(String field, List<Map<String, Object>> resultMapList, IdGroups groups) {
+        long[] keys = new long[resultMapList.size()];
+        int size = 0;
+        for (Map<String, Object> resultMap : resultMapList) {
+            Object idValue = resultMap.get(field);
+            // 避免null id列被映射
+            if (idValue == null) continue;
+            long key = ((Number) idValue).longValue();
+            int index = 0;
+            while (index < size && keys[index] != key) index ++;
+            if (index == size) {
+                keys[size ++] = key;
+                groups.add(idValue).add(resultMap);
+            } else {
+                groups.rows.get(index).add(resultMap);
+            }
+        }
+        return groups;
+    }
+
+    private IdGroups groupByObjectId(String field, List<Map<String, Object>> resultMapList) {
+        IdGroups groups = new IdGroups();
+        Map<Object, List<Map<String, Object>>> idListMap = new HashMap<>();
+        for (Map<String, Object> resultMap : resultMapList) {
+            Object idValue = resultMap.get(field);
+            // 避免null id列被映射
+            if (idValue == null) continue;
+            List<Map<String, Object>> idList = idListMap.get(idValue);
+            if (idList == null) {
+                idList = groups.add(idValue);
+                idListMap.put(idValue, idList);
+            }
+            idList.add(resultMap);
+        }
+        return groups;
+    }
+
+    List<Map<String, Object>> mappe(ResultRoot resultRoot, List<Map<String, Object>> resultMapList) {
+        ResultId resultId = resultRoot.getId();
+        // 按id切割, {id : resultSetList}
+        IdGroups groups = groupById(resultId, resultMapList);
+        List<Map<String, Object>> data = new ArrayList<>(groups.ids.size());
+        for (int i = 0; i < groups.ids.size(); i ++) {
+            Object idValue = groups.ids.get(i);
+            List<Map<String, Object>> idList = groups.rows.get(i);
             Map<String, Object> childData = new LinkedHashMap<>();
             // 从第一列获取数据
             Map<String, Object> rowRecord = idList.get(0);
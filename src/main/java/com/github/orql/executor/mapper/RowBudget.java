@@ -0,0 +1,78 @@
+package com.github.orql.executor.mapper;
+
+import com.github.orql.executor.exception.QueryBudgetExceededException;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * 单次查询的行数和内存预算，映射结果时检查，超出抛出QueryBudgetExceededException
+ * 内存按值类型粗略估算
+ */
+public class RowBudget {
+
+    /**
+     * 每列的map entry开销
+     */
+    private static final int EntryBytes = 32;
+
+    /**
+     * 0不限制
+     */
+    private final int maxRows;
+
+    /**
+     * 0不限制
+     */
+    private final long maxBytes;
+
+    private int rows;
+
+    private long bytes;
+
+    public RowBudget(int maxRows, long maxBytes) {
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * 计入一行
+     * @param row
+     */
+    public void consume(Map<String, Object> row) {
+        rows ++;
+        if (maxRows > 0 && rows > maxRows) {
+            throw new QueryBudgetExceededException("query exceeded max rows " + maxRows);
+        }
+        if (maxBytes <= 0) return;
+        for (Object value : row.values()) {
+            bytes += EntryBytes + estimate(value);
+        }
+        if (bytes > maxBytes) {
+            throw new QueryBudgetExceededException("query exceeded max bytes " + maxBytes);
+        }
+    }
+
+    private static long estimate(Object value) {
+        if (value == null) return 0;
+        if (value instanceof String) return 40 + 2L * ((String) value).length();
+        if (value instanceof Date) return 24;
+        return 16;
+    }
+}
@@ -152,36 +152,7 @@ public class MysqlMigration implements Migration {
     }
 
     private String genColumnType(Column column) {
-        String type = "";
-        if (column.getDataType() == null) {
-            type = "";
-        }
-        switch (column.getDataType()) {
-            case Int:
-                type = "int";
-                break;
-            case Long:
-                type = "bigint";
-                break;
-            case Float:
-                type = "float";
-                break;
-            case Bool:
-                type = "boolean";
-                break;
-            case Date:
-                type = "datetime";
-                break;
-            case String:
-                type = "varchar";
-                break;
-            case Enum:
-                type = "enum";
-                break;
-            case Double:
-                type = "double";
-                break;
-        }
+        String type = column.getDataType() == null ? "" : configuration.getDialect().columnType(column.getDataType());
         return column.getLength() != null && column.getLength() > 0 ? (type + "(" + column.getLength() + ")") : type;
     }
     private void updateFks(Session session, Schema schema) throws SQLException {
@@ -130,6 +130,18 @@ public class Lexer {
                     return new Token(TokenType.NE, "!=");
                 }
                 return new Token(TokenType.NOT, "!");
+            case '+':
+                if (currentChar() == '=') {
+                    this.index ++;
+                    return new Token(TokenType.PLUS_EQ, "+=");
+                }
+                throw new LexerException("miss =");
+            case '-':
+                if (currentChar() == '=') {
+                    this.index ++;
+                    return new Token(TokenType.MINUS_EQ, "-=");
+                }
+                throw new LexerException("miss =");
             case '&':
                 if (currentChar() == '&') {
                     this.index ++;
@@ -160,6 +172,8 @@ public class Lexer {
                     return new Token(TokenType.BOOLEAN, "false");
                 case "like":
                     return new Token(TokenType.LIKE, "like");
+                case "in":
+                    return new Token(TokenType.IN, "in");
                 case "null":
                     return new Token(TokenType.NULL, "null");
                 default:
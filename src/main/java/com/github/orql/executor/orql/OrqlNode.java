@@ -28,6 +28,7 @@ public class OrqlNode {
 
     public enum OrqlOp {
         Add("add"),
+        Upsert("upsert"),
         Delete("delete"),
         Update("update"),
         Query("query"),
@@ -128,6 +129,49 @@ public class OrqlNode {
 
     }
 
+    /**
+     * 原子增减更新项
+     * count += #delta, stock -= 1
+     */
+    public static class OrqlIncrementItem extends OrqlColumnItem {
+
+        /**
+         * + 或 -
+         */
+        private String op;
+
+        /**
+         * 参数名，null时使用value
+         */
+        private String param;
+
+        private Object value;
+
+        public OrqlIncrementItem(Column column, String op, String param) {
+            super(column);
+            this.op = op;
+            this.param = param;
+        }
+
+        public OrqlIncrementItem(Column column, String op, Object value) {
+            super(column);
+            this.op = op;
+            this.value = value;
+        }
+
+        public String getOp() {
+            return op;
+        }
+
+        public String getParam() {
+            return param;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+    }
+
     public static class OrqlAllItem extends OrqlItem {
 
         public OrqlAllItem() {
@@ -7,13 +7,13 @@ import com.github.orql.executor.schema.Schema;
 import com.github.orql.executor.schema.SchemaManager;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Parser {
 
-    private static Map<String, OrqlNode> caches = new HashMap<>();
+    private static Map<String, OrqlNode> caches = new ConcurrentHashMap<>();
 
     private Lexer lexer;
 
@@ -140,6 +140,9 @@ public class Parser {
         String name = matchToken(TokenType.NAME);
         if (parent.containsColumn(name)) {
             Column column = parent.getColumn(name);
+            if (isToken(TokenType.PLUS_EQ) || isToken(TokenType.MINUS_EQ)) {
+                return visitIncrement(column);
+            }
             return new OrqlNode.ReqlColumnItem(column);
         }
         if (parent.containsAssociation(name)) {
@@ -174,6 +177,18 @@ public class Parser {
         throw new SyntaxException("schema " + parent.getName() + " not exist column " + name);
     }
 
+    // count += #delta, stock -= 1
+    private OrqlNode.OrqlIncrementItem visitIncrement(Column column) {
+        String op = isToken(TokenType.PLUS_EQ) ? "+" : "-";
+        walk();
+        if (isToken(TokenType.PARAM)) {
+            return new OrqlNode.OrqlIncrementItem(column, op, matchToken(TokenType.PARAM));
+        }
+        Object value = visitValue();
+        if (! (value instanceof Number)) throw new SyntaxException("expect number after " + op + "=");
+        return new OrqlNode.OrqlIncrementItem(column, op, value);
+    }
+
     private OrqlNode.ReqlWhere visitWhere(Schema schema) {
         OrqlNode.ReqlExp exp = null;
         List<OrqlNode.ReqlOrder> orders = null;
@@ -252,6 +267,8 @@ public class Parser {
         }
         Column column = visitColumn(schema);
         ExpOp op = visitOp();
+        // in 只支持集合参数, id in #ids
+        if (op == ExpOp.In && ! isToken(TokenType.PARAM)) throw new SyntaxException("expect param after in");
         if (isToken(TokenType.NAME)) {
             Column right = visitColumn(schema);
             return new OrqlNode.ReqlColumnExp(column, op, right);
@@ -321,6 +338,10 @@ public class Parser {
             this.walk();
             return ExpOp.Ne;
         }
+        if (isToken(TokenType.IN)) {
+            this.walk();
+            return ExpOp.In;
+        }
         throw new SyntaxException("expect op");
     }
 
@@ -58,10 +58,22 @@ public enum TokenType {
      * like
      */
     LIKE,
+    /**
+     * in
+     */
+    IN,
     /**
      * !
      */
     NOT,
+    /**
+     * +=
+     */
+    PLUS_EQ,
+    /**
+     * -=
+     */
+    MINUS_EQ,
     /**
      * and
      */
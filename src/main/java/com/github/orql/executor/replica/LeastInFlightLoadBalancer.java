@@ -0,0 +1,48 @@
+package com.github.orql.executor.replica;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 选择执行中查询最少的从库
+ */
+public class LeastInFlightLoadBalancer implements LoadBalancer {
+
+    private final Map<DataSource, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 数量相同时轮询
+     */
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Override
+    public DataSource select(List<DataSource> replicas) {
+        int start = next.getAndIncrement() & Integer.MAX_VALUE;
+        DataSource selected = null;
+        AtomicInteger min = null;
+        for (int i = 0; i < replicas.size(); i ++) {
+            DataSource replica = replicas.get((start + i) % replicas.size());
+            AtomicInteger count = inFlight.computeIfAbsent(replica, key -> new AtomicInteger());
+            if (min == null || count.get() < min.get()) {
+                selected = replica;
+                min = count;
+            }
+        }
+        min.incrementAndGet();
+        return selected;
+    }
+
+    @Override
+    public void release(DataSource replica) {
+        AtomicInteger count = inFlight.get(replica);
+        if (count != null) count.decrementAndGet();
+    }
+
+    public int getInFlight(DataSource replica) {
+        AtomicInteger count = inFlight.get(replica);
+        return count == null ? 0 : count.get();
+    }
+}
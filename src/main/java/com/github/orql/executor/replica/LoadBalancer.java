@@ -0,0 +1,24 @@
+package com.github.orql.executor.replica;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * 从库负载均衡策略
+ */
+public interface LoadBalancer {
+
+    /**
+     * 选择执行查询的从库
+     * @param replicas 非空
+     * @return
+     */
+    DataSource select(List<DataSource> replicas);
+
+    /**
+     * 查询结束，连接已归还
+     * @param replica
+     */
+    default void release(DataSource replica) {
+    }
+}
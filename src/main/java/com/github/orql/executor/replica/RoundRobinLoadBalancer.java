@@ -0,0 +1,19 @@
+package com.github.orql.executor.replica;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 轮询
+ */
+public class RoundRobinLoadBalancer implements LoadBalancer {
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Override
+    public DataSource select(List<DataSource> replicas) {
+        int index = next.getAndIncrement() & Integer.MAX_VALUE;
+        return replicas.get(index % replicas.size());
+    }
+}
@@ -65,6 +65,14 @@ public class Association {
         return required;
     }
 
+    /**
+     * hasMany belongsToMany 映射为集合
+     * @return
+     */
+    public boolean isArray() {
+        return type == Type.HasMany || type == Type.BelongsToMany;
+    }
+
     public String getMiddle() {
         return middle;
     }
@@ -164,6 +172,15 @@ public class Association {
                     }
                     break;
                 case BelongsToMany:
+                    if (association.middleKey == null) {
+                        // post belongs to many tag, middle postTag
+                        // middleKey = postId
+                        association.middleKey = association.current.getName() + "Id";
+                    }
+                    if (association.refMiddleKey == null) {
+                        // refMiddleKey = tagId
+                        association.refMiddleKey = association.ref.getName() + "Id";
+                    }
                     break;
             }
             association.current.addAssociation(association);
@@ -20,6 +20,11 @@ public class Column {
 
     private boolean isRefKey = false;
 
+    /**
+     * 乐观锁版本号
+     */
+    private boolean isVersion = false;
+
     private Cascade onDelete;
 
     private Cascade onUpdate;
@@ -62,6 +67,10 @@ public class Column {
         return isRefKey;
     }
 
+    public boolean isVersion() {
+        return isVersion;
+    }
+
     public Cascade getOnDelete() {
         return onDelete;
     }
@@ -147,6 +156,11 @@ public class Column {
             return this;
         }
 
+        public Builder isVersion() {
+            column.isVersion = true;
+            return this;
+        }
+
         public Builder ref(Schema ref) {
             column.ref = ref;
             return this;
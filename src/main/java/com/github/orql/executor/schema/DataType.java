@@ -8,5 +8,26 @@ public enum DataType {
     String,
     Bool,
     Date,
-    Enum
-}
\ No newline at end of file
+    Enum;
+
+    /**
+     * 数值转换为当前类型，不同来源的id可比较，如Integer参数与Long列
+     * @param value
+     * @return 非数值或非数值类型时原样返回
+     */
+    public Object convert(Object value) {
+        if (! (value instanceof Number)) return value;
+        Number number = (Number) value;
+        switch (this) {
+            case Int:
+                return number.intValue();
+            case Long:
+                return number.longValue();
+            case Float:
+                return number.floatValue();
+            case Double:
+                return number.doubleValue();
+        }
+        return value;
+    }
+}
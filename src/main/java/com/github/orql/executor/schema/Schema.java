@@ -1,6 +1,7 @@
 package com.github.orql.executor.schema;
 
 import com.github.orql.executor.Cascade;
+import com.github.orql.executor.shard.ShardRouter;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -27,6 +28,11 @@ public class Schema {
      */
     private Column idColumn;
 
+    /**
+     * 乐观锁版本号列
+     */
+    private Column versionColumn;
+
     /**
      * 普通列list
      */
@@ -47,6 +53,21 @@ public class Schema {
      */
     private List<String> associationNames = new ArrayList<>();
 
+    /**
+     * 分片键列名, null不分片
+     */
+    private String shardKey;
+
+    /**
+     * 分片路由
+     */
+    private ShardRouter shardRouter;
+
+    /**
+     * 主键由IdGenerator按块预分配
+     */
+    private boolean hiLo = false;
+
     public String getName() {
         return name;
     }
@@ -55,6 +76,14 @@ public class Schema {
         return idColumn;
     }
 
+    /**
+     * 乐观锁版本号列，没有时为null
+     * @return
+     */
+    public Column getVersionColumn() {
+        return versionColumn;
+    }
+
     public String getTable() {
         return table;
     }
@@ -68,6 +97,9 @@ public class Schema {
         if (column.isPrivateKey()) {
             idColumn = column;
         }
+        if (column.isVersion()) {
+            versionColumn = column;
+        }
         columns.add(column);
         return this;
     }
@@ -195,6 +227,22 @@ public class Schema {
         return idColumn.getField();
     }
 
+    public boolean isSharded() {
+        return shardKey != null;
+    }
+
+    public Column getShardKey() {
+        return shardKey == null ? null : getColumn(shardKey);
+    }
+
+    public ShardRouter getShardRouter() {
+        return shardRouter;
+    }
+
+    public boolean isHiLo() {
+        return hiLo;
+    }
+
     public static class Builder {
 
         private Schema schema = new Schema();
@@ -217,6 +265,21 @@ public class Schema {
             return this;
         }
 
+        public Builder shardKey(String shardKey) {
+            schema.shardKey = shardKey;
+            return this;
+        }
+
+        public Builder shardRouter(ShardRouter shardRouter) {
+            schema.shardRouter = shardRouter;
+            return this;
+        }
+
+        public Builder hiLo(boolean hiLo) {
+            schema.hiLo = hiLo;
+            return this;
+        }
+
         public Schema build() {
             return schema;
         }
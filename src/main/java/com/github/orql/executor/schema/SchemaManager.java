@@ -74,21 +74,36 @@ public class SchemaManager {
     private Schema initSchema(Class<?> clazz) {
         com.github.orql.executor.annotation.Schema schemaAnnotation = clazz.getAnnotation(com.github.orql.executor.annotation.Schema.class);
         Schema.Builder schemaBuilder = new Schema.Builder();
-        if (!schemaAnnotation.value().equals("")) {
-            schemaBuilder.name(schemaAnnotation.value());
-        } else if (!schemaAnnotation.name().equals("")) {
-            schemaBuilder.name(schemaAnnotation.name());
-        } else {
-            schemaBuilder.name(Strings.toLowerCaseFirst(clazz.getSimpleName()));
-        }
+        schemaBuilder.name(getSchemaName(clazz));
         if (!schemaAnnotation.table().equals("")) {
             schemaBuilder.table(schemaAnnotation.table());
         }
         // clazz
         schemaBuilder.clazz(clazz);
+        // shard
+        if (!schemaAnnotation.shardKey().equals("")) {
+            schemaBuilder.shardKey(schemaAnnotation.shardKey());
+            try {
+                schemaBuilder.shardRouter(schemaAnnotation.shardRouter().newInstance());
+            } catch (InstantiationException | IllegalAccessException e) {
+                e.printStackTrace();
+            }
+        }
+        schemaBuilder.hiLo(schemaAnnotation.hiLo());
         return schemaBuilder.build();
     }
 
+    private String getSchemaName(Class<?> clazz) {
+        com.github.orql.executor.annotation.Schema schemaAnnotation = clazz.getAnnotation(com.github.orql.executor.annotation.Schema.class);
+        if (!schemaAnnotation.value().equals("")) {
+            return schemaAnnotation.value();
+        }
+        if (!schemaAnnotation.name().equals("")) {
+            return schemaAnnotation.name();
+        }
+        return Strings.toLowerCaseFirst(clazz.getSimpleName());
+    }
+
     private void initColumns(Schema schema, Field[] fields) {
         for (Field field : fields) {
             Column column = initColumn(field);
@@ -147,6 +162,13 @@ public class SchemaManager {
         if (columnAnnotation.generatedKey()) {
             columnBuilder.isGeneratedKey();
         }
+        // version
+        if (columnAnnotation.version()) {
+            if (type != Integer.class && type != Long.class) {
+                throw new TypeNotSupportException(field);
+            }
+            columnBuilder.isVersion();
+        }
         return columnBuilder.build();
     }
 
@@ -217,16 +239,14 @@ public class SchemaManager {
                         getSchema(field),
                         Association.Type.BelongsToMany);
                 // middle
-                Class<?> middleClass = belongsToManyAnnotation.middle();
-                com.github.orql.executor.annotation.Schema middleSchema = middleClass.getAnnotation(com.github.orql.executor.annotation.Schema.class);
-                builder.middle(middleSchema.name());
+                builder.middle(getSchemaName(belongsToManyAnnotation.middle()));
                 // middle key
                 if (! belongsToManyAnnotation.middleKey().equals("")) {
                     builder.middleKey(belongsToManyAnnotation.middleKey());
                 }
                 // ref middle key
                 if (! belongsToManyAnnotation.refMiddleKey().equals("")) {
-                    builder.refKey(belongsToManyAnnotation.refMiddleKey());
+                    builder.refMiddleKey(belongsToManyAnnotation.refMiddleKey());
                 }
                 builder.build();
                 continue;
@@ -0,0 +1,13 @@
+package com.github.orql.executor.shard;
+
+/**
+ * 取模路由，整数按值取模，其他类型按hashCode取模
+ */
+public class ModShardRouter implements ShardRouter {
+
+    @Override
+    public int route(Object shardKey, int shardCount) {
+        long value = shardKey instanceof Number ? ((Number) shardKey).longValue() : shardKey.hashCode();
+        return (int) Math.floorMod(value, (long) shardCount);
+    }
+}
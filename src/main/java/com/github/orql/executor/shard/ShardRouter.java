@@ -0,0 +1,14 @@
+package com.github.orql.executor.shard;
+
+/**
+ * 分片路由
+ */
+public interface ShardRouter {
+
+    /**
+     * @param shardKey 分片键的值，非null
+     * @param shardCount 分片数
+     * @return 分片下标 [0, shardCount)
+     */
+    int route(Object shardKey, int shardCount);
+}
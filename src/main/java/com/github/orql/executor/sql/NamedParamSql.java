@@ -3,6 +3,8 @@ package com.github.orql.executor.sql;
 import com.github.orql.executor.schema.DataType;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -12,6 +14,8 @@ import java.util.stream.Collectors;
  * 命名参数sql
  * select * from user where id = #id
  * select * from user where id = $id
+ * 集合参数展开为多个占位符
+ * select * from user where id in (#ids) -> select * from user where id in (?, ?, ?)
  */
 public class NamedParamSql {
 
@@ -23,8 +27,18 @@ public class NamedParamSql {
 
     private List<String> paramNames;
 
+    /**
+     * 按参数切分的sql片段, 比paramNames多一个
+     */
+    private List<String> sqlParts;
+
     private DataType idType;
 
+    /**
+     * 按位置绑定的参数，非null时不使用params
+     */
+    private Object[] values;
+
     private enum MatchStatus {
         State,
         Param
@@ -33,17 +47,45 @@ public class NamedParamSql {
     public NamedParamSql(String sql) {
         params = new HashMap<>();
         paramNames = new ArrayList<>();
+        sqlParts = new ArrayList<>();
         init(sql);
     }
 
     public NamedParamSql(String sql, Map<String, Object> params) {
         this.params = params;
         paramNames = new ArrayList<>();
+        sqlParts = new ArrayList<>();
         init(sql);
     }
 
+    private NamedParamSql() {
+    }
+
+    /**
+     * 已编译为?占位符的sql和按位置的参数
+     * @param sql
+     * @param values
+     * @return
+     */
+    public static NamedParamSql positional(String sql, Object[] values) {
+        NamedParamSql namedParamSql = new NamedParamSql();
+        namedParamSql.sql = sql;
+        namedParamSql.values = values;
+        namedParamSql.paramNames = new ArrayList<>();
+        return namedParamSql;
+    }
+
+    /**
+     * 按出现顺序的参数名
+     * @return
+     */
+    public List<String> getParamNames() {
+        return paramNames;
+    }
+
     private void init(String sql) {
         StringBuilder sqlBuilder = new StringBuilder();
+        StringBuilder partBuilder = new StringBuilder();
         StringBuilder paramBuilder = new StringBuilder();
         MatchStatus status = MatchStatus.State;
         for (char c : sql.toCharArray()) {
@@ -52,8 +94,11 @@ public class NamedParamSql {
                     if (c == '#' || c == '$') {
                         status = MatchStatus.Param;
                         sqlBuilder.append('?');
+                        sqlParts.add(partBuilder.toString());
+                        partBuilder.setLength(0);
                     } else {
                         sqlBuilder.append(c);
+                        partBuilder.append(c);
                     }
                     break;
                 case Param:
@@ -62,6 +107,7 @@ public class NamedParamSql {
                         paramNames.add(paramBuilder.toString());
                         paramBuilder.setLength(0);
                         sqlBuilder.append(c);
+                        partBuilder.append(c);
                     } else {
                         paramBuilder.append(c);
                     }
@@ -70,6 +116,7 @@ public class NamedParamSql {
         }
         String last = paramBuilder.toString();
         if (! last.equals("")) paramNames.add(last);
+        sqlParts.add(partBuilder.toString());
         this.sql = sqlBuilder.toString();
     }
 
@@ -95,12 +142,53 @@ public class NamedParamSql {
         return generatedKey;
     }
 
+    private boolean hasCollectionParam() {
+        if (values != null) return false;
+        for (String name : paramNames) {
+            if (params.get(name) instanceof Collection) return true;
+        }
+        return false;
+    }
+
     public String getSql() {
-        return sql;
+        if (! hasCollectionParam()) return sql;
+        StringBuilder builder = new StringBuilder(sqlParts.get(0));
+        for (int i = 0; i < paramNames.size(); i ++) {
+            Object param = params.get(paramNames.get(i));
+            if (param instanceof Collection) {
+                int size = ((Collection) param).size();
+                // 空集合 in (null) 不匹配任何行
+                if (size == 0) {
+                    builder.append("null");
+                } else {
+                    for (int j = 0; j < size; j ++) {
+                        if (j > 0) builder.append(", ");
+                        builder.append('?');
+                    }
+                }
+            } else {
+                builder.append('?');
+            }
+            builder.append(sqlParts.get(i + 1));
+        }
+        return builder.toString();
     }
 
     public Object[] getParams() {
-        return paramNames.stream().map(name -> params.get(name)).toArray();
+        if (values != null) return values;
+        if (! hasCollectionParam()) {
+            return paramNames.stream().map(name -> params.get(name)).toArray();
+        }
+        List<Object> values = new ArrayList<>();
+        for (String name : paramNames) {
+            Object param = params.get(name);
+            if (param instanceof Collection) {
+                values.addAll((Collection) param);
+            } else {
+                values.add(param);
+            }
+        }
+        return values.toArray();
     }
 
     private String getParamString(String name) {
@@ -111,7 +199,8 @@ public class NamedParamSql {
 
     @Override
     public String toString() {
+        if (values != null) return "sql: " + sql + " params: " + Arrays.toString(values);
         if (paramNames.size() == 0) return "sql: " + sql;
-        return "sql: " + sql + " params: " + paramNames.stream().map(this::getParamString).collect(Collectors.joining(", "));
+        return "sql: " + getSql() + " params: " + paramNames.stream().map(this::getParamString).collect(Collectors.joining(", "));
     }
 }
@@ -4,20 +4,65 @@ import com.github.orql.executor.*;
 import com.github.orql.executor.exception.SqlGenException;
 import com.github.orql.executor.orql.OrqlNode;
 import com.github.orql.executor.orql.OrqlNode.*;
+import com.github.orql.executor.orql.SyntaxException;
 import com.github.orql.executor.schema.*;
 import com.github.orql.executor.sql.SqlNode.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class OrqlToSql {
 
     private Logger logger = LoggerFactory.getLogger(OrqlToSql.class);
 
-    private SqlGenerator sqlGenerator = new SqlGenerator();
+    private SqlGenerator sqlGenerator;
     
-    private Map<OrqlRefItem, String> sqlCaches = new HashMap<>();
+    private Map<OrqlRefItem, String> sqlCaches = new ConcurrentHashMap<>();
+
+    /**
+     * belongsToMany中间表缓存 {关联 : {类型 : sql}}
+     */
+    private Map<Association, Map<String, String>> middleCaches = new ConcurrentHashMap<>();
+
+    /**
+     * hasOne/hasMany下级外键update缓存
+     */
+    private Map<Association, String> refKeyCaches = new ConcurrentHashMap<>();
+
+    /**
+     * 中间表查询上级id集合参数名
+     */
+    public static final String MiddleIds = "middle.ids";
+
+    /**
+     * 多行insert缓存 {root : {行数 : sql}}
+     */
+    private Map<OrqlRefItem, Map<Integer, String>> addAllCaches = new ConcurrentHashMap<>();
+
+    /**
+     * 分批update/delete缓存 {root : {类型 : sql}}
+     */
+    private Map<OrqlRefItem, Map<String, String>> chunkCaches = new ConcurrentHashMap<>();
+
+    /**
+     * 分批update本批id参数名
+     */
+    public static final String ChunkIds = "chunk.ids";
+
+    /**
+     * 分批update上批最后id参数名
+     */
+    public static final String ChunkLastId = "chunk.lastId";
+
+    public OrqlToSql() {
+        this(new SqlGenerator());
+    }
+
+    public OrqlToSql(SqlGenerator sqlGenerator) {
+        this.sqlGenerator = sqlGenerator;
+    }
 
     /**
      * 查询包装类
@@ -33,9 +78,42 @@ public class OrqlToSql {
     
     public String toAdd(OrqlRefItem root) {
         if (sqlCaches.containsKey(root)) return sqlCaches.get(root);
+        String sql = sqlGenerator.gen(toInsert(root, 0));
+        sqlCaches.put(root, sql);
+        return sql;
+    }
+
+    /**
+     * 多行insert，参数名为 行号.参数名
+     * @param root
+     * @param rows
+     * @return
+     */
+    public String toAddAll(OrqlRefItem root, int rows) {
+        Map<Integer, String> caches = addAllCaches.computeIfAbsent(root, key -> new ConcurrentHashMap<>());
+        return caches.computeIfAbsent(rows, key -> sqlGenerator.gen(toInsert(root, rows)));
+    }
+
+    /**
+     * 每行的参数名
+     * @param root
+     * @return
+     */
+    public List<String> addParamNames(OrqlRefItem root) {
+        List<String> names = new ArrayList<>();
+        for (SqlParam param : toInsert(root, 0).getParams()) {
+            names.add(param.getName());
+        }
+        return names;
+    }
+
+    private SqlInsert toInsert(OrqlRefItem root, int rows) {
         List<SqlColumn> columns = new ArrayList<>();
         List<SqlParam> params = new ArrayList<>();
         for (OrqlItem item : root.getChildren()) {
+            if (item instanceof OrqlIncrementItem) {
+                throw new SyntaxException(item.getName() + " += or -= only support update");
+            }
             if (item instanceof OrqlColumnItem) {
                 Column columnItem = ((OrqlColumnItem) item).getColumn();
                 columns.add(new SqlColumn(columnItem.getField()));
@@ -50,29 +128,187 @@ public class OrqlToSql {
                 }
             }
         }
-        SqlInsert insert = new SqlInsert(root.getRef().getTable(), columns, params);
-        String sql = sqlGenerator.gen(insert);
+        // hiLo主键在客户端分配
+        Schema schema = root.getRef();
+        if (schema.isHiLo() && columns.stream().noneMatch(column -> column.getName().equals(schema.getIdField()))) {
+            columns.add(0, new SqlColumn(schema.getIdField()));
+            params.add(0, new SqlParam(schema.getIdName()));
+        }
+        // 级联插入的hasOne/hasMany下级，外键为上级id
+        Association association = root.getAssociation();
+        if (association != null && (association.getType() == Association.Type.HasOne || association.getType() == Association.Type.HasMany)
+                && columns.stream().noneMatch(column -> column.getName().equals(association.getRefKey()))) {
+            columns.add(new SqlColumn(association.getRefKey()));
+            params.add(new SqlParam(association.getRefKey()));
+        }
+        return new SqlInsert(root.getRef().getTable(), columns, params, rows);
+    }
+
+    /**
+     * belongsToMany中间表多行insert，参数名为 行号.middleKey 行号.refMiddleKey
+     * @param association
+     * @param rows
+     * @return
+     */
+    public String toAddMiddle(Association association, int rows) {
+        Map<String, String> caches = middleCaches.computeIfAbsent(association, key -> new ConcurrentHashMap<>());
+        return caches.computeIfAbsent("add " + rows, key -> {
+            List<SqlColumn> columns = Arrays.asList(new SqlColumn(association.getMiddleKey()), new SqlColumn(association.getRefMiddleKey()));
+            List<SqlParam> params = Arrays.asList(new SqlParam(association.getMiddleKey()), new SqlParam(association.getRefMiddleKey()));
+            return sqlGenerator.gen(new SqlInsert(association.getMiddle(), columns, params, rows));
+        });
+    }
+
+    /**
+     * belongsToMany中间表当前关联
+     * select postTag.postId, postTag.tagId from postTag where postTag.postId in ($middle.ids)
+     * @param association
+     * @return
+     */
+    public String toMiddleKeys(Association association) {
+        Map<String, String> caches = middleCaches.computeIfAbsent(association, key -> new ConcurrentHashMap<>());
+        return caches.computeIfAbsent("keys", key -> {
+            String middle = association.getMiddle();
+            SqlColumn middleKey = new SqlColumn(association.getMiddleKey(), middle);
+            List<SqlColumn> select = Arrays.asList(middleKey, new SqlColumn(association.getRefMiddleKey(), middle));
+            List<SqlExp> where = Collections.singletonList(new SqlColumnExp(middleKey, ExpOp.In, new SqlParam(MiddleIds)));
+            return sqlGenerator.gen(new SqlQuery(select, new SqlTableForm(new SqlTable(middle, middle)), where, new ArrayList<>(), null, null));
+        });
+    }
+
+    /**
+     * 删除一条中间表关联，参数名为middleKey refMiddleKey
+     * delete from postTag where postTag.postId = $postId and postTag.tagId = $tagId
+     * @param association
+     * @return
+     */
+    public String toDeleteMiddle(Association association) {
+        Map<String, String> caches = middleCaches.computeIfAbsent(association, key -> new ConcurrentHashMap<>());
+        return caches.computeIfAbsent("delete", key -> {
+            String middle = association.getMiddle();
+            SqlExp where = new SqlAndExp(
+                    new SqlColumnExp(new SqlColumn(association.getMiddleKey(), middle), ExpOp.Eq, new SqlParam(association.getMiddleKey())),
+                    new SqlColumnExp(new SqlColumn(association.getRefMiddleKey(), middle), ExpOp.Eq, new SqlParam(association.getRefMiddleKey())));
+            return sqlGenerator.gen(new SqlDelete(middle, where));
+        });
+    }
+
+    /**
+     * 按id修改hasOne/hasMany下级的外键
+     * update post set authorId = $authorId where post.id = $id
+     * @param association
+     * @return
+     */
+    public String toUpdateRefKey(Association association) {
+        return refKeyCaches.computeIfAbsent(association, key -> {
+            Schema ref = association.getRef();
+            SqlExp where = new SqlColumnExp(new SqlColumn(ref.getIdField(), ref.getTable()), ExpOp.Eq, new SqlParam(ref.getIdName()));
+            return sqlGenerator.gen(new SqlUpdate(ref.getTable(), where, Collections.singletonList(new SqlColumn(association.getRefKey()))));
+        });
+    }
+
+    /**
+     * 按id upsert，items中必须有id
+     * @param root
+     * @return
+     */
+    public String toUpsert(OrqlRefItem root) {
+        if (sqlCaches.containsKey(root)) return sqlCaches.get(root);
+        String sql = sqlGenerator.gen(toSqlUpsert(root, 0));
         sqlCaches.put(root, sql);
         return sql;
     }
 
+    public String toUpsertAll(OrqlRefItem root, int rows) {
+        Map<Integer, String> caches = addAllCaches.computeIfAbsent(root, key -> new ConcurrentHashMap<>());
+        return caches.computeIfAbsent(rows, key -> sqlGenerator.gen(toSqlUpsert(root, rows)));
+    }
+
+    private SqlUpsert toSqlUpsert(OrqlRefItem root, int rows) {
+        SqlInsert insert = toInsert(root, rows);
+        String idField = root.getRef().getIdField();
+        if (insert.getColumns().stream().noneMatch(column -> column.getName().equals(idField))) {
+            throw new SyntaxException("upsert " + root.getName() + " missing " + root.getRef().getIdName());
+        }
+        return new SqlUpsert(insert.getTable(), insert.getColumns(), insert.getParams(), rows, Collections.singletonList(idField));
+    }
+
     public String toDelete(OrqlRefItem root) {
         if (sqlCaches.containsKey(root)) return sqlCaches.get(root);
-        SqlExp exp = genExp(root.getWhere().getExp(), root.getRef().getTable());
-        SqlDelete delete = new SqlDelete(root.getRef().getTable(), exp);
+        SqlDelete delete = new SqlDelete(root.getRef().getTable(), genMutationWhere(root, "delete"));
         String sql = sqlGenerator.gen(delete);
         sqlCaches.put(root, sql);
         return sql;
     }
 
+    /**
+     * 每次最多删除limit行，循环执行到影响行数小于limit
+     * @param root
+     * @param limit
+     * @return
+     */
+    public String toDelete(OrqlRefItem root, int limit) {
+        Map<String, String> caches = chunkCaches.computeIfAbsent(root, key -> new ConcurrentHashMap<>());
+        return caches.computeIfAbsent("delete " + limit, key -> sqlGenerator.gen(new SqlDelete(root.getRef().getTable(), genMutationWhere(root, "delete"), limit)));
+    }
+
     public String toUpdate(OrqlRefItem root) {
         if (sqlCaches.containsKey(root)) return sqlCaches.get(root);
-        SqlExp exp = genExp(root.getWhere().getExp(), root.getRef().getTable());
+        String sql = sqlGenerator.gen(toSqlUpdate(root, genMutationWhere(root, "update")));
+        sqlCaches.put(root, sql);
+        return sql;
+    }
+
+    /**
+     * 分批update，where加上 id in $chunk.ids
+     * @param root
+     * @return
+     */
+    public String toUpdateChunk(OrqlRefItem root) {
+        Map<String, String> caches = chunkCaches.computeIfAbsent(root, key -> new ConcurrentHashMap<>());
+        return caches.computeIfAbsent("update", key -> {
+            String table = root.getRef().getTable();
+            SqlExp inIds = new SqlColumnExp(new SqlColumn(root.getRef().getIdField(), table), ExpOp.In, new SqlParam(ChunkIds));
+            return sqlGenerator.gen(toSqlUpdate(root, andExp(genMutationWhere(root, "update"), inIds)));
+        });
+    }
+
+    /**
+     * 分批update查询下一批id，按id排序，after时从 $chunk.lastId 之后开始
+     * @param root
+     * @param limit
+     * @param after
+     * @return
+     */
+    public String toChunkIds(OrqlRefItem root, int limit, boolean after) {
+        Map<String, String> caches = chunkCaches.computeIfAbsent(root, key -> new ConcurrentHashMap<>());
+        return caches.computeIfAbsent("ids " + limit + " " + after, key -> {
+            String table = root.getRef().getTable();
+            SqlColumn id = new SqlColumn(root.getRef().getIdField(), table);
+            SqlExp where = genMutationWhere(root, "update");
+            if (after) {
+                where = andExp(where, new SqlColumnExp(id, ExpOp.Gt, new SqlParam(ChunkLastId)));
+            }
+            List<SqlExp> wheres = where != null ? Collections.singletonList(where) : new ArrayList<>();
+            List<SqlOrder> orders = Collections.singletonList(new SqlOrder(Collections.singletonList(id), "asc"));
+            SqlForm from = new SqlTableForm(new SqlTable(table, table));
+            return sqlGenerator.gen(new SqlQuery(Collections.singletonList(id), from, wheres, new ArrayList<>(), orders, new SqlPage(null, limit)));
+        });
+    }
+
+    private SqlUpdate toSqlUpdate(OrqlRefItem root, SqlExp exp) {
         List<SqlColumn> sets = new ArrayList<>();
         for (OrqlItem item : root.getChildren()) {
-            if (item instanceof OrqlColumnItem) {
+            if (item instanceof OrqlIncrementItem) {
+                OrqlIncrementItem increment = (OrqlIncrementItem) item;
+                String field = increment.getColumn().getField();
+                sets.add(increment.getParam() != null
+                        ? new SqlIncrementColumn(field, increment.getOp(), new SqlParam(increment.getParam()))
+                        : new SqlIncrementColumn(field, increment.getOp(), increment.getValue()));
+            } else if (item instanceof OrqlColumnItem) {
                 sets.add(new SqlColumn(((OrqlColumnItem) item).getColumn().getField()));
             } else if (item instanceof OrqlRefItem) {
+                if (isRefCondition((OrqlRefItem) item)) continue;
                 Association association = ((OrqlRefItem) item).getAssociation();
                 switch (association.getType()) {
                     case BelongsTo:
@@ -83,10 +319,111 @@ public class OrqlToSql {
                 }
             }
         }
-        SqlUpdate update = new SqlUpdate(root.getRef().getTable(), exp, sets);
-        String sql = sqlGenerator.gen(update);
-        sqlCaches.put(root, sql);
-        return sql;
+        return new SqlUpdate(root.getRef().getTable(), exp, sets);
+    }
+
+    /**
+     * 带条件的关联项是update/delete的关联条件，不是更新项
+     */
+    private boolean isRefCondition(OrqlRefItem item) {
+        return item.getWhere() != null && item.getWhere().getExp() != null;
+    }
+
+    private SqlExp andExp(SqlExp left, SqlExp right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        return new SqlAndExp(new SqlNestExp(left), right);
+    }
+
+    /**
+     * update/delete的where，关联条件生成exists子查询
+     * delete post(title = #title) : {author(name = #name)}
+     * where post.title = ? and exists (select 1 from user as post_author where post_author.id = post.authorId and post_author.name = ?)
+     * 没有条件时抛出SyntaxException，删改全表需写出条件
+     * @param root
+     * @param op update/delete
+     * @return
+     */
+    private SqlExp genMutationWhere(OrqlRefItem root, String op) {
+        String table = root.getRef().getTable();
+        SqlExp exp = null;
+        if (root.getWhere() != null && root.getWhere().getExp() != null) {
+            exp = genExp(root.getWhere().getExp(), table);
+        }
+        exp = andExp(exp, genRefConditions(root, table));
+        // 没有条件时拒绝，避免误删改全表
+        if (exp == null) {
+            throw new SyntaxException(op + " " + root.getName() + " missing condition");
+        }
+        return exp;
+    }
+
+    private SqlExp genRefConditions(OrqlRefItem current, String path) {
+        SqlExp exp = null;
+        for (OrqlItem item : current.getChildren()) {
+            if (item instanceof OrqlRefItem && isRefCondition((OrqlRefItem) item)) {
+                SqlExp exists = genExists(current.getRef(), (OrqlRefItem) item, path);
+                exp = exp == null ? exists : new SqlAndExp(exp, exists);
+            }
+        }
+        return exp;
+    }
+
+    private SqlExistsExp genExists(Schema current, OrqlRefItem item, String path) {
+        Association association = item.getAssociation();
+        Schema ref = item.getRef();
+        String refPath = path + Constants.SqlSplit + item.getName();
+        List<SqlJoin> joins = new ArrayList<>();
+        List<SqlExp> where = new ArrayList<>();
+        SqlTable from = new SqlTable(ref.getTable(), refPath);
+        switch (association.getType()) {
+            case HasMany:
+            case HasOne:
+                // user hasMany post
+                // post.authorId = user.id
+                where.add(new SqlColumnExp(
+                        new SqlColumn(association.getRefKey(), refPath),
+                        ExpOp.Eq,
+                        new SqlColumn(current.getIdField(), path)));
+                break;
+            case BelongsTo:
+                // post belongsTo user
+                // user.id = post.authorId
+                where.add(new SqlColumnExp(
+                        new SqlColumn(association.getRefId().getField(), refPath),
+                        ExpOp.Eq,
+                        new SqlColumn(association.getRefKey(), path)));
+                break;
+            case BelongsToMany:
+                // post belongsToMany tag, middle postTag
+                // from postTag inner join tag on tag.id = postTag.tagId where postTag.postId = post.id
+                String middlePath = refPath + Constants.SqlSplit + association.getMiddle();
+                from = new SqlTable(association.getMiddle(), middlePath);
+                joins.add(new SqlJoin(ref.getTable(), refPath, SqlJoinType.Inner, new SqlColumnExp(
+                        new SqlColumn(ref.getIdField(), refPath),
+                        ExpOp.Eq,
+                        new SqlColumn(association.getRefMiddleKey(), middlePath))));
+                where.add(new SqlColumnExp(
+                        new SqlColumn(association.getMiddleKey(), middlePath),
+                        ExpOp.Eq,
+                        new SqlColumn(current.getIdField(), path)));
+                break;
+        }
+        where.add(new SqlNestExp(genExp(item.getWhere().getExp(), refPath)));
+        // 嵌套关联条件
+        SqlExp nested = genRefConditions(item, refPath);
+        if (nested != null) where.add(nested);
+        SqlQuery query = new SqlQuery(Collections.singletonList(new SqlColumn("1")), new SqlTableForm(from), where, joins, null, null);
+        return new SqlExistsExp(query);
+    }
+
+    /**
+     * 查询加行锁
+     * @param lockMode null不加锁
+     */
+    public String toQuery(OrqlOp op, OrqlRefItem root, SqlPage sqlPage, LockMode lockMode) {
+        String sql = toQuery(op, root, sqlPage);
+        return lockMode == null ? sql : sql + sqlGenerator.genLock(lockMode);
     }
 
     public String toQuery(OrqlOp op, OrqlRefItem root, SqlPage sqlPage) {
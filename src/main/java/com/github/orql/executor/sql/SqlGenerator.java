@@ -1,6 +1,9 @@
 package com.github.orql.executor.sql;
 
 import com.github.orql.executor.ExpOp;
+import com.github.orql.executor.LockMode;
+import com.github.orql.executor.dialect.Dialect;
+import com.github.orql.executor.dialect.MysqlDialect;
 import com.github.orql.executor.exception.SqlGenException;
 import com.github.orql.executor.orql.OrqlNode;
 import com.github.orql.executor.sql.SqlNode.*;
@@ -12,14 +15,38 @@ import java.util.stream.Collectors;
 
 public class SqlGenerator {
 
+    private Dialect dialect;
+
+    public SqlGenerator() {
+        this(new MysqlDialect());
+    }
+
+    public SqlGenerator(Dialect dialect) {
+        this.dialect = dialect;
+    }
+
+    public Dialect getDialect() {
+        return dialect;
+    }
+
     public String gen(SqlNode tree) {
         if (tree instanceof SqlQuery) return genQuery((SqlQuery) tree);
+        if (tree instanceof SqlUpsert) return genUpsert((SqlUpsert) tree);
         if (tree instanceof SqlInsert) return genAdd((SqlInsert) tree);
         if (tree instanceof SqlDelete) return genDelete((SqlDelete) tree);
         if (tree instanceof SqlUpdate) return genUpdate((SqlUpdate) tree);
         throw new SqlGenException();
     }
 
+    /**
+     * 查询行锁子句
+     * @param lockMode
+     * @return
+     */
+    public String genLock(LockMode lockMode) {
+        return dialect.lock(lockMode);
+    }
+
     private String genQuery(SqlQuery sqlQuery) {
         return "select " +
                 genSelect(sqlQuery.getSelect()) +
@@ -81,7 +108,7 @@ public class SqlGenerator {
 
     private String genPage(SqlPage page) {
         if (page == null || page.getLimit() == null) return "";
-        return page.getOffset() != null ? " limit " + page.getOffset() + ", " + page.getLimit() : " limit " + page.getLimit();
+        return dialect.page(page.getOffset(), page.getLimit());
     }
 
     /**
@@ -118,21 +145,51 @@ public class SqlGenerator {
     private String genAdd(SqlInsert insert) {
         return "insert into " + insert.getTable() +
                 "(" + insert.getColumns().stream().map(SqlColumn::getName).collect(Collectors.joining(", ")) + ")" +
-                " values " +
-                "(" + insert.getParams().stream().map(param -> "$" + param.getName()).collect(Collectors.joining(", ")) + ")";
+                " values " + genValues(insert);
+    }
+
+    private String genUpsert(SqlUpsert upsert) {
+        List<String> columns = upsert.getColumns().stream().map(SqlColumn::getName).collect(Collectors.toList());
+        return dialect.upsert(upsert.getTable(), columns, upsert.getKeys(), genValues(upsert));
+    }
+
+    private String genValues(SqlInsert insert) {
+        if (insert.getRows() == 0) {
+            return "(" + insert.getParams().stream().map(param -> "$" + param.getName()).collect(Collectors.joining(", ")) + ")";
+        }
+        // 多行参数名 $行号.参数名
+        StringBuilder builder = new StringBuilder();
+        for (int row = 0; row < insert.getRows(); row ++) {
+            if (row > 0) builder.append(", ");
+            int index = row;
+            builder.append("(")
+                    .append(insert.getParams().stream().map(param -> "$" + index + "." + param.getName()).collect(Collectors.joining(", ")))
+                    .append(")");
+        }
+        return builder.toString();
     }
 
     private String genDelete(SqlDelete delete) {
         return "delete from " +
                 delete.getTable() +
-                " where " + genExp(delete.getWhere());
+                (delete.getWhere() != null ? " where " + genExp(delete.getWhere()) : "") +
+                (delete.getLimit() != null ? dialect.mutationLimit(delete.getLimit()) : "");
     }
 
     private String genUpdate(SqlUpdate update) {
         return "update " + update.getTable() +
                 " set " +
-                update.getSets().stream().map(set -> set.getName() + " = $" + set.getName()).collect(Collectors.joining(", ")) +
-                " where " + genExp(update.getWhere());
+                update.getSets().stream().map(this::genSet).collect(Collectors.joining(", ")) +
+                (update.getWhere() != null ? " where " + genExp(update.getWhere()) : "");
+    }
+
+    private String genSet(SqlColumn set) {
+        if (set instanceof SqlIncrementColumn) {
+            SqlIncrementColumn increment = (SqlIncrementColumn) set;
+            String right = increment.getParam() != null ? "$" + increment.getParam().getName() : genSqlValue(increment.getValue());
+            return set.getName() + " = " + set.getName() + " " + increment.getOp() + " " + right;
+        }
+        return set.getName() + " = $" + set.getName();
     }
 
     private String genExp(SqlExp exp) {
@@ -148,6 +205,9 @@ public class SqlGenerator {
         if (exp instanceof SqlColumnExp) {
             return genColumnExp((SqlColumnExp) exp);
         }
+        if (exp instanceof SqlExistsExp) {
+            return "exists (" + genQuery(((SqlExistsExp) exp).getQuery()) + ")";
+        }
         throw new SqlGenException();
     }
 
@@ -158,6 +218,10 @@ public class SqlGenerator {
             return leftSql + " " + opStr + " " + genColumn(columnExp.getRightColumn());
         }
         if (columnExp.getRightParam() != null) {
+            if (columnExp.getOp() == ExpOp.In) {
+                // 集合参数由NamedParamSql展开
+                return leftSql + " " + opStr + " ($" + columnExp.getRightParam().getName() + ")";
+            }
             return leftSql + " " + opStr + " $" + columnExp.getRightParam().getName();
         }
         if (columnExp.getRightValue() instanceof OrqlNode.NullValue) {
@@ -44,6 +44,11 @@ public abstract class SqlNode {
 
         private List<SqlParam> params;
 
+        /**
+         * 多行values行数，0为单行且使用原参数名
+         */
+        private int rows;
+
         public String getTable() {
             return table;
         }
@@ -56,10 +61,39 @@ public abstract class SqlNode {
             return params;
         }
 
+        public int getRows() {
+            return rows;
+        }
+
         public SqlInsert(String table, List<SqlColumn> columns, List<SqlParam> params) {
+            this(table, columns, params, 0);
+        }
+
+        public SqlInsert(String table, List<SqlColumn> columns, List<SqlParam> params, int rows) {
             this.table = table;
             this.columns = columns;
             this.params = params;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * 按主键存在时更新，不存在时插入
+     */
+    public static class SqlUpsert extends SqlInsert {
+
+        /**
+         * 冲突判断列
+         */
+        private List<String> keys;
+
+        public SqlUpsert(String table, List<SqlColumn> columns, List<SqlParam> params, int rows, List<String> keys) {
+            super(table, columns, params, rows);
+            this.keys = keys;
+        }
+
+        public List<String> getKeys() {
+            return keys;
         }
     }
 
@@ -67,11 +101,24 @@ public abstract class SqlNode {
 
         private String table;
 
+        /**
+         * 可为null
+         */
         private SqlExp where;
 
+        /**
+         * 每次删除行数，null不限制
+         */
+        private Integer limit;
+
         public SqlDelete(String table, SqlExp where) {
+            this(table, where, null);
+        }
+
+        public SqlDelete(String table, SqlExp where, Integer limit) {
             this.table = table;
             this.where = where;
+            this.limit = limit;
         }
 
         public String getTable() {
@@ -81,6 +128,10 @@ public abstract class SqlNode {
         public SqlExp getWhere() {
             return where;
         }
+
+        public Integer getLimit() {
+            return limit;
+        }
     }
 
     public static class SqlUpdate extends SqlDML {
@@ -325,6 +376,42 @@ public abstract class SqlNode {
         }
     }
 
+    /**
+     * 更新项 name = name + $param
+     */
+    public static class SqlIncrementColumn extends SqlColumn {
+
+        private String op;
+
+        private SqlParam param;
+
+        private Object value;
+
+        public SqlIncrementColumn(String name, String op, SqlParam param) {
+            super(name);
+            this.op = op;
+            this.param = param;
+        }
+
+        public SqlIncrementColumn(String name, String op, Object value) {
+            super(name);
+            this.op = op;
+            this.value = value;
+        }
+
+        public String getOp() {
+            return op;
+        }
+
+        public SqlParam getParam() {
+            return param;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+    }
+
     public static class SqlCountColumn extends SqlColumn {
 
         public SqlCountColumn(String name) {
@@ -444,6 +531,22 @@ public abstract class SqlNode {
         }
     }
 
+    /**
+     * exists (select 1 from ...)
+     */
+    public static class SqlExistsExp extends SqlExp {
+
+        private SqlQuery query;
+
+        public SqlExistsExp(SqlQuery query) {
+            this.query = query;
+        }
+
+        public SqlQuery getQuery() {
+            return query;
+        }
+    }
+
     public static class SqlParam {
 
         private String name;
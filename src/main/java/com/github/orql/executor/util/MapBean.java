@@ -69,7 +69,7 @@ public class MapBean {
     }
 
     private static class BeanToMap {
-        Map<Object, Map<String, Object>> objects = new HashMap<>();
+        Map<Object, Map<String, Object>> objects = new IdentityHashMap<>();
 
         Map<String, Object> toMap(Object obj) {
             Map<String, Object> map = new HashMap<>();
@@ -118,6 +118,20 @@ public class MapBean {
         return beanToMap.toMap(obj);
     }
 
+    /**
+     * 多个bean共用转换上下文，同一对象转为同一map
+     * @param objs
+     * @return
+     */
+    public static List<Map<String, Object>> toMaps(List<?> objs) {
+        BeanToMap beanToMap = new BeanToMap();
+        List<Map<String, Object>> maps = new ArrayList<>(objs.size());
+        for (Object obj : objs) {
+            maps.add(beanToMap.toMap(obj));
+        }
+        return maps;
+    }
+
     private static boolean isBaseType(Class clazz) {
         for (Class baseType : BaseTypes) {
             if (baseType == clazz) return true;
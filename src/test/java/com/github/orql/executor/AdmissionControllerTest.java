@@ -0,0 +1,138 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.exception.AdmissionRejectedException;
+import com.github.orql.executor.sql.NamedParamSql;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class AdmissionControllerTest {
+
+    @Test
+    public void testLimit() {
+        AdmissionController controller = new AdmissionController().limit("report", 2);
+        controller.setMaxWaitMillis(50);
+        AdmissionController.Permit first = controller.acquire("report");
+        AdmissionController.Permit second = controller.acquire("report");
+        // 其他key不受限制
+        assertNull(controller.acquire("query user : [*]"));
+        try {
+            controller.acquire("report");
+            fail();
+        } catch (AdmissionRejectedException e) {
+            // 等待超时
+        }
+        first.release();
+        controller.acquire("report").release();
+        second.release();
+        AdmissionController.Stats stats = controller.getStats("report");
+        assertEquals(3, stats.getAdmitted());
+        assertEquals(1, stats.getRejected());
+        assertEquals(0, stats.getActive());
+    }
+
+    @Test
+    public void testQueue() throws Exception {
+        AdmissionController controller = new AdmissionController();
+        controller.setDefaultLimit(1);
+        controller.setMaxQueue(1);
+        controller.setMaxWaitMillis(5000);
+        AdmissionController.Permit permit = controller.acquire("shape");
+        CompletableFuture<AdmissionController.Permit> waiting = CompletableFuture.supplyAsync(() -> controller.acquire("shape"));
+        while (controller.getStats("shape").getQueueDepth() == 0) {
+            Thread.sleep(1);
+        }
+        try {
+            controller.acquire("shape");
+            fail();
+        } catch (AdmissionRejectedException e) {
+            // 队列满
+        }
+        permit.release();
+        waiting.get().release();
+        assertEquals(2, controller.getStats("shape").getAdmitted());
+    }
+
+    private static void assertRejected(AdmissionController controller, String key) {
+        try {
+            controller.acquire(key);
+            fail();
+        } catch (AdmissionRejectedException e) {
+            // 超出限制
+        }
+    }
+
+    @Test
+    public void testResizeWithOutstandingPermits() {
+        AdmissionController controller = new AdmissionController().limit("report", 2);
+        controller.setMaxWaitMillis(20);
+        AdmissionController.Permit first = controller.acquire("report");
+        AdmissionController.Permit second = controller.acquire("report");
+        // 执行中的许可计入新限制
+        controller.limit("report", 1);
+        assertEquals(2, controller.getStats("report").getActive());
+        first.release();
+        assertRejected(controller, "report");
+        second.release();
+        AdmissionController.Permit third = controller.acquire("report");
+        assertRejected(controller, "report");
+        controller.limit("report", 2);
+        AdmissionController.Permit fourth = controller.acquire("report");
+        assertEquals(2, controller.getStats("report").getActive());
+        third.release();
+        fourth.release();
+        assertEquals(0, controller.getStats("report").getActive());
+        assertEquals(2, controller.getStats("report").getLimit());
+    }
+
+    @Test
+    public void testWriteAdmission() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:admission;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("create table user(id bigint auto_increment primary key, name varchar(64), email varchar(64), phone varchar(64), password varchar(64))");
+        }
+        RecordingDataSource recording = new RecordingDataSource(dataSource);
+        String add = "add user : {name}";
+        String nativeUpdate = "update user set name = 'b'";
+        AdmissionController controller = new AdmissionController().limit(add, 1).limit(nativeUpdate, 1);
+        controller.setMaxWaitMillis(20);
+        Configuration configuration = new Configuration();
+        configuration.setDataSource(recording.dataSource());
+        configuration.setAdmissionController(controller);
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        Session session = new OrqlExecutor(configuration).newSession();
+        Map<String, Object> params = new HashMap<>();
+        params.put("name", "a");
+        AdmissionController.Permit addPermit = controller.acquire(add);
+        AdmissionController.Permit updatePermit = controller.acquire(nativeUpdate);
+        try {
+            session.add(add, params);
+            fail();
+        } catch (AdmissionRejectedException e) {
+            // 获取连接前拒绝
+        }
+        try {
+            session.nativeUpdate(new NamedParamSql(nativeUpdate, new HashMap<>()));
+            fail();
+        } catch (AdmissionRejectedException e) {
+            // 原生sql按sql准入
+        }
+        assertEquals(0, recording.acquiredConnections());
+        addPermit.release();
+        updatePermit.release();
+        assertNotNull(session.add(add, params));
+        assertEquals(1, session.nativeUpdate(new NamedParamSql(nativeUpdate, new HashMap<>())));
+        assertEquals(0, controller.getStats(add).getActive());
+        assertEquals(0, controller.getStats(nativeUpdate).getActive());
+        session.close();
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.exception.SqlExecutionException;
+import com.github.orql.executor.schema.User;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class AsyncSessionTest {
+
+    private static RecordingDataSource recording;
+
+    private Configuration configuration;
+
+    @BeforeClass
+    public static void setUpDatabase() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:async_session;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("create table user(id bigint auto_increment primary key, name varchar(64), email varchar(64), phone varchar(64), password varchar(64))");
+            statement.execute("insert into user(id, name) values (1, 'a'), (2, 'b')");
+        }
+        recording = new RecordingDataSource(dataSource);
+    }
+
+    private static Configuration newConfiguration() {
+        Configuration configuration = new Configuration();
+        configuration.setDataSource(recording.dataSource());
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        recording.clear();
+        return configuration;
+    }
+
+    private AsyncSession newAsyncSession(ExecutorService executor) {
+        configuration = newConfiguration();
+        if (executor != null) configuration.setAsyncExecutor(executor);
+        return new OrqlExecutor(configuration).newAsyncSession();
+    }
+
+    @After
+    public void tearDown() {
+        configuration.getAsyncExecutor().shutdownNow();
+    }
+
+    /**
+     * 占用执行线程直到release
+     */
+    private static CountDownLatch block(ExecutorService executor) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        started.await();
+        return release;
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+        AsyncSession session = newAsyncSession(null);
+        List<User> users = session.queryAll("query user(id > 0 order id) : [*]", new HashMap<>(), User.class).get(5, TimeUnit.SECONDS);
+        assertEquals(2, users.size());
+        assertEquals("b", users.get(1).getName());
+        Map<String, Object> params = new HashMap<>();
+        params.put("id", 2L);
+        params.put("name", "b");
+        assertEquals(Integer.valueOf(1), session.update("update user(id = #id) : {name}", params).get(5, TimeUnit.SECONDS));
+        // 执行后归还连接
+        assertEquals(0, recording.openConnections());
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        AsyncSession session = newAsyncSession(null);
+        // job表不存在
+        CompletableFuture<Object> future = session.query("query job : [*]", new HashMap<>(), null, null);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SqlExecutionException);
+            assertTrue(e.getCause().getCause() instanceof SQLException);
+        }
+        assertTrue(future.isCompletedExceptionally());
+        try {
+            session.update("update job(id = #id) : {status}", new HashMap<>()).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SqlExecutionException);
+        }
+        assertEquals(0, recording.openConnections());
+    }
+
+    @Test
+    public void testCancelBeforeExecution() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AsyncSession session = newAsyncSession(executor);
+        CountDownLatch release = block(executor);
+        CompletableFuture<Object> future = session.query("query user : [*]", new HashMap<>(), null, null);
+        assertTrue(future.cancel(true));
+        release.countDown();
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (CancellationException e) {
+            assertTrue(future.isCancelled());
+        }
+        // 等待排队的任务结束，取消的查询不执行
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, recording.sqls().size());
+        assertEquals(0, recording.acquiredConnections());
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+        configuration = newConfiguration();
+        configuration.setAsyncPoolSize(1);
+        configuration.setAsyncQueueSize(1);
+        // 虚拟线程执行器不限制队列
+        Assume.assumeTrue(configuration.getAsyncExecutor() instanceof ThreadPoolExecutor);
+        AsyncSession session = new OrqlExecutor(configuration).newAsyncSession();
+        CountDownLatch release = block(configuration.getAsyncExecutor());
+        CompletableFuture<Object> queued = session.query("query user(id = 1) : {*}", new HashMap<>(), null, null);
+        CompletableFuture<Object> rejected = session.query("query user(id = 2) : {*}", new HashMap<>(), null, null);
+        try {
+            rejected.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        release.countDown();
+        assertNotNull(queued.get(5, TimeUnit.SECONDS));
+        assertEquals(1, recording.sqls().size());
+    }
+
+}
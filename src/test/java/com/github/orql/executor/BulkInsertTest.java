@@ -0,0 +1,142 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.dialect.H2Dialect;
+import com.github.orql.executor.orql.OrqlNode;
+import com.github.orql.executor.schema.User;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class BulkInsertTest {
+
+    private static RecordingDataSource recording;
+
+    private Configuration configuration;
+
+    private Session session;
+
+    @BeforeClass
+    public static void setUpDatabase() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:bulk_insert;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("create table user(id bigint auto_increment primary key, name varchar(64), email varchar(64), phone varchar(64), password varchar(64))");
+        }
+        recording = new RecordingDataSource(dataSource);
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        try (Connection conn = recording.dataSource().getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("delete from user");
+        }
+        configuration = new Configuration();
+        configuration.setDataSource(recording.dataSource());
+        configuration.setDialect(new H2Dialect());
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        session = new OrqlExecutor(configuration).newSession();
+        recording.clear();
+    }
+
+    private static List<Map<String, Object>> rows(int count) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < count; i ++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("name", "u" + i);
+            row.put("email", "e" + i);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static List<User> users(int count) {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < count; i ++) {
+            User user = new User();
+            user.setName("u" + i);
+            users.add(user);
+        }
+        return users;
+    }
+
+    @Test
+    public void testMultiRowSql() {
+        OrqlNode tree = configuration.getParser().parse("add user : {name, email}");
+        String sql = configuration.getOrqlToSql().toAddAll(tree.getRoot(), 3);
+        assertEquals("insert into user(name, email) values ($0.name, $0.email), ($1.name, $1.email), ($2.name, $2.email)", sql);
+        assertEquals(2, configuration.getOrqlToSql().addParamNames(tree.getRoot()).size());
+        session.addAll("add user : {name, email}", rows(3));
+        // 一条多行insert
+        assertEquals(1, recording.sqls().size());
+        assertTrue(recording.sqls().get(0).contains("values (?, ?), (?, ?), (?, ?)"));
+    }
+
+    @Test
+    public void testChunkByMaxRows() {
+        configuration.setBulkMaxRows(2);
+        List<Object> ids = session.addAll("add user : {name, email}", rows(5));
+        assertEquals(5, ids.size());
+        List<String> sqls = recording.sqls();
+        assertEquals(3, sqls.size());
+        assertTrue(sqls.get(0).endsWith("values (?, ?), (?, ?)"));
+        assertTrue(sqls.get(1).endsWith("values (?, ?), (?, ?)"));
+        assertTrue(sqls.get(2).endsWith("values (?, ?)"));
+    }
+
+    @Test
+    public void testChunkByMaxParams() {
+        // 每行2个参数，每条最多2行
+        configuration.setBulkMaxParams(5);
+        session.addAll("add user : {name, email}", rows(3));
+        assertEquals(2, recording.sqls().size());
+        recording.clear();
+        // 参数数小于一行时每条一行
+        configuration.setBulkMaxParams(1);
+        session.addAll("add user : {name, email}", rows(2));
+        assertEquals(2, recording.sqls().size());
+        assertTrue(recording.sqls().get(0).endsWith("values (?, ?)"));
+    }
+
+    @Test
+    public void testIdWriteBack() {
+        configuration.setBulkMaxRows(2);
+        List<User> users = users(5);
+        session.buildUpdate().addAll(users);
+        assertEquals(3, recording.sqls().size());
+        // 按行顺序插回id
+        for (int i = 0; i < users.size(); i ++) {
+            User user = users.get(i);
+            assertNotNull(user.getId());
+            if (i > 0) assertTrue(user.getId() > users.get(i - 1).getId());
+            Map<String, Object> params = new HashMap<>();
+            params.put("id", user.getId());
+            Map<String, Object> stored = (Map<String, Object>) session.query("query user(id = #id) : {name}", params, null, null);
+            assertEquals(user.getName(), stored.get("name"));
+        }
+    }
+
+    @Test
+    public void testH2Paging() {
+        H2Dialect dialect = new H2Dialect();
+        assertEquals(" limit 2", dialect.page(null, 2));
+        assertEquals(" limit 2 offset 3", dialect.page(3L, 2));
+        session.addAll("add user : {name, email}", rows(5));
+        List<Map<String, Object>> users = (List<Map<String, Object>>) session.query("query user(order name) : [name]", new HashMap<>(), 3L, 2);
+        assertEquals(2, users.size());
+        assertEquals("u3", users.get(0).get("name"));
+        assertEquals("u4", users.get(1).get("name"));
+        assertTrue(recording.sqls().get(recording.sqls().size() - 1).endsWith(" limit 2 offset 3"));
+    }
+
+}
@@ -0,0 +1,169 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.schema.Post;
+import com.github.orql.executor.schema.Tag;
+import com.github.orql.executor.schema.User;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class CascadeInsertTest {
+
+    private static JdbcDataSource dataSource;
+
+    private static OrqlExecutor executor;
+
+    @BeforeClass
+    public static void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:cascade_insert;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        Configuration configuration = new Configuration();
+        configuration.setDataSource(dataSource);
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        executor = new OrqlExecutor(configuration);
+    }
+
+    @Before
+    public void createTables() throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("drop table if exists postTag");
+            statement.execute("drop table if exists post");
+            statement.execute("drop table if exists tag");
+            statement.execute("drop table if exists user");
+            statement.execute("create table user(id bigint auto_increment primary key, name varchar(64), email varchar(64), phone varchar(64), password varchar(64))");
+            statement.execute("create table post(id bigint auto_increment primary key, title varchar(64), content varchar(64), createAt timestamp, authorId bigint references user(id))");
+            statement.execute("create table tag(id bigint auto_increment primary key, name varchar(64))");
+            statement.execute("create table postTag(postId bigint references post(id), tagId bigint references tag(id))");
+            statement.execute("insert into tag(id, name) values (100, 'java')");
+        }
+    }
+
+    private static long count(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            ResultSet resultSet = statement.executeQuery(sql);
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private static Post post(String title, Tag... tags) {
+        Post post = new Post();
+        post.setTitle(title);
+        post.setTags(Arrays.asList(tags));
+        return post;
+    }
+
+    private static Tag tag(Long id, String name) {
+        Tag tag = new Tag();
+        tag.setId(id);
+        tag.setName(name);
+        return tag;
+    }
+
+    @Test
+    public void testAdd() throws SQLException {
+        Session session = executor.newSession();
+        User user = new User();
+        user.setName("a");
+        Tag newTag = tag(null, "orql");
+        user.setPosts(Arrays.asList(post("p1", tag(100L, "java"), newTag), post("p2", newTag)));
+        session.buildUpdate().add(user);
+        assertNotNull(user.getId());
+        assertNotNull(user.getPosts().get(1).getId());
+        assertNotNull(newTag.getId());
+        assertEquals(2, count("select count(*) from post where authorId = " + user.getId()));
+        // 同一个新tag只插入一次
+        assertEquals(1, count("select count(*) from tag where name = 'orql'"));
+        assertEquals(3, count("select count(*) from postTag"));
+        assertEquals(2, count("select count(*) from postTag where tagId = " + newTag.getId()));
+        session.close();
+    }
+
+    @Test
+    public void testAddAll() throws SQLException {
+        Session session = executor.newSession();
+        User a = new User();
+        a.setName("a");
+        a.setPosts(Arrays.asList(post("a1", tag(100L, "java")), post("a2")));
+        User b = new User();
+        b.setName("b");
+        b.setPosts(Collections.singletonList(post("b1", tag(100L, "java"))));
+        session.buildUpdate().addAll(Arrays.asList(a, b));
+        assertEquals(2, count("select count(*) from post where authorId = " + a.getId()));
+        assertEquals(1, count("select count(*) from post where authorId = " + b.getId()));
+        assertEquals(2, count("select count(*) from postTag where tagId = 100"));
+        session.close();
+    }
+
+    @Test
+    public void testAddAllSharedTag() throws SQLException {
+        Session session = executor.newSession();
+        Tag newTag = tag(null, "orql");
+        User a = new User();
+        a.setName("a");
+        a.setPosts(Collections.singletonList(post("a1", newTag)));
+        User b = new User();
+        b.setName("b");
+        b.setPosts(Collections.singletonList(post("b1", newTag)));
+        session.buildUpdate().addAll(Arrays.asList(a, b));
+        assertNotNull(newTag.getId());
+        // 两个上级共用的新tag只插入一次
+        assertEquals(1, count("select count(*) from tag where name = 'orql'"));
+        assertEquals(2, count("select count(*) from postTag where tagId = " + newTag.getId()));
+        session.close();
+    }
+
+    @Test
+    public void testAddMovesExistingChild() throws SQLException {
+        Session session = executor.newSession();
+        User a = new User();
+        a.setName("a");
+        Post post = post("p1");
+        a.setPosts(Collections.singletonList(post));
+        session.buildUpdate().add(a);
+        User b = new User();
+        b.setName("b");
+        b.setPosts(Arrays.asList(post, post("p2")));
+        session.buildUpdate().add(b);
+        // 已有id的post不插入，外键改为新上级
+        assertEquals(2, count("select count(*) from post"));
+        assertEquals(0, count("select count(*) from post where authorId = " + a.getId()));
+        assertEquals(2, count("select count(*) from post where authorId = " + b.getId()));
+        session.close();
+    }
+
+    @Test
+    public void testSyncTags() throws SQLException {
+        Session session = executor.newSession();
+        User user = new User();
+        user.setName("s");
+        Post post = post("s1", tag(100L, "java"));
+        user.setPosts(Collections.singletonList(post));
+        session.buildUpdate().add(user);
+        Tag newTag = tag(null, "h2");
+        post.setTags(Arrays.asList(newTag));
+        // 删除java，插入h2
+        assertEquals(2, session.buildUpdate().sync(post, "tags"));
+        assertNotNull(newTag.getId());
+        assertEquals(1, count("select count(*) from postTag where postId = " + post.getId()));
+        assertEquals(1, count("select count(*) from postTag where tagId = " + newTag.getId()));
+        // 没有变化时不写
+        assertEquals(0, session.buildUpdate().sync(post, "tags"));
+        post.setTags(Collections.emptyList());
+        assertEquals(1, session.buildUpdate().sync(post, "tags"));
+        assertEquals(0, count("select count(*) from postTag"));
+        session.close();
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.dialect.H2Dialect;
+import com.github.orql.executor.dialect.MysqlDialect;
+import com.github.orql.executor.orql.OrqlNode;
+import com.github.orql.executor.schema.Job;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClaimTest {
+
+    private static JdbcDataSource dataSource;
+
+    private static OrqlExecutor executor;
+
+    @BeforeClass
+    public static void setUp() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:claim;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("create table job(id bigint auto_increment primary key, status varchar(16), owner varchar(16))");
+            statement.execute("insert into job(status) values ('new'), ('new'), ('new')");
+            statement.execute("insert into job(status) values ('queued'), ('queued')");
+        }
+        Configuration configuration = new Configuration();
+        configuration.setDataSource(dataSource);
+        configuration.setDialect(new H2Dialect());
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        executor = new OrqlExecutor(configuration);
+    }
+
+    private static long count(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            ResultSet resultSet = statement.executeQuery(sql);
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private static List<Job> claim(Session session, String owner, int n) {
+        return claim(session, "new", owner, n);
+    }
+
+    private static List<Job> claim(Session session, String status, String owner, int n) {
+        Map<String, Object> sets = new HashMap<>();
+        sets.put("status", "running");
+        sets.put("owner", owner);
+        return session.buildQuery()
+                .reql("query job(status = #status order id) : [*]")
+                .param("status", status)
+                .claim(Job.class, n, sets);
+    }
+
+    @Test
+    public void testClaim() throws SQLException {
+        Session session = executor.newSession();
+        List<Job> first = claim(session, "a", 2);
+        assertEquals(2, first.size());
+        assertEquals("running", first.get(0).getStatus());
+        assertEquals("a", first.get(1).getOwner());
+        assertEquals(2, count("select count(*) from job where owner = 'a' and status = 'running'"));
+        // 已领取的行不再返回
+        assertEquals(1, claim(session, "b", 2).size());
+        assertEquals(0, claim(session, "c", 2).size());
+        session.close();
+    }
+
+    @Test
+    public void testClaimInTransaction() throws SQLException {
+        Session session = executor.newSession();
+        session.beginTransaction();
+        assertEquals(2, claim(session, "queued", "t", 2).size());
+        // 在调用方事务中执行，不提交
+        assertTrue(session.inTransaction());
+        session.rollback();
+        assertEquals(0, count("select count(*) from job where owner = 't'"));
+        session.beginTransaction();
+        assertEquals(2, claim(session, "queued", "t", 2).size());
+        session.commit();
+        assertEquals(2, count("select count(*) from job where owner = 't'"));
+        session.close();
+    }
+
+    @Test
+    public void testLockClause() {
+        Configuration configuration = new Configuration();
+        configuration.setDialect(new MysqlDialect());
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        OrqlNode tree = configuration.getParser().parse("query job(status = #status) : [*]");
+        String sql = configuration.getOrqlToSql().toQuery(tree.getOp(), tree.getRoot(), null, LockMode.SkipLocked);
+        assertTrue(sql, sql.endsWith(" for update skip locked"));
+        sql = configuration.getOrqlToSql().toQuery(tree.getOp(), tree.getRoot(), null, LockMode.NoWait);
+        assertTrue(sql, sql.endsWith(" for update nowait"));
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.sql.NamedParamSql;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionTest {
+
+    private static RecordingDataSource recording;
+
+    private static OrqlExecutor executor;
+
+    @BeforeClass
+    public static void setUpDatabase() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:connection;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("create table user(id bigint auto_increment primary key, name varchar(64), email varchar(64), phone varchar(64), password varchar(64))");
+            statement.execute("insert into user(name) values ('a')");
+        }
+        recording = new RecordingDataSource(dataSource);
+        Configuration configuration = new Configuration();
+        configuration.setDataSource(recording.dataSource());
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        executor = new OrqlExecutor(configuration);
+    }
+
+    @Before
+    public void setUp() {
+        recording.clear();
+    }
+
+    private static Map<String, Object> user(String name) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("name", name);
+        return params;
+    }
+
+    private static int count(Session session) {
+        return ((Long) session.query("count user", new HashMap<>(), null, null)).intValue();
+    }
+
+    @Test
+    public void testLazyAcquire() {
+        Session session = executor.newSession();
+        // 创建session不获取连接
+        assertEquals(0, recording.acquiredConnections());
+        session.close();
+        assertEquals(0, recording.acquiredConnections());
+    }
+
+    @Test
+    public void testReleaseAfterStatement() {
+        Session session = executor.newSession();
+        count(session);
+        // 每条语句执行后归还
+        assertEquals(1, recording.acquiredConnections());
+        assertEquals(0, recording.openConnections());
+        session.add("add user : {name}", user("b"));
+        assertEquals(2, recording.acquiredConnections());
+        assertEquals(0, recording.openConnections());
+        session.delete("delete user(name = #name)", user("b"));
+        assertEquals(3, recording.acquiredConnections());
+        assertEquals(0, recording.openConnections());
+        session.close();
+    }
+
+    @Test
+    public void testHoldInTransaction() {
+        Session session = executor.newSession();
+        session.beginTransaction();
+        assertEquals(1, recording.openConnections());
+        session.add("add user : {name}", user("c"));
+        assertEquals(2, count(session));
+        // 事务中所有语句使用同一连接
+        assertEquals(1, recording.acquiredConnections());
+        assertEquals(1, recording.openConnections());
+        session.rollback();
+        assertEquals(0, recording.openConnections());
+        // 事务结束后恢复每条语句归还
+        assertEquals(1, count(session));
+        assertEquals(2, recording.acquiredConnections());
+        assertEquals(0, recording.openConnections());
+        session.beginTransaction();
+        session.add("add user : {name}", user("d"));
+        session.commit();
+        assertEquals(0, recording.openConnections());
+        session.delete("delete user(name = #name)", user("d"));
+        session.close();
+        assertEquals(0, recording.openConnections());
+    }
+
+    @Test
+    public void testNativeQueryHeldUntilClose() throws SQLException {
+        Session session = executor.newSession();
+        ResultSet resultSet = session.nativeQuery(new NamedParamSql("select count(*) from user", new HashMap<>()));
+        // ResultSet读取完之前不归还
+        assertEquals(1, recording.openConnections());
+        assertTrue(resultSet.next());
+        count(session);
+        assertEquals(1, recording.acquiredConnections());
+        session.close();
+        assertEquals(0, recording.openConnections());
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.schema.Account;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class DirtyCheckingTest {
+
+    private static JdbcDataSource dataSource;
+
+    private static OrqlExecutor executor;
+
+    @BeforeClass
+    public static void setUp() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:dirty_checking;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("drop table if exists account");
+            statement.execute("create table account(id bigint auto_increment primary key, name varchar(64), balance int, version int)");
+            statement.execute("insert into account(id, name, balance, version) values (1, 'a', 100, 0), (2, 'c', 100, 0)");
+        }
+        Configuration configuration = new Configuration();
+        configuration.setDataSource(dataSource);
+        configuration.setDirtyChecking(true);
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        executor = new OrqlExecutor(configuration);
+    }
+
+    private static void execute(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static String queryString(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            ResultSet resultSet = statement.executeQuery(sql);
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+
+    @Test
+    public void testOnlyChangedColumns() throws SQLException {
+        Session session = executor.newSession();
+        Account account = session.buildQuery().reql("query account(id = 1) : {*}").queryOne(Account.class);
+        // 没有修改时不执行，版本号不变
+        session.buildUpdate().update(account);
+        assertEquals("0", queryString("select version from account where id = 1"));
+        // 其他连接修改name，只写balance时不覆盖
+        execute("update account set name = 'b' where id = 1");
+        account.setBalance(50);
+        session.buildUpdate().update(account);
+        assertEquals("b", queryString("select name from account where id = 1"));
+        assertEquals("50", queryString("select balance from account where id = 1"));
+        assertEquals(Integer.valueOf(1), account.getVersion());
+        // 改为null也是修改
+        account.setBalance(null);
+        session.buildUpdate().update(account);
+        assertEquals(null, queryString("select balance from account where id = 1"));
+        session.close();
+    }
+
+    @Test
+    public void testDeleteRemovesSnapshot() {
+        Session session = executor.newSession();
+        Account account = session.buildQuery().reql("query account(id = 2) : {*}").queryOne(Account.class);
+        assertNotNull(session.getSnapshots().dirtyFields(account));
+        session.buildUpdate().delete(account);
+        // 删除后不再持有快照
+        assertNull(session.getSnapshots().dirtyFields(account));
+        session.close();
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.schema.Comment;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class IdGeneratorTest {
+
+    private static JdbcDataSource dataSource;
+
+    private static Configuration configuration;
+
+    private static OrqlExecutor executor;
+
+    @BeforeClass
+    public static void setUp() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:id_generator;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("create table comment(id bigint primary key, content varchar(64), postId bigint)");
+            statement.execute("insert into comment(id, content) values (10, 'old')");
+        }
+        configuration = new Configuration();
+        configuration.setDataSource(dataSource);
+        configuration.setIdBlockSize(2);
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        executor = new OrqlExecutor(configuration);
+    }
+
+    private static long queryLong(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            ResultSet resultSet = statement.executeQuery(sql);
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private static Comment comment(String content) {
+        Comment comment = new Comment();
+        comment.setContent(content);
+        return comment;
+    }
+
+    @Test
+    public void testBlockAllocation() throws SQLException {
+        Session session = executor.newSession();
+        List<Comment> comments = new ArrayList<>();
+        for (int i = 0; i < 5; i ++) {
+            comments.add(comment("c" + i));
+        }
+        // 从已有最大id之后开始，一次需要的超过块大小时按需要的数量预留
+        session.buildUpdate().addAll(comments);
+        for (int i = 0; i < 5; i ++) {
+            assertEquals(Long.valueOf(11 + i), comments.get(i).getId());
+        }
+        assertEquals(15, queryLong("select next_id from orql_sequence where name = 'comment'"));
+        Comment a = comment("a");
+        Comment b = comment("b");
+        session.buildUpdate().add(a);
+        session.buildUpdate().add(b);
+        // 一次预留2个
+        assertEquals(Long.valueOf(16), a.getId());
+        assertEquals(Long.valueOf(17), b.getId());
+        assertEquals(17, queryLong("select next_id from orql_sequence where name = 'comment'"));
+        assertEquals(8, queryLong("select count(*) from comment"));
+        session.close();
+    }
+
+    @Test
+    public void testUpdateUsesPlan() throws SQLException {
+        Session session = executor.newSession();
+        Comment comment = comment("new");
+        comment.setId(10L);
+        session.buildUpdate().update(comment);
+        assertEquals(1, queryLong("select count(*) from comment where id = 10 and content = 'new'"));
+        // hiLo只在insert时不使用执行计划，update使用
+        WritePlans.BeanFields bean = configuration.getWritePlans().getBeanFields(Comment.class);
+        assertEquals(1, bean.updates.size());
+        session.close();
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.github.orql.executor;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class IncrementTest {
+
+    private static OrqlExecutor executor;
+
+    private static JdbcDataSource dataSource;
+
+    @BeforeClass
+    public static void setUpDatabase() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:increment;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("create table account(id bigint auto_increment primary key, name varchar(64), balance int, version int)");
+        }
+        Configuration configuration = new Configuration();
+        configuration.setDataSource(dataSource);
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        executor = new OrqlExecutor(configuration);
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("delete from account");
+            statement.execute("insert into account(id, name, balance) values (1, 'a', 100)");
+        }
+    }
+
+    private static Map<String, Object> params(long amount) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("id", 1L);
+        params.put("amount", amount);
+        return params;
+    }
+
+    private static int balance(Session session) {
+        Map<String, Object> account = (Map<String, Object>) session.query("query account(id = #id) : {balance}", params(0), null, null);
+        return (Integer) account.get("balance");
+    }
+
+    @Test
+    public void testIncrement() {
+        Session session = executor.newSession();
+        assertEquals(1, session.update("update account(id = #id) : {balance += #amount}", params(20)));
+        assertEquals(120, balance(session));
+        assertEquals(1, session.update("update account(id = #id) : {balance -= 5}", params(0)));
+        assertEquals(115, balance(session));
+        session.close();
+    }
+
+    @Test
+    public void testGuard() {
+        Session session = executor.newSession();
+        String orql = "update account(id = #id && balance >= #amount) : {balance -= #amount}";
+        assertEquals(1, session.update(orql, params(60)));
+        // 余额不足时条件不成立，不更新
+        assertEquals(0, session.update(orql, params(60)));
+        assertEquals(40, balance(session));
+        session.close();
+    }
+
+    @Test
+    public void testConcurrentIncrement() throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i ++) {
+            futures.add(threads.submit(() -> {
+                Session session = executor.newSession();
+                try {
+                    return session.update("update account(id = #id) : {balance += #amount}", params(1));
+                } finally {
+                    session.close();
+                }
+            }));
+        }
+        for (Future<Integer> future : futures) {
+            assertEquals(Integer.valueOf(1), future.get());
+        }
+        threads.shutdown();
+        Session session = executor.newSession();
+        // 单条语句中读改写，并发不丢失更新
+        assertEquals(120, balance(session));
+        session.close();
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.loader.LazyList;
+import com.github.orql.executor.schema.Post;
+import com.github.orql.executor.schema.User;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LazyLoadTest {
+
+    private static RecordingDataSource recording;
+
+    private static OrqlExecutor executor;
+
+    @BeforeClass
+    public static void setUp() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:lazy_load;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("create table user(id bigint auto_increment primary key, name varchar(64), email varchar(64), phone varchar(64), password varchar(64))");
+            statement.execute("create table post(id bigint auto_increment primary key, title varchar(64), content varchar(64), createAt timestamp, authorId bigint)");
+            // 每个用户i个post
+            for (int i = 1; i <= 3; i ++) {
+                statement.execute("insert into user(id, name) values (" + i + ", 'u" + i + "')");
+                for (int j = 0; j < i; j ++) {
+                    statement.execute("insert into post(title, authorId) values ('p" + i + j + "', " + i + ")");
+                }
+            }
+        }
+        recording = new RecordingDataSource(dataSource);
+        Configuration configuration = new Configuration();
+        configuration.setDataSource(recording.dataSource());
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        executor = new OrqlExecutor(configuration);
+    }
+
+    @Test
+    public void testBatchLoad() {
+        Session session = executor.newSession();
+        List<User> users = session.buildQuery().reql("query user(id > 0 order id) : [*]").lazy("posts").queryAll(User.class);
+        assertEquals(3, users.size());
+        recording.clear();
+        assertFalse(((LazyList) users.get(0).getPosts()).isLoaded());
+        // 访问第一个时兄弟对象一起加载
+        assertEquals(1, users.get(0).getPosts().size());
+        for (User user : users) {
+            assertTrue(((LazyList) user.getPosts()).isLoaded());
+        }
+        assertEquals(2, users.get(1).getPosts().size());
+        assertEquals(3, users.get(2).getPosts().size());
+        for (Post post : users.get(2).getPosts()) {
+            assertTrue(post.getTitle().startsWith("p3"));
+        }
+        assertEquals(1, recording.sqls().size());
+        session.close();
+    }
+
+    @Test
+    public void testBatchSize() {
+        Session session = executor.newSession();
+        List<User> users = session.buildQuery().reql("query user(id > 0 order id) : [*]").lazy("posts").lazyBatchSize(2).queryAll(User.class);
+        recording.clear();
+        int posts = 0;
+        for (User user : users) {
+            posts += user.getPosts().size();
+        }
+        assertEquals(6, posts);
+        assertEquals(2, recording.sqls().size());
+        session.close();
+    }
+
+}
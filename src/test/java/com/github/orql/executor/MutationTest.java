@@ -0,0 +1,165 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.dialect.H2Dialect;
+import com.github.orql.executor.orql.SyntaxException;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class MutationTest {
+
+    private static RecordingDataSource recording;
+
+    private Configuration configuration;
+
+    private Session session;
+
+    @BeforeClass
+    public static void setUpDatabase() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:mutation;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("create table user(id bigint auto_increment primary key, name varchar(64), email varchar(64), phone varchar(64), password varchar(64))");
+            statement.execute("create table post(id bigint auto_increment primary key, title varchar(64), content varchar(64), createAt timestamp, authorId bigint)");
+            statement.execute("create table tag(id bigint auto_increment primary key, name varchar(64))");
+            statement.execute("create table postTag(postId bigint, tagId bigint)");
+        }
+        recording = new RecordingDataSource(dataSource);
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        try (Connection conn = recording.dataSource().getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("delete from user");
+            statement.execute("delete from post");
+            statement.execute("delete from tag");
+            statement.execute("delete from postTag");
+            statement.execute("insert into user(id, name) values (1, 'a'), (2, 'b'), (3, 'c')");
+            // a: 1-3 b: 4-5 c: 没有post
+            statement.execute("insert into post(id, title, authorId) values (1, 't1', 1), (2, 't2', 1), (3, 't3', 1), (4, 't4', 2), (5, 't5', 2)");
+            statement.execute("insert into tag(id, name) values (1, 'java'), (2, 'sql')");
+            statement.execute("insert into postTag(postId, tagId) values (1, 1), (2, 1), (4, 2)");
+        }
+        configuration = new Configuration();
+        configuration.setDataSource(recording.dataSource());
+        configuration.setDialect(new H2Dialect());
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        session = new OrqlExecutor(configuration).newSession();
+        recording.clear();
+    }
+
+    private static Map<String, Object> params(String name, Object value) {
+        Map<String, Object> params = new HashMap<>();
+        params.put(name, value);
+        return params;
+    }
+
+    private long count(String orql) {
+        return (Long) session.query(orql, new HashMap<>(), null, null);
+    }
+
+    @Test
+    public void testBelongsToFilter() {
+        int rows = session.delete("delete post : {author(name = #name)}", params("name", "b"));
+        assertEquals(2, rows);
+        assertTrue(recording.sqls().get(0).contains("exists"));
+        assertEquals(3, count("count post"));
+        assertEquals(0, count("count post(authorId = 2)"));
+    }
+
+    @Test
+    public void testHasManyFilter() {
+        // 有标题为t4的post的用户
+        Map<String, Object> params = params("title", "t4");
+        params.put("email", "b@orql");
+        int rows = session.update("update user : {email, posts(title = #title)}", params);
+        assertEquals(1, rows);
+        assertEquals(1, count("count user(email = 'b@orql')"));
+        assertEquals(0, count("count user(id != 2 && email = 'b@orql')"));
+        // 没有post的用户
+        assertEquals(0, session.delete("delete user : {posts(title = 'none')}", new HashMap<>()));
+    }
+
+    @Test
+    public void testBelongsToManyFilter() {
+        int rows = session.update("update post(authorId = 1) : {content, tags(name = #name)}", params("name", "java"));
+        assertEquals(2, rows);
+        assertEquals(1, session.delete("delete post : {tags(name = #name)}", params("name", "sql")));
+        assertEquals(0, count("count post(id = 4)"));
+        assertEquals(4, count("count post"));
+    }
+
+    @Test
+    public void testChunkedDelete() {
+        configuration.setMutationChunkSize(2);
+        int rows = session.delete("delete post(id > 0)", new HashMap<>());
+        assertEquals(5, rows);
+        // 2 + 2 + 1，少于一批时结束
+        List<String> deletes = recording.sqls("delete from post");
+        assertEquals(3, deletes.size());
+        assertTrue(deletes.get(0).endsWith(" limit 2"));
+        assertEquals(0, count("count post"));
+        assertEquals(0, recording.openConnections());
+    }
+
+    @Test
+    public void testChunkedUpdateKeyset() {
+        configuration.setMutationChunkSize(2);
+        // 更新后的行仍匹配条件，按id之后继续，不会重复更新
+        Map<String, Object> params = params("content", "x");
+        int rows = session.update("update post(id > 0) : {content}", params);
+        assertEquals(5, rows);
+        List<String> selects = recording.sqls("select post.id");
+        assertEquals(3, selects.size());
+        assertFalse(selects.get(0).contains("post.id > ?"));
+        assertTrue(selects.get(1).contains("post.id > ?"));
+        assertEquals(3, recording.sqls("update post").size());
+        assertEquals(5, count("count post(content = 'x')"));
+        assertEquals(0, recording.openConnections());
+    }
+
+    @Test
+    public void testChunkedUpdateFilter() {
+        configuration.setMutationChunkSize(1);
+        Map<String, Object> params = params("name", "a");
+        params.put("content", "y");
+        int rows = session.update("update post : {content, author(name = #name)}", params);
+        assertEquals(3, rows);
+        assertEquals(3, count("count post(content = 'y' && authorId = 1)"));
+    }
+
+    @Test
+    public void testRequireCondition() {
+        try {
+            session.delete("delete post", new HashMap<>());
+            fail();
+        } catch (SyntaxException e) {
+            assertEquals("delete post missing condition", e.getMessage());
+        }
+        try {
+            session.delete("delete post : {}", new HashMap<>());
+            fail();
+        } catch (SyntaxException e) {
+            // 空的字段列表不能解析
+        }
+        try {
+            session.update("update post : {content}", params("content", "x"));
+            fail();
+        } catch (SyntaxException e) {
+            assertEquals("update post missing condition", e.getMessage());
+        }
+        assertTrue(recording.sqls().isEmpty());
+        assertEquals(5, count("count post"));
+    }
+
+}
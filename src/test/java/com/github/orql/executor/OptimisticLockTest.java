@@ -0,0 +1,118 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.exception.OptimisticLockException;
+import com.github.orql.executor.schema.Account;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class OptimisticLockTest {
+
+    private static OrqlExecutor executor;
+
+    @BeforeClass
+    public static void setUp() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:optimistic_lock;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("drop table if exists account");
+            statement.execute("create table account(id bigint auto_increment primary key, name varchar(64), balance int, version int)");
+        }
+        Configuration configuration = new Configuration();
+        configuration.setDataSource(dataSource);
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        executor = new OrqlExecutor(configuration);
+    }
+
+    private Account newAccount(Session session, String name) {
+        Account account = new Account();
+        account.setName(name);
+        account.setBalance(100);
+        session.buildUpdate().add(account);
+        return account;
+    }
+
+    private Account copy(Account account) {
+        Account copy = new Account();
+        copy.setId(account.getId());
+        copy.setVersion(account.getVersion());
+        return copy;
+    }
+
+    @Test
+    public void testUpdateConflict() {
+        Session session = executor.newSession();
+        Account account = newAccount(session, "a");
+        assertEquals(Integer.valueOf(0), account.getVersion());
+        Account stale = copy(account);
+        account.setBalance(90);
+        session.buildUpdate().update(account);
+        assertEquals(Integer.valueOf(1), account.getVersion());
+        stale.setBalance(80);
+        try {
+            session.buildUpdate().update(stale);
+            fail();
+        } catch (OptimisticLockException e) {
+            assertEquals(Collections.singletonList(stale), e.getConflicts());
+        }
+        assertEquals(Integer.valueOf(0), stale.getVersion());
+        session.close();
+    }
+
+    @Test
+    public void testUpdateAllConflicts() {
+        Session session = executor.newSession();
+        Account a = newAccount(session, "b");
+        Account b = newAccount(session, "c");
+        Account staleB = copy(b);
+        b.setBalance(1);
+        session.buildUpdate().update(b);
+        a.setBalance(50);
+        staleB.setBalance(50);
+        try {
+            session.buildUpdate().updateAll(Arrays.asList(a, staleB));
+            fail();
+        } catch (OptimisticLockException e) {
+            assertEquals(Collections.singletonList(staleB), e.getConflicts());
+        }
+        // 未冲突的行已更新
+        assertEquals(Integer.valueOf(1), a.getVersion());
+        session.close();
+    }
+
+    private static String longName() {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 65; i ++) name.append('x');
+        return name.toString();
+    }
+
+    @Test
+    public void testFailureNotConflict() {
+        Session session = executor.newSession();
+        Account account = newAccount(session, "f");
+        // 超出列长度，语句执行失败
+        account.setName(longName());
+        session.buildUpdate().update(account);
+        assertEquals(Integer.valueOf(0), account.getVersion());
+        // 不使用执行计划时同样不当作冲突
+        new UpdateBuilder(session, executor.configuration.getSchemaManager()).update(account);
+        assertEquals(Integer.valueOf(0), account.getVersion());
+        Map<String, Object> params = new HashMap<>();
+        params.put("id", account.getId());
+        assertEquals("f", ((Map<String, Object>) session.query("query account(id = #id) : {name}", params, null, null)).get("name"));
+        account.setName("g");
+        session.buildUpdate().update(account);
+        assertEquals(Integer.valueOf(1), account.getVersion());
+        session.close();
+    }
+}
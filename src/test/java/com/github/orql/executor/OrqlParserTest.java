@@ -1,4 +1,101 @@
 package com.github.orql.executor;
 
+import com.github.orql.executor.orql.OrqlNode;
+import com.github.orql.executor.orql.Parser;
+import com.github.orql.executor.orql.SyntaxException;
+import com.github.orql.executor.sql.NamedParamSql;
+import com.github.orql.executor.sql.OrqlToSql;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
 public class OrqlParserTest {
+
+    private static Parser parser;
+
+    private static OrqlToSql orqlToSql;
+
+    @BeforeClass
+    public static void setUp() {
+        Configuration configuration = new Configuration();
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        parser = configuration.getParser();
+        orqlToSql = configuration.getOrqlToSql();
+    }
+
+    private static String toQuery(String orql) {
+        OrqlNode tree = parser.parse(orql);
+        return orqlToSql.toQuery(tree.getOp(), tree.getRoot(), null);
+    }
+
+    @Test
+    public void testIn() {
+        OrqlNode tree = parser.parse("query post(id in #ids) : [*]");
+        OrqlNode.OrqlColumnExp exp = (OrqlNode.OrqlColumnExp) tree.getRoot().getWhere().getExp();
+        assertEquals("id", exp.getLeft().getName());
+        assertEquals(ExpOp.In, exp.getOp());
+        assertEquals("ids", exp.getRightParam());
+    }
+
+    @Test(expected = SyntaxException.class)
+    public void testInRequiresParam() {
+        parser.parse("query post(id in 1) : [*]");
+    }
+
+    @Test
+    public void testInParamExpansion() {
+        String sql = toQuery("query post(id in #ids && title = #title) : [id]");
+        Map<String, Object> params = new HashMap<>();
+        params.put("ids", Arrays.asList(1L, 2L, 3L));
+        params.put("title", "t");
+        NamedParamSql namedParamSql = new NamedParamSql(sql, params);
+        assertEquals(true, namedParamSql.getSql().contains("post.id in (?, ?, ?) and post.title = ?"));
+        assertArrayEquals(new Object[]{1L, 2L, 3L, "t"}, namedParamSql.getParams());
+        // 空集合不匹配任何行
+        params.put("ids", Collections.emptyList());
+        namedParamSql = new NamedParamSql(sql, params);
+        assertEquals(true, namedParamSql.getSql().contains("post.id in (null)"));
+        assertArrayEquals(new Object[]{"t"}, namedParamSql.getParams());
+    }
+
+    @Test
+    public void testIncrementParam() {
+        OrqlNode tree = parser.parse("update account(id = #id && balance >= #amount) : {balance -= #amount}");
+        OrqlNode.OrqlIncrementItem item = (OrqlNode.OrqlIncrementItem) tree.getRoot().getChildren().get(0);
+        assertEquals("balance", item.getColumn().getName());
+        assertEquals("-", item.getOp());
+        assertEquals("amount", item.getParam());
+        assertEquals("update account set balance = balance - $amount where account.id = $id and account.balance >= $amount",
+                orqlToSql.toUpdate(tree.getRoot()));
+    }
+
+    @Test
+    public void testIncrementLiteral() {
+        OrqlNode tree = parser.parse("update account(id = #id) : {name, balance += 10}");
+        OrqlNode.OrqlIncrementItem item = (OrqlNode.OrqlIncrementItem) tree.getRoot().getChildren().get(1);
+        assertEquals("+", item.getOp());
+        assertNull(item.getParam());
+        assertEquals(10, ((Number) item.getValue()).intValue());
+        assertEquals("update account set name = $name, balance = balance + 10 where account.id = $id",
+                orqlToSql.toUpdate(tree.getRoot()));
+    }
+
+    @Test(expected = SyntaxException.class)
+    public void testIncrementInAdd() {
+        orqlToSql.toAdd(parser.parse("add account : {name, balance += 1}").getRoot());
+    }
+
+    @Test(expected = SyntaxException.class)
+    public void testIncrementInUpsert() {
+        orqlToSql.toUpsert(parser.parse("upsert account : {id, balance += #amount}").getRoot());
+    }
+
 }
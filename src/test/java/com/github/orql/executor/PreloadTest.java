@@ -0,0 +1,150 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.schema.Post;
+import com.github.orql.executor.schema.Tag;
+import com.github.orql.executor.schema.User;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class PreloadTest {
+
+    private static RecordingDataSource recording;
+
+    private static OrqlExecutor executor;
+
+    @BeforeClass
+    public static void setUp() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:preload;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("create table user(id bigint auto_increment primary key, name varchar(64), email varchar(64), phone varchar(64), password varchar(64))");
+            statement.execute("create table post(id bigint auto_increment primary key, title varchar(64), content varchar(64), createAt timestamp, authorId bigint)");
+            statement.execute("create table tag(id bigint auto_increment primary key, name varchar(64))");
+            statement.execute("create table postTag(postId bigint, tagId bigint)");
+            statement.execute("insert into user(id, name) values (1, 'a'), (2, 'b'), (3, 'c')");
+            statement.execute("insert into post(id, title, authorId) values (1, 'a1', 1), (2, 'a2', 1), (3, 'b1', 2), (4, 'none', null)");
+            statement.execute("insert into tag(id, name) values (1, 'java'), (2, 'sql')");
+            statement.execute("insert into postTag(postId, tagId) values (1, 1), (1, 2), (3, 2)");
+        }
+        recording = new RecordingDataSource(dataSource);
+        Configuration configuration = new Configuration();
+        configuration.setDataSource(recording.dataSource());
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        executor = new OrqlExecutor(configuration);
+    }
+
+    private static List<Post> posts(Session session) {
+        return session.buildQuery().reql("query post(id > 0 order id) : [*]").queryAll(Post.class);
+    }
+
+    /**
+     * 语句中不出现上级表
+     */
+    private static void assertNotRead(String table) {
+        for (String sql : recording.sqls()) {
+            assertFalse(sql, sql.contains(" from " + table + " ") || sql.contains(" join " + table + " "));
+        }
+    }
+
+    @Test
+    public void testBelongsTo() {
+        Session session = executor.newSession();
+        List<Post> posts = posts(session);
+        recording.clear();
+        session.preload(posts, "author");
+        // 读取外键列，然后按外键查询user
+        List<String> sqls = recording.sqls();
+        assertEquals(2, sqls.size());
+        assertEquals(true, sqls.get(0).contains("post.authorId") && ! sqls.get(0).contains("join"));
+        assertEquals(true, sqls.get(1).contains(" from user as user where user.id in (?, ?)"));
+        assertEquals("a", posts.get(0).getAuthor().getName());
+        assertEquals("a", posts.get(1).getAuthor().getName());
+        assertEquals("b", posts.get(2).getAuthor().getName());
+        assertNull(posts.get(3).getAuthor());
+        session.close();
+    }
+
+    @Test
+    public void testBelongsToKnownForeignKey() {
+        Session session = executor.newSession();
+        List<Post> posts = new ArrayList<>();
+        for (long id = 1; id <= 2; id ++) {
+            User author = new User();
+            author.setId(id);
+            Post post = new Post();
+            post.setId(id);
+            post.setAuthor(author);
+            posts.add(post);
+        }
+        recording.clear();
+        session.preload(posts, "author");
+        // 外键已知时只查询user
+        assertEquals(1, recording.sqls().size());
+        assertNotRead("post");
+        assertEquals("a", posts.get(0).getAuthor().getName());
+        assertEquals("b", posts.get(1).getAuthor().getName());
+        session.close();
+    }
+
+    @Test
+    public void testHasMany() {
+        Session session = executor.newSession();
+        List<User> users = session.buildQuery().reql("query user(id > 0 order id) : [*]").queryAll(User.class);
+        recording.clear();
+        session.preload(users, "posts");
+        List<String> sqls = recording.sqls();
+        assertEquals(1, sqls.size());
+        assertEquals(true, sqls.get(0).contains("where post.authorId in (?, ?, ?)"));
+        assertNotRead("user");
+        assertEquals(2, users.get(0).getPosts().size());
+        assertEquals("a2", users.get(0).getPosts().get(1).getTitle());
+        assertEquals(1, users.get(1).getPosts().size());
+        assertEquals(0, users.get(2).getPosts().size());
+        session.close();
+    }
+
+    @Test
+    public void testBelongsToMany() {
+        Session session = executor.newSession();
+        List<Post> posts = posts(session);
+        recording.clear();
+        session.preload(posts, "tags");
+        // 中间表和tag各一次
+        List<String> sqls = recording.sqls();
+        assertEquals(2, sqls.size());
+        assertEquals(true, sqls.get(0).contains(" from postTag "));
+        assertEquals(true, sqls.get(1).contains(" from tag as tag where tag.id in (?, ?)"));
+        assertNotRead("post");
+        List<Tag> tags = posts.get(0).getTags();
+        assertEquals(2, tags.size());
+        assertEquals("java", tags.get(0).getName());
+        assertEquals("sql", tags.get(1).getName());
+        assertEquals(0, posts.get(1).getTags().size());
+        assertEquals("sql", posts.get(2).getTags().get(0).getName());
+        session.close();
+    }
+
+    @Test
+    public void testNested() {
+        Session session = executor.newSession();
+        List<Post> posts = posts(session);
+        recording.clear();
+        session.preload(posts, "author.posts");
+        assertEquals(3, recording.sqls().size());
+        assertEquals(2, posts.get(0).getAuthor().getPosts().size());
+        assertEquals("b1", posts.get(2).getAuthor().getPosts().get(0).getTitle());
+        session.close();
+    }
+
+}
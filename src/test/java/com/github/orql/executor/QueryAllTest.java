@@ -0,0 +1,123 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.exception.AdmissionRejectedException;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class QueryAllTest {
+
+    private static RecordingDataSource recording;
+
+    private Configuration configuration;
+
+    @BeforeClass
+    public static void setUpDatabase() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:query_all;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("create table user(id bigint auto_increment primary key, name varchar(64), email varchar(64), phone varchar(64), password varchar(64))");
+            statement.execute("create table post(id bigint auto_increment primary key, title varchar(64), content varchar(64), createAt timestamp, authorId bigint)");
+            statement.execute("insert into user(id, name) values (1, 'a'), (2, 'b')");
+            statement.execute("insert into post(id, title, authorId) values (1, 'p1', 1)");
+        }
+        recording = new RecordingDataSource(dataSource);
+    }
+
+    @Before
+    public void setUp() {
+        configuration = new Configuration();
+        configuration.setDataSource(recording.dataSource());
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        recording.clear();
+    }
+
+    private static List<QueryRequest> requests() {
+        Map<String, Object> params = new HashMap<>();
+        params.put("id", 1L);
+        return Arrays.asList(
+                new QueryRequest("query user(id = #id) : {name}", params),
+                new QueryRequest("query post : [title]", new HashMap<>()),
+                new QueryRequest("count user", new HashMap<>()));
+    }
+
+    private static void assertResults(List<Object> results) {
+        assertEquals(3, results.size());
+        assertEquals("a", ((Map<String, Object>) results.get(0)).get("name"));
+        assertEquals("p1", ((List<Map<String, Object>>) results.get(1)).get(0).get("title"));
+        assertEquals(2L, results.get(2));
+    }
+
+    @Test
+    public void testConcurrently() {
+        Session session = new OrqlExecutor(configuration).newSession();
+        assertResults(session.queryAll(requests()));
+        // 每个查询单独执行
+        assertEquals(3, recording.sqls().size());
+        assertEquals(0, recording.openConnections());
+        session.close();
+    }
+
+    @Test
+    public void testFallbackKeepsResults() {
+        configuration.setMultiStatement(true);
+        Session session = new OrqlExecutor(configuration).newSession();
+        assertResults(session.queryAll(requests()));
+        // h2只执行多语句中的第一条，其余两条回退执行，第一条不重复执行
+        List<String> sqls = recording.sqls();
+        assertEquals(3, sqls.size());
+        assertTrue(sqls.get(0).contains("; "));
+        assertEquals(1, recording.sqls("from user as user where").size());
+        assertEquals(0, recording.openConnections());
+        session.close();
+    }
+
+    @Test
+    public void testNoFallbackOnError() {
+        configuration.setMultiStatement(true);
+        Session session = new OrqlExecutor(configuration).newSession();
+        // tag表不存在，不是不支持多语句，不回退
+        List<Object> results = session.queryAll(Arrays.asList(
+                new QueryRequest("query tag : [*]", new HashMap<>()),
+                new QueryRequest("count user", new HashMap<>())));
+        assertEquals(Arrays.asList(null, null), results);
+        assertEquals(1, recording.sqls().size());
+        assertEquals(0, recording.openConnections());
+        session.close();
+    }
+
+    @Test
+    public void testMultiStatementAdmission() {
+        configuration.setMultiStatement(true);
+        AdmissionController admissionController = new AdmissionController().limit("count user", 1);
+        admissionController.setMaxWaitMillis(50);
+        configuration.setAdmissionController(admissionController);
+        Session session = new OrqlExecutor(configuration).newSession();
+        AdmissionController.Permit permit = admissionController.acquire("count user");
+        try {
+            session.queryAll(requests());
+            fail();
+        } catch (AdmissionRejectedException e) {
+            // 获取连接前拒绝
+            assertEquals(0, recording.acquiredConnections());
+        }
+        permit.release();
+        assertResults(session.queryAll(requests()));
+        AdmissionController.Stats stats = admissionController.getStats("count user");
+        assertEquals(0, stats.getActive());
+        assertEquals(1, stats.getRejected());
+        session.close();
+    }
+
+}
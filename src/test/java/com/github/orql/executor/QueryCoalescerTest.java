@@ -0,0 +1,136 @@
+package com.github.orql.executor;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class QueryCoalescerTest {
+
+    private static List<Object> result() {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", 1L);
+        row.put("tags", new ArrayList<>(Collections.singletonList("java")));
+        return new ArrayList<>(Collections.singletonList(row));
+    }
+
+    /**
+     * 等待者在执行中加入
+     */
+    private static void awaitCoalesced(QueryCoalescer coalescer, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (coalescer.getCoalesced() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, coalescer.getCoalesced());
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        QueryCoalescer coalescer = new QueryCoalescer();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        Future<Object> leader = threads.submit(() -> coalescer.query("query user : [*]", new HashMap<>(), null, null, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return result();
+        }));
+        while (coalescer.getInFlight() == 0) Thread.sleep(5);
+        List<Future<Object>> followers = new ArrayList<>();
+        for (int i = 0; i < 3; i ++) {
+            followers.add(threads.submit(() -> coalescer.query("query user : [*]", new HashMap<>(), null, null, () -> {
+                throw new AssertionError("coalesced query executed");
+            })));
+        }
+        awaitCoalesced(coalescer, 3);
+        release.countDown();
+        List<Object> leaderResult = (List<Object>) leader.get(5, TimeUnit.SECONDS);
+        // 执行者的结果可修改
+        leaderResult.add("added");
+        ((List<Object>) ((Map<String, Object>) leaderResult.get(0)).get("tags")).add("leader");
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Future<Object> follower : followers) {
+            List<Object> followerResult = (List<Object>) follower.get(5, TimeUnit.SECONDS);
+            // 各自的副本，不受执行者修改影响
+            assertEquals(result(), followerResult);
+            assertTrue(seen.add(followerResult));
+            ((Map<String, Object>) followerResult.get(0)).put("id", 2L);
+        }
+        assertEquals(1, coalescer.getExecutions());
+        assertEquals(3, coalescer.getCoalesced());
+        assertEquals(0, coalescer.getInFlight());
+        threads.shutdown();
+    }
+
+    @Test
+    public void testDifferentParamsNotCoalesced() {
+        QueryCoalescer coalescer = new QueryCoalescer();
+        Map<String, Object> params = new HashMap<>();
+        params.put("id", 1);
+        coalescer.query("query user(id = #id) : {*}", params, null, null, QueryCoalescerTest::result);
+        params.put("id", 2);
+        coalescer.query("query user(id = #id) : {*}", params, null, null, QueryCoalescerTest::result);
+        coalescer.query("query user(id = #id) : {*}", params, 0L, 10, QueryCoalescerTest::result);
+        assertEquals(3, coalescer.getExecutions());
+        assertEquals(0, coalescer.getCoalesced());
+    }
+
+    @Test
+    public void testFailureShared() throws Exception {
+        QueryCoalescer coalescer = new QueryCoalescer();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        Future<Object> leader = threads.submit(() -> coalescer.query("query user : [*]", null, null, null, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            throw new IllegalStateException("failed");
+        }));
+        while (coalescer.getInFlight() == 0) Thread.sleep(5);
+        Future<Object> follower = threads.submit(() -> coalescer.query("query user : [*]", null, null, null, QueryCoalescerTest::result));
+        awaitCoalesced(coalescer, 1);
+        release.countDown();
+        for (Future<Object> future : Arrays.asList(leader, follower)) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertEquals("failed", e.getCause().getMessage());
+            }
+        }
+        threads.shutdown();
+    }
+
+    @Test
+    public void testSessionResultMutable() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:query_coalescer;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("create table user(id bigint auto_increment primary key, name varchar(64), email varchar(64), phone varchar(64), password varchar(64))");
+            statement.execute("insert into user(name) values ('a')");
+        }
+        Configuration configuration = new Configuration();
+        configuration.setDataSource(dataSource);
+        configuration.setQueryCoalescing(true);
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        Session session = new OrqlExecutor(configuration).newSession();
+        List<Map<String, Object>> users = (List<Map<String, Object>>) session.query("query user : [*]", new HashMap<>(), null, null);
+        // 开启合并不影响没有共享的调用方
+        users.get(0).put("name", "b");
+        users.add(new HashMap<>());
+        assertEquals(1, configuration.getQueryCoalescer().getExecutions());
+        session.close();
+    }
+
+}
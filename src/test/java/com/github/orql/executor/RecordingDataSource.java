@@ -0,0 +1,108 @@
+package com.github.orql.executor;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 包装DataSource，记录prepare的sql和打开的连接数，用于检查执行的语句和连接持有
+ */
+public class RecordingDataSource {
+
+    private final DataSource target;
+
+    private final List<String> sqls = Collections.synchronizedList(new ArrayList<>());
+
+    private final AtomicInteger open = new AtomicInteger();
+
+    private final AtomicInteger acquired = new AtomicInteger();
+
+    public RecordingDataSource(DataSource target) {
+        this.target = target;
+    }
+
+    public DataSource dataSource() {
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{DataSource.class}, (proxy, method, args) -> {
+            Object result = invoke(target, method, args);
+            if (method.getName().equals("getConnection")) {
+                open.incrementAndGet();
+                acquired.incrementAndGet();
+                return connection((Connection) result);
+            }
+            return result;
+        });
+    }
+
+    private Connection connection(Connection conn) {
+        InvocationHandler handler = new InvocationHandler() {
+
+            private boolean closed = false;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().startsWith("prepare")) {
+                    sqls.add((String) args[0]);
+                } else if (method.getName().equals("close") && ! closed) {
+                    closed = true;
+                    open.decrementAndGet();
+                }
+                return RecordingDataSource.invoke(conn, method, args);
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Connection.class}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 已prepare的sql
+     */
+    public List<String> sqls() {
+        synchronized (sqls) {
+            return new ArrayList<>(sqls);
+        }
+    }
+
+    /**
+     * 包含关键字的sql
+     */
+    public List<String> sqls(String keyword) {
+        return sqls().stream().filter(sql -> sql.contains(keyword)).collect(Collectors.toList());
+    }
+
+    /**
+     * 当前未关闭的连接数
+     */
+    public int openConnections() {
+        return open.get();
+    }
+
+    /**
+     * 累计获取的连接数
+     */
+    public int acquiredConnections() {
+        return acquired.get();
+    }
+
+    /**
+     * 清空sql和累计连接数，未关闭的连接数不变
+     */
+    public void clear() {
+        sqls.clear();
+        acquired.set(0);
+    }
+}
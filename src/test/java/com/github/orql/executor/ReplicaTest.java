@@ -0,0 +1,92 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.replica.LeastInFlightLoadBalancer;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ReplicaTest {
+
+    /**
+     * 每个库一个用户，名字为库名，用于判断查询走的库
+     */
+    private static DataSource database(String name) throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:replica_" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("drop table if exists user");
+            statement.execute("create table user(id bigint auto_increment primary key, name varchar(64), email varchar(64), phone varchar(64), password varchar(64))");
+            statement.execute("insert into user(name) values ('" + name + "')");
+        }
+        return dataSource;
+    }
+
+    private static OrqlExecutor executor() throws SQLException {
+        Configuration configuration = new Configuration();
+        configuration.setDataSource(database("primary"));
+        configuration.addReplica(database("r1"));
+        configuration.addReplica(database("r2"));
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        return new OrqlExecutor(configuration);
+    }
+
+    private static String queryName(Session session) {
+        Map<String, Object> user = (Map<String, Object>) session.query("query user : {name}", new HashMap<>(), null, null);
+        return (String) user.get("name");
+    }
+
+    @Test
+    public void testRoundRobin() throws SQLException {
+        OrqlExecutor executor = executor();
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < 4; i ++) {
+            Session session = executor.newSession();
+            names.add(queryName(session));
+            session.close();
+        }
+        assertEquals(new HashSet<>(Arrays.asList("r1", "r2")), names);
+    }
+
+    @Test
+    public void testTransactionReadsPrimary() throws SQLException {
+        Session session = executor().newSession();
+        session.beginTransaction();
+        assertEquals("primary", queryName(session));
+        session.rollback();
+        assertEquals(true, queryName(session).startsWith("r"));
+        session.close();
+    }
+
+    @Test
+    public void testReadYourWrites() throws SQLException {
+        Session session = executor().newSession();
+        assertEquals(true, queryName(session).startsWith("r"));
+        Map<String, Object> params = new HashMap<>();
+        params.put("name", "added");
+        session.add("add user : {name}", params);
+        // 写入后查询主库
+        List<Object> users = (List<Object>) session.query("query user : [name]", new HashMap<>(), null, null);
+        assertEquals(2, users.size());
+        session.close();
+    }
+
+    @Test
+    public void testLeastInFlight() throws SQLException {
+        LeastInFlightLoadBalancer loadBalancer = new LeastInFlightLoadBalancer();
+        List<DataSource> replicas = Arrays.asList(database("l1"), database("l2"));
+        DataSource first = loadBalancer.select(replicas);
+        DataSource second = loadBalancer.select(replicas);
+        assertEquals(1, loadBalancer.getInFlight(first));
+        assertEquals(1, loadBalancer.getInFlight(second));
+        loadBalancer.release(second);
+        assertSame(second, loadBalancer.select(replicas));
+    }
+}
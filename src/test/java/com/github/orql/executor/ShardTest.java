@@ -0,0 +1,176 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.exception.QueryBudgetExceededException;
+import com.github.orql.executor.exception.ShardException;
+import com.github.orql.executor.schema.Message;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ShardTest {
+
+    private static List<DataSource> shards = new ArrayList<>();
+
+    private static OrqlExecutor executor;
+
+    @BeforeClass
+    public static void setUp() throws SQLException {
+        for (int i = 0; i < 3; i ++) {
+            JdbcDataSource dataSource = new JdbcDataSource();
+            dataSource.setURL("jdbc:h2:mem:shard_" + i + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+            try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+                statement.execute("drop table if exists message");
+                statement.execute("create table message(id bigint auto_increment primary key, userId bigint, content varchar(64))");
+            }
+            shards.add(dataSource);
+        }
+        Configuration configuration = new Configuration();
+        configuration.setDataSource(shards.get(0));
+        configuration.setShards(shards);
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        executor = new OrqlExecutor(configuration);
+        Session session = executor.newSession();
+        for (long userId = 0; userId < 6; userId ++) {
+            for (int i = 0; i < 2; i ++) {
+                Map<String, Object> params = new HashMap<>();
+                params.put("userId", userId);
+                params.put("content", "m" + userId + i);
+                session.add("add message : {userId, content}", params);
+            }
+        }
+        session.close();
+    }
+
+    private static int countRows(DataSource dataSource) throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            ResultSet resultSet = statement.executeQuery("select count(*) from message");
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    @Test
+    public void testRouteAdd() throws SQLException {
+        // userId % 3
+        for (DataSource shard : shards) {
+            assertEquals(4, countRows(shard));
+        }
+    }
+
+    @Test
+    public void testSingleShard() {
+        Session session = executor.newSession();
+        Map<String, Object> params = new HashMap<>();
+        params.put("userId", 4L);
+        List<Map<String, Object>> messages = (List<Map<String, Object>>) session.query("query message(userId = $userId) : [*]", params, null, null);
+        assertEquals(2, messages.size());
+        session.close();
+    }
+
+    @Test
+    public void testScatterOrderLimit() {
+        Session session = executor.newSession();
+        List<Map<String, Object>> messages = (List<Map<String, Object>>) session.query("query message(order content desc) : [content]", new HashMap<>(), 1L, 4);
+        List<Object> contents = new ArrayList<>();
+        for (Map<String, Object> message : messages) {
+            contents.add(message.get("content"));
+        }
+        assertEquals(Arrays.asList("m50", "m41", "m40", "m31"), contents);
+        assertEquals(12L, session.query("count message : [*]", new HashMap<>(), null, null));
+        session.close();
+    }
+
+    @Test
+    public void testScatterHandle() {
+        Session session = executor.newSession();
+        // userId 4、5在分片1、2，分片0没有匹配行
+        try {
+            session.query("query message(userId >= 4) : [*]", new HashMap<>(), null, null, new QueryHandle().maxRows(1));
+            fail();
+        } catch (QueryBudgetExceededException e) {
+            // 其他线程分片的预算错误抛给调用方
+        }
+        List<Map<String, Object>> messages = (List<Map<String, Object>>) session.query("query message(userId >= 4) : [*]", new HashMap<>(), null, null, new QueryHandle().maxRows(2));
+        assertEquals(4, messages.size());
+        session.close();
+    }
+
+    private static List<Object> contents(Session session) {
+        List<Object> contents = new ArrayList<>();
+        for (Map<String, Object> message : (List<Map<String, Object>>) session.query("query message(order content) : [content]", new HashMap<>(), null, null)) {
+            contents.add(message.get("content"));
+        }
+        return contents;
+    }
+
+    private static Message message(Long id, Long userId, String content) {
+        Message message = new Message();
+        message.setId(id);
+        message.setUserId(userId);
+        message.setContent(content);
+        return message;
+    }
+
+    @Test
+    public void testUpdateBean() {
+        Session session = executor.newSession();
+        // 各分片都有id为3的行，只更新userId为3的分片
+        session.buildUpdate().update(message(3L, 3L, "changed"));
+        List<Object> contents = contents(session);
+        assertEquals(12, contents.size());
+        assertEquals(true, contents.contains("changed"));
+        assertEquals(false, contents.contains("m30"));
+        assertEquals(true, contents.contains("m40") && contents.contains("m50"));
+        session.buildUpdate().update(message(3L, 3L, "m30"));
+        assertEquals(true, contents(session).contains("m30"));
+        session.close();
+    }
+
+    @Test
+    public void testDeleteBean() throws SQLException {
+        Session session = executor.newSession();
+        Message first = message(null, 3L, "x");
+        Message second = message(null, 4L, "y");
+        session.buildUpdate().add(first);
+        session.buildUpdate().add(second);
+        // 不同分片生成相同id
+        assertEquals(first.getId(), second.getId());
+        session.buildUpdate().delete(first);
+        assertEquals(4, countRows(shards.get(0)));
+        assertEquals(5, countRows(shards.get(1)));
+        session.buildUpdate().deleteAll(Collections.singletonList(second));
+        assertEquals(4, countRows(shards.get(1)));
+        assertEquals(12, contents(session).size());
+        session.close();
+    }
+
+    @Test
+    public void testRejectWithoutShardKey() {
+        Session session = executor.newSession();
+        try {
+            session.buildUpdate().delete(Message.class, 1L);
+            fail();
+        } catch (ShardException e) {
+            assertEquals("schema message is sharded, delete by instance with shard key userId", e.getMessage());
+        }
+        try {
+            session.buildUpdate().update(message(1L, null, "z"));
+            fail();
+        } catch (ShardException e) {
+            assertEquals("schema message missing shard key userId", e.getMessage());
+        }
+        assertEquals(12, contents(session).size());
+        session.close();
+    }
+
+}
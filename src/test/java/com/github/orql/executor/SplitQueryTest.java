@@ -0,0 +1,127 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.exception.QueryBudgetExceededException;
+import com.github.orql.executor.exception.QueryCancelledException;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SplitQueryTest {
+
+    private static final String Orql = "query user(id > 0 order id) : [*, posts : [*]]";
+
+    private static RecordingDataSource recording;
+
+    @BeforeClass
+    public static void setUp() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:split_query;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("create table user(id bigint auto_increment primary key, name varchar(64), email varchar(64), phone varchar(64), password varchar(64))");
+            statement.execute("create table post(id bigint auto_increment primary key, title varchar(64), content varchar(64), createAt timestamp, authorId bigint)");
+            statement.execute("create index post_author on post(authorId)");
+            // 超过一批的用户，子查询拆为两批，第一批在其他连接执行
+            statement.execute("insert into user(id, name) select x, concat('u', x) from system_range(1, 1001)");
+            statement.execute("insert into post(title, authorId) select concat('p', x), x from system_range(1, 1001)");
+            statement.execute("insert into post(title, authorId) select concat('q', x), x from system_range(1, 1001)");
+        }
+        recording = new RecordingDataSource(dataSource);
+    }
+
+    private static Session newSession(boolean parallelSubQuery) {
+        Configuration configuration = new Configuration();
+        configuration.setDataSource(recording.dataSource());
+        configuration.setParallelSubQuery(parallelSubQuery);
+        configuration.setLoadBatchSize(1000);
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        return new OrqlExecutor(configuration).newSession();
+    }
+
+    @Test
+    public void testSplit() {
+        Session joined = newSession(false);
+        Object expected = joined.query(Orql, new HashMap<>(), null, null);
+        joined.close();
+        Session session = newSession(true);
+        recording.clear();
+        List<Map<String, Object>> users = (List<Map<String, Object>>) session.query(Orql, new HashMap<>(), null, null, new QueryHandle());
+        // 根节点一次，集合两批
+        assertEquals(3, recording.sqls().size());
+        assertEquals(expected, users);
+        assertEquals(1001, users.size());
+        assertEquals(2, ((List) users.get(1000).get("posts")).size());
+        assertEquals(0, recording.openConnections());
+        session.close();
+    }
+
+    @Test
+    public void testWhereNotSplit() {
+        String orql = "query user(id > 0 order id) : [*, posts(title = #title) : [*]]";
+        Map<String, Object> params = new HashMap<>();
+        params.put("title", "p1");
+        Session joined = newSession(false);
+        Object expected = joined.query(orql, params, null, null);
+        joined.close();
+        Session session = newSession(true);
+        recording.clear();
+        List<Map<String, Object>> users = (List<Map<String, Object>>) session.query(orql, params, null, null);
+        // 集合条件同时过滤根节点，不拆分
+        assertEquals(1, recording.sqls().size());
+        assertEquals(expected, users);
+        assertEquals(1, users.size());
+        session.close();
+    }
+
+    @Test
+    public void testForkUsesHandleBudget() {
+        Session session = newSession(true);
+        // 第一批2000行超出预算，最后一批2行
+        QueryHandle handle = new QueryHandle().maxRows(1500);
+        try {
+            session.query(Orql, new HashMap<>(), null, null, handle);
+            fail();
+        } catch (QueryBudgetExceededException e) {
+            assertEquals("query exceeded max rows 1500", e.getMessage());
+        }
+        assertEquals(0, recording.openConnections());
+        session.close();
+    }
+
+    @Test
+    public void testCancelled() {
+        Session session = newSession(true);
+        QueryHandle handle = new QueryHandle();
+        handle.cancel();
+        try {
+            session.query(Orql, new HashMap<>(), null, null, handle);
+            fail();
+        } catch (QueryCancelledException e) {
+            assertEquals("query cancelled", e.getMessage());
+        }
+        session.close();
+    }
+
+    @Test
+    public void testForkHandle() {
+        QueryHandle handle = new QueryHandle().timeout(3).maxRows(10).maxBytes(100).tag("split");
+        QueryHandle child = handle.fork();
+        assertEquals(Integer.valueOf(3), child.getTimeout());
+        assertEquals(Integer.valueOf(10), child.getMaxRows());
+        assertEquals(Long.valueOf(100), child.getMaxBytes());
+        assertEquals("split", child.getTag());
+        handle.cancel();
+        assertTrue(child.isCancelled());
+        // 取消后创建的子句柄同样取消
+        assertTrue(handle.fork().isCancelled());
+    }
+
+}
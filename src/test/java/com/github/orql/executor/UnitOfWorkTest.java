@@ -0,0 +1,132 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.schema.Post;
+import com.github.orql.executor.schema.User;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UnitOfWorkTest {
+
+    private static JdbcDataSource dataSource;
+
+    private static OrqlExecutor executor;
+
+    @BeforeClass
+    public static void setUp() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:unit_of_work;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        Configuration configuration = new Configuration();
+        configuration.setDataSource(dataSource);
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        executor = new OrqlExecutor(configuration);
+    }
+
+    @Before
+    public void createTables() throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("drop table if exists post");
+            statement.execute("drop table if exists user");
+            statement.execute("create table user(id bigint auto_increment primary key, name varchar(64), email varchar(64), phone varchar(64), password varchar(64))");
+            // 外键约束检查插入和删除顺序
+            statement.execute("create table post(id bigint auto_increment primary key, title varchar(64), content varchar(64), createAt timestamp, authorId bigint references user(id))");
+        }
+    }
+
+    private static long count(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            ResultSet resultSet = statement.executeQuery(sql);
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    @Test
+    public void testOrderedFlush() throws SQLException {
+        Session session = executor.newSession();
+        session.beginTransaction();
+        session.beginUnitOfWork();
+        User user = new User();
+        user.setName("a");
+        Post post = new Post();
+        post.setTitle("t");
+        post.setAuthor(user);
+        // 先记录post，flush时先插入user
+        session.buildUpdate().add(post);
+        session.buildUpdate().add(user);
+        assertNull(user.getId());
+        user.setEmail("a@a");
+        session.buildUpdate().update(user);
+        session.commit();
+        assertNotNull(user.getId());
+        assertNotNull(post.getId());
+        assertEquals(1, count("select count(*) from post where authorId = " + user.getId()));
+        assertEquals(1, count("select count(*) from user where email = 'a@a'"));
+        // 删除先子后父
+        session.buildUpdate().delete(user);
+        session.buildUpdate().delete(post);
+        session.flush();
+        assertEquals(0, count("select count(*) from user"));
+        session.close();
+    }
+
+    @Test
+    public void testFlushBeforeQuery() {
+        Session session = executor.newSession();
+        session.beginUnitOfWork();
+        User user = new User();
+        user.setName("b");
+        session.buildUpdate().add(user);
+        List<User> users = session.buildQuery().reql("query user(name = #name) : [*]").param("name", "b").queryAll(User.class);
+        assertEquals(1, users.size());
+        assertFalse(session.getUnitOfWork().hasPending());
+        session.close();
+    }
+
+    @Test
+    public void testRollbackDiscards() throws SQLException {
+        Session session = executor.newSession();
+        session.beginTransaction();
+        session.beginUnitOfWork();
+        User user = new User();
+        user.setName("c");
+        session.buildUpdate().add(user);
+        session.rollback();
+        session.endUnitOfWork();
+        assertEquals(0, count("select count(*) from user"));
+        // 插入后删除的对象不执行
+        session.beginUnitOfWork();
+        session.buildUpdate().add(user);
+        session.buildUpdate().delete(user);
+        session.endUnitOfWork();
+        assertNull(user.getId());
+        session.close();
+    }
+
+    @Test
+    public void testUpsertNotDeferred() throws SQLException {
+        Session session = executor.newSession();
+        session.beginUnitOfWork();
+        User added = new User();
+        added.setName("d");
+        session.buildUpdate().add(added);
+        User upserted = new User();
+        upserted.setId(10L);
+        upserted.setName("e");
+        // 有id的upsert立即执行，之前记录的写操作先flush
+        session.buildUpdate().upsert(upserted);
+        assertFalse(session.getUnitOfWork().hasPending());
+        assertEquals(2, count("select count(*) from user"));
+        session.close();
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.dialect.H2Dialect;
+import com.github.orql.executor.orql.OrqlNode;
+import com.github.orql.executor.orql.SyntaxException;
+import com.github.orql.executor.schema.User;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class UpsertTest {
+
+    private static RecordingDataSource recording;
+
+    private Session session;
+
+    @BeforeClass
+    public static void setUpDatabase() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:upsert;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("create table user(id bigint auto_increment primary key, name varchar(64), email varchar(64), phone varchar(64), password varchar(64))");
+        }
+        recording = new RecordingDataSource(dataSource);
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        try (Connection conn = recording.dataSource().getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("delete from user");
+            statement.execute("insert into user(id, name, email) values (1, 'a', 'a@orql')");
+        }
+        Configuration configuration = new Configuration();
+        configuration.setDataSource(recording.dataSource());
+        configuration.setDialect(new H2Dialect());
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        session = new OrqlExecutor(configuration).newSession();
+        recording.clear();
+    }
+
+    private static Map<String, Object> user(long id, String name) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("id", id);
+        params.put("name", name);
+        return params;
+    }
+
+    private static User bean(Long id, String name) {
+        User user = new User();
+        user.setId(id);
+        user.setName(name);
+        return user;
+    }
+
+    private Map<String, Object> find(Object id) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("id", id);
+        return (Map<String, Object>) session.query("query user(id = #id) : {name, email}", params, null, null);
+    }
+
+    private long count() {
+        return (Long) session.query("count user", new HashMap<>(), null, null);
+    }
+
+    @Test
+    public void testMysqlSql() {
+        Configuration configuration = new Configuration();
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        OrqlNode.OrqlRefItem root = configuration.getParser().parse("upsert user : {id, name, email}").getRoot();
+        assertEquals("insert into user(id, name, email) values ($id, $name, $email) on duplicate key update name = values(name), email = values(email)",
+                configuration.getOrqlToSql().toUpsert(root));
+        assertEquals("insert into user(id, name, email) values ($0.id, $0.name, $0.email), ($1.id, $1.name, $1.email) on duplicate key update name = values(name), email = values(email)",
+                configuration.getOrqlToSql().toUpsertAll(root, 2));
+        // 只有主键时不修改
+        OrqlNode.OrqlRefItem idOnly = configuration.getParser().parse("upsert user : {id}").getRoot();
+        assertEquals("insert into user(id) values ($id) on duplicate key update id = id", configuration.getOrqlToSql().toUpsert(idOnly));
+    }
+
+    @Test(expected = SyntaxException.class)
+    public void testMissingId() {
+        session.upsert("upsert user : {name}", user(1, "b"));
+    }
+
+    @Test
+    public void testMergeInsertAndUpdate() {
+        assertTrue(recording.sqls().isEmpty());
+        session.upsert("upsert user : {id, name}", user(2, "b"));
+        assertTrue(recording.sqls().get(0).startsWith("merge into user(id, name) key(id) values"));
+        assertEquals("b", find(2L).get("name"));
+        // 已存在时只更新给出的列
+        session.upsert("upsert user : {id, name}", user(1, "c"));
+        assertEquals("c", find(1L).get("name"));
+        assertEquals("a@orql", find(1L).get("email"));
+        assertEquals(2, count());
+    }
+
+    @Test
+    public void testMergeMultiRow() {
+        recording.clear();
+        session.upsertAll("upsert user : {id, name}", Arrays.asList(user(1, "x"), user(3, "y"), user(4, "z")));
+        // 一条多行merge
+        assertEquals(1, recording.sqls("merge into").size());
+        assertEquals("x", find(1L).get("name"));
+        assertEquals("y", find(3L).get("name"));
+        assertEquals("z", find(4L).get("name"));
+        assertEquals(3, count());
+    }
+
+    @Test
+    public void testBeanWithoutIdAdded() {
+        User added = bean(null, "d");
+        session.buildUpdate().upsert(added);
+        // 没有id时插入并插回id
+        assertNotNull(added.getId());
+        assertEquals("d", find(added.getId()).get("name"));
+        User existing = bean(1L, "e");
+        User other = bean(null, "f");
+        List<User> users = Arrays.asList(existing, other);
+        session.buildUpdate().upsertAll(users);
+        assertEquals("e", find(1L).get("name"));
+        assertNotNull(other.getId());
+        assertEquals("f", find(other.getId()).get("name"));
+        assertEquals(3, count());
+        assertEquals(2, recording.sqls("insert into user").size());
+    }
+
+}
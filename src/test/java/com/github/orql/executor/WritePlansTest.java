@@ -0,0 +1,101 @@
+package com.github.orql.executor;
+
+import com.github.orql.executor.dialect.H2Dialect;
+import com.github.orql.executor.schema.Account;
+import com.github.orql.executor.schema.Post;
+import com.github.orql.executor.schema.User;
+import com.github.orql.executor.sql.NamedParamSql;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WritePlansTest {
+
+    private Configuration configuration;
+
+    private WritePlans writePlans;
+
+    @Before
+    public void setUp() {
+        configuration = new Configuration();
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        writePlans = configuration.getWritePlans();
+    }
+
+    private static User user(String name, String email) {
+        User user = new User();
+        user.setName(name);
+        user.setEmail(email);
+        return user;
+    }
+
+    @Test
+    public void testPlanReuse() throws IllegalAccessException {
+        WritePlans.BeanFields bean = writePlans.getBeanFields(User.class);
+        assertSame(bean, writePlans.getBeanFields(User.class));
+        long mask = writePlans.presentMask(bean, user("a", "a@orql"), true);
+        // 非null字段相同的对象使用同一计划
+        assertEquals(mask, writePlans.presentMask(bean, user("b", "b@orql"), true));
+        WritePlans.WritePlan plan = writePlans.insertPlan(bean, mask);
+        assertSame(plan, writePlans.insertPlan(bean, mask));
+        assertEquals("insert into user(name, email) values (?, ?)", plan.getSql());
+        long nameOnly = writePlans.presentMask(bean, user("c", null), true);
+        assertNotEquals(mask, nameOnly);
+        assertEquals("insert into user(name) values (?)", writePlans.insertPlan(bean, nameOnly).getSql());
+        assertEquals(2, bean.inserts.size());
+        // insert和update分开缓存
+        WritePlans.WritePlan update = writePlans.updatePlan(bean, mask, false);
+        assertSame(update, writePlans.updatePlan(bean, mask, false));
+        assertEquals("update user set name = ?, email = ? where user.id = ?", update.getSql());
+        assertEquals(1, bean.updates.size());
+    }
+
+    @Test
+    public void testVersionedPlan() throws IllegalAccessException {
+        WritePlans.BeanFields bean = writePlans.getBeanFields(Account.class);
+        Account account = new Account();
+        account.setId(1L);
+        account.setBalance(10);
+        account.setVersion(3);
+        // update位图不含id和版本号
+        long mask = writePlans.presentMask(bean, account, false);
+        WritePlans.WritePlan versioned = writePlans.updatePlan(bean, mask, true);
+        assertNotSame(versioned, writePlans.updatePlan(bean, mask, false));
+        assertEquals("update account set balance = ?, version = version + 1 where account.id = ? and account.version = ?", versioned.getSql());
+        NamedParamSql namedParamSql = versioned.bind(account);
+        assertArrayEquals(new Object[]{10, 1L, 3}, namedParamSql.getParams());
+    }
+
+    @Test
+    public void testBelongsToBinding() throws IllegalAccessException {
+        WritePlans.BeanFields bean = writePlans.getBeanFields(Post.class);
+        User author = new User();
+        author.setId(5L);
+        Post post = new Post();
+        post.setTitle("t");
+        post.setAuthor(author);
+        WritePlans.WritePlan plan = writePlans.insertPlan(bean, writePlans.presentMask(bean, post, true));
+        assertEquals("insert into post(title, authorId) values (?, ?)", plan.getSql());
+        // belongsTo按位置绑定关联对象的id
+        NamedParamSql namedParamSql = plan.bind(post);
+        assertArrayEquals(new Object[]{"t", 5L}, namedParamSql.getParams());
+        assertTrue(namedParamSql.isGeneratedKey());
+        // 关联对象id为null时绑定null
+        author.setId(null);
+        assertArrayEquals(new Object[]{"t", null}, plan.bind(post).getParams());
+    }
+
+    @Test
+    public void testSetDialectClears() throws IllegalAccessException {
+        WritePlans.BeanFields bean = writePlans.getBeanFields(User.class);
+        writePlans.insertPlan(bean, writePlans.presentMask(bean, user("a", null), true));
+        configuration.setDialect(new H2Dialect());
+        // 方言改变后重新编译
+        WritePlans.BeanFields rebuilt = writePlans.getBeanFields(User.class);
+        assertNotSame(bean, rebuilt);
+        assertTrue(rebuilt.inserts.isEmpty());
+        assertSame(writePlans, configuration.getWritePlans());
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.github.orql.executor.loader;
+
+import com.github.orql.executor.Configuration;
+import com.github.orql.executor.OrqlExecutor;
+import com.github.orql.executor.RecordingDataSource;
+import com.github.orql.executor.schema.Tag;
+import com.github.orql.executor.schema.User;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class IdBatchLoaderTest {
+
+    private static RecordingDataSource recording;
+
+    private Configuration configuration;
+
+    private OrqlExecutor orqlExecutor;
+
+    private ExecutorService executor;
+
+    @BeforeClass
+    public static void setUpDatabase() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:id_batch_loader;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("create table user(id bigint auto_increment primary key, name varchar(64), email varchar(64), phone varchar(64), password varchar(64))");
+            for (int i = 1; i <= 8; i ++) {
+                statement.execute("insert into user(id, name) values (" + i + ", 'u" + i + "')");
+            }
+        }
+        recording = new RecordingDataSource(dataSource);
+    }
+
+    @Before
+    public void setUp() {
+        configuration = new Configuration();
+        configuration.setDataSource(recording.dataSource());
+        configuration.getSchemaManager().scanPackage("com.github.orql.executor.schema");
+        orqlExecutor = new OrqlExecutor(configuration);
+        executor = Executors.newFixedThreadPool(4);
+        recording.clear();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private IdBatchLoader loader(long windowMillis, int maxBatchSize) {
+        return new IdBatchLoader(orqlExecutor, configuration.getSchemaManager(), windowMillis, maxBatchSize, executor);
+    }
+
+    @Test
+    public void testMergeAcrossThreads() throws Exception {
+        IdBatchLoader loader = loader(200, 100);
+        ExecutorService callers = Executors.newFixedThreadPool(6);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<User>> results = new ArrayList<>();
+        for (long id = 1; id <= 6; id ++) {
+            long userId = id;
+            results.add(callers.submit(() -> {
+                start.await();
+                return loader.load(User.class, userId).get(5, TimeUnit.SECONDS);
+            }));
+        }
+        start.countDown();
+        for (int i = 0; i < 6; i ++) {
+            assertEquals("u" + (i + 1), results.get(i).get().getName());
+        }
+        callers.shutdown();
+        // 6个线程的请求合并为一次查询
+        assertEquals(1, recording.sqls().size());
+        assertTrue(recording.sqls().get(0).contains("in (?, ?, ?, ?, ?, ?)"));
+        loader.shutdown();
+    }
+
+    @Test
+    public void testMaxBatchSize() throws Exception {
+        IdBatchLoader loader = loader(10000, 2);
+        List<CompletableFuture<User>> futures = new ArrayList<>();
+        for (long id = 1; id <= 4; id ++) {
+            futures.add(loader.load(User.class, id));
+        }
+        // 达到最大批量时不等待窗口
+        for (int i = 0; i < 4; i ++) {
+            assertEquals("u" + (i + 1), futures.get(i).get(1, TimeUnit.SECONDS).getName());
+        }
+        assertEquals(2, recording.sqls().size());
+        loader.shutdown();
+    }
+
+    @Test
+    public void testIdTypeAndDuplicates() throws Exception {
+        IdBatchLoader loader = loader(50, 100);
+        // Integer参数查询Long主键，与Long参数合并为一个id
+        CompletableFuture<User> intId = loader.load(User.class, 3);
+        CompletableFuture<User> longId = loader.load(User.class, 3L);
+        CompletableFuture<User> missing = loader.load(User.class, 100L);
+        assertEquals("u3", intId.get(1, TimeUnit.SECONDS).getName());
+        assertEquals("u3", longId.get(1, TimeUnit.SECONDS).getName());
+        assertNull(missing.get(1, TimeUnit.SECONDS));
+        assertEquals(1, recording.sqls().size());
+        assertTrue(recording.sqls().get(0).contains("in (?, ?)"));
+        loader.shutdown();
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        IdBatchLoader loader = loader(10, 100);
+        // tag表不存在
+        CompletableFuture<Tag> first = loader.load(Tag.class, 1L);
+        CompletableFuture<Tag> second = loader.load(Tag.class, 2L);
+        for (CompletableFuture<Tag> future : new CompletableFuture[]{first, second}) {
+            try {
+                future.get(1, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RuntimeException);
+            }
+        }
+        loader.shutdown();
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        IdBatchLoader loader = loader(10000, 100);
+        CompletableFuture<User> pending = loader.load(User.class, 1L);
+        loader.shutdown();
+        // 收集中的批次在关闭时执行
+        assertEquals("u1", pending.get(1, TimeUnit.SECONDS).getName());
+        // 传入的executor不随loader关闭
+        assertFalse(executor.isShutdown());
+        try {
+            loader.load(User.class, 2L).get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+}
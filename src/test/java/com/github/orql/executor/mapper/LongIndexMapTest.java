@@ -0,0 +1,31 @@
+package com.github.orql.executor.mapper;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LongIndexMapTest {
+
+    @Test
+    public void testPutGet() {
+        LongIndexMap map = new LongIndexMap(2);
+        for (int i = 0; i < 1000; i ++) {
+            map.put(i * 31L - 500, i);
+        }
+        assertEquals(1000, map.size());
+        for (int i = 0; i < 1000; i ++) {
+            assertEquals(i, map.get(i * 31L - 500));
+        }
+        assertEquals(LongIndexMap.Absent, map.get(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testOverride() {
+        LongIndexMap map = new LongIndexMap(4);
+        map.put(0, 1);
+        map.put(0, 2);
+        assertEquals(1, map.size());
+        assertEquals(2, map.get(0));
+    }
+
+}
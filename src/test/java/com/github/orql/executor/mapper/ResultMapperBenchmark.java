@@ -0,0 +1,97 @@
+package com.github.orql.executor.mapper;
+
+import com.github.orql.executor.schema.DataType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * user : [id, name, posts : [id, title]]
+ * 每次调用映射一百万行, 对比装箱分组与原始类型分组
+ * gc.alloc.rate.norm 即每百万行分配字节数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ResultMapperBenchmark {
+
+    private static final int Rows = 1000000;
+
+    /**
+     * 每个user的post数
+     */
+    @Param({"1", "10"})
+    private int postsPerUser;
+
+    @Param({"true", "false"})
+    private boolean primitiveIdGrouping;
+
+    private ResultMapper resultMapper;
+
+    private ResultRoot resultRoot;
+
+    private List<Map<String, Object>> resultMapList;
+
+    private static ResultColumn column(ResultColumn resultColumn, String column, String field, DataType type) {
+        resultColumn.setColumn(column);
+        resultColumn.setField(field);
+        resultColumn.setType(type);
+        return resultColumn;
+    }
+
+    @Setup
+    public void setUp() {
+        List<ResultColumn> allColumns = new ArrayList<>();
+        ResultRoot postRoot = new ResultRoot();
+        ResultColumn postTitle = column(new ResultColumn(), "title", "user_posts_title", DataType.String);
+        ResultId postId = (ResultId) column(new ResultId(), "id", "user_posts_id", DataType.Long);
+        postRoot.setId(postId);
+        postRoot.setColumns(Collections.singletonList(postTitle));
+        ResultArray posts = new ResultArray();
+        posts.setColumn("posts");
+        posts.setRoot(postRoot);
+        resultRoot = new ResultRoot();
+        ResultColumn userName = column(new ResultColumn(), "name", "user_name", DataType.String);
+        resultRoot.setId((ResultId) column(new ResultId(), "id", "user_id", DataType.Long));
+        resultRoot.setColumns(Arrays.asList(userName, posts));
+        allColumns.add(userName);
+        allColumns.add(postTitle);
+        allColumns.add(postId);
+        allColumns.add(resultRoot.getId());
+        resultRoot.setAllColumns(allColumns);
+        resultMapList = new ArrayList<>(Rows);
+        for (long i = 0; i < Rows; i ++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            long userId = i / postsPerUser;
+            row.put("user_id", userId);
+            row.put("user_name", "user");
+            row.put("user_posts_id", i);
+            row.put("user_posts_title", "title");
+            resultMapList.add(row);
+        }
+        resultMapper = new ResultMapper();
+        resultMapper.setPrimitiveIdGrouping(primitiveIdGrouping);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> mappe() {
+        return resultMapper.mappe(resultRoot, resultMapList);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ResultMapperBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
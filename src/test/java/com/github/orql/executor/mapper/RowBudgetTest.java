@@ -0,0 +1,39 @@
+package com.github.orql.executor.mapper;
+
+import com.github.orql.executor.exception.QueryBudgetExceededException;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class RowBudgetTest {
+
+    private Map<String, Object> row = Collections.singletonMap("name", "orql");
+
+    @Test
+    public void testUnlimited() {
+        RowBudget budget = new RowBudget(0, 0);
+        for (int i = 0; i < 1000; i ++) {
+            budget.consume(row);
+        }
+        assertEquals(1000, budget.getRows());
+    }
+
+    @Test(expected = QueryBudgetExceededException.class)
+    public void testMaxRows() {
+        RowBudget budget = new RowBudget(2, 0);
+        for (int i = 0; i < 3; i ++) {
+            budget.consume(row);
+        }
+    }
+
+    @Test(expected = QueryBudgetExceededException.class)
+    public void testMaxBytes() {
+        RowBudget budget = new RowBudget(0, 1000);
+        for (int i = 0; i < 100; i ++) {
+            budget.consume(row);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.orql.executor.schema;
+
+import com.github.orql.executor.annotation.Column;
+import com.github.orql.executor.annotation.Schema;
+
+@Schema
+public class Account {
+
+    @Column(primaryKey = true, generatedKey = true)
+    private Long id;
+
+    @Column
+    private String name;
+
+    @Column
+    private Integer balance;
+
+    @Column(version = true)
+    private Integer version;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Integer getBalance() {
+        return balance;
+    }
+
+    public void setBalance(Integer balance) {
+        this.balance = balance;
+    }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.orql.executor.schema;
+
+import com.github.orql.executor.annotation.BelongsTo;
+import com.github.orql.executor.annotation.Column;
+import com.github.orql.executor.annotation.Schema;
+
+@Schema(hiLo = true)
+public class Comment {
+
+    @Column(primaryKey = true)
+    private Long id;
+
+    @Column
+    private String content;
+
+    @BelongsTo(refKey = "postId")
+    private Post post;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public Post getPost() {
+        return post;
+    }
+
+    public void setPost(Post post) {
+        this.post = post;
+    }
+}
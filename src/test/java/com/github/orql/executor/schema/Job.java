@@ -0,0 +1,41 @@
+package com.github.orql.executor.schema;
+
+import com.github.orql.executor.annotation.Column;
+import com.github.orql.executor.annotation.Schema;
+
+@Schema
+public class Job {
+
+    @Column(primaryKey = true, generatedKey = true)
+    private Long id;
+
+    @Column
+    private String status;
+
+    @Column
+    private String owner;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.orql.executor.schema;
+
+import com.github.orql.executor.annotation.Column;
+import com.github.orql.executor.annotation.Schema;
+
+@Schema(shardKey = "userId")
+public class Message {
+
+    @Column(primaryKey = true, generatedKey = true)
+    private Long id;
+
+    @Column
+    private Long userId;
+
+    @Column
+    private String content;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+}
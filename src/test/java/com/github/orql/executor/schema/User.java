@@ -1,8 +1,11 @@
 package com.github.orql.executor.schema;
 
 import com.github.orql.executor.annotation.Column;
+import com.github.orql.executor.annotation.HasMany;
 import com.github.orql.executor.annotation.Schema;
 
+import java.util.List;
+
 @Schema
 public class User {
 
@@ -21,6 +24,9 @@ public class User {
     @Column
     private String password;
 
+    @HasMany(refKey = "authorId")
+    private List<Post> posts;
+
     public Long getId() {
         return id;
     }
@@ -60,4 +66,12 @@ public class User {
     public void setPassword(String password) {
         this.password = password;
     }
+
+    public List<Post> getPosts() {
+        return posts;
+    }
+
+    public void setPosts(List<Post> posts) {
+        this.posts = posts;
+    }
 }